@@ -0,0 +1,66 @@
+package com.whistlecounter.app;
+
+import android.media.AudioRecord;
+import android.util.Log;
+
+import com.whistlecounter.detector.audio.AudioSource;
+import com.whistlecounter.detector.stats.PowerStats;
+
+/**
+ * {@link AudioSource} backed by the microphone through {@link AudioRecord}.
+ * Reads block until the requested samples are available; the time spent
+ * blocked is recorded in the session's {@link PowerStats}.
+ */
+public class AudioRecordSource implements AudioSource {
+    
+    private static final String TAG = "AudioRecordSource";
+    
+    private final AudioRecord audioRecord;
+    private final PowerStats stats;
+    
+    public AudioRecordSource(AudioRecord audioRecord, PowerStats stats) {
+        this.audioRecord = audioRecord;
+        this.stats = stats;
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return audioRecord.getSampleRate();
+    }
+    
+    @Override
+    public void start() {
+        audioRecord.startRecording();
+        // Another app holding the microphone makes this fail without an exception
+        if (audioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            throw new IllegalStateException("Recording did not start");
+        }
+    }
+    
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (audioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            return -1;
+        }
+        long start = System.nanoTime();
+        int read = audioRecord.read(buffer, offset, length);
+        stats.recordRead(System.nanoTime() - start);
+        return read;
+    }
+    
+    @Override
+    public void stop() {
+        try {
+            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+                audioRecord.stop();
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error stopping audio recording: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void release() {
+        audioRecord.release();
+    }
+}
@@ -0,0 +1,60 @@
+package com.whistlecounter.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.whistlecounter.detector.events.EventStream;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers {@link EventStream} subscriptions on the main thread at the next
+ * display frame, so the UI sees at most one batch of detection events per frame
+ * however fast the analysis thread publishes them.
+ */
+public class FrameDispatcher implements EventStream.Dispatcher {
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ConcurrentLinkedQueue<EventStream.Subscription> due = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean frameRequested = new AtomicBoolean(false);
+    
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameRequested.set(false);
+            // Only drain what is due now; subscriptions rescheduled while delivering wait for the next frame
+            for (int n = due.size(); n > 0; n--) {
+                EventStream.Subscription subscription = due.poll();
+                if (subscription == null) break;
+                subscription.deliver();
+            }
+        }
+    };
+    
+    // Choreographer is per-thread, so the frame callback is always posted from the main thread
+    private final Runnable requestFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+    
+    @Override
+    public void schedule(EventStream.Subscription subscription) {
+        due.add(subscription);
+        if (frameRequested.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                requestFrame.run();
+            } else {
+                mainHandler.post(requestFrame);
+            }
+        }
+    }
+    
+    @Override
+    public void scheduleDelayed(EventStream.Subscription subscription, long delayMs) {
+        mainHandler.postDelayed(() -> schedule(subscription), delayMs);
+    }
+}
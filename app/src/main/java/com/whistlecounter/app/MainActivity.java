@@ -1,17 +1,21 @@
 package com.whistlecounter.app;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.util.Log;
@@ -19,45 +23,39 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
 
+import com.whistlecounter.detector.events.DetectionEventListener;
+import com.whistlecounter.detector.events.EventStream;
+import com.whistlecounter.detector.events.LevelReading;
+import com.whistlecounter.detector.sources.SourceCount;
+
+import java.util.List;
+
 public class MainActivity extends AppCompatActivity {
     
     private static final int PERMISSION_REQUEST_CODE = 1001;
     private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 1002;
-    private static final int SAMPLE_RATE = 22050; // Reduced for better battery life
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
-    private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
     
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
+    // The detection session lives in the service; the activity only attaches to it
+    private WhistleDetectionService service;
+    private EventStream.Subscription eventSubscription;
+    private final FrameDispatcher frameDispatcher = new FrameDispatcher();
     private boolean isListening = false;
     private int whistleCount = 0;
-    private Thread recordingThread;
     
-    // Whistle detection variables
-    private long lastWhistleTime = 0;
-    private static final long WHISTLE_COOLDOWN_MS = 3000; // 3 seconds between detections
-    private static final double MIN_VOLUME_THRESHOLD = 0.01; // Minimum volume to consider (lowered for sensitivity)
-    private static final int SUSTAINED_SAMPLES_REQUIRED = 8; // Samples needed for sustained sound (reduced for responsiveness)
-    private static final int WHISTLE_END_SAMPLES = 10; // Samples of silence to end whistle (reduced for faster reset)
-    private static final long WHISTLE_MAX_DURATION_MS = 30000; // Maximum 30 seconds per whistle
-    private int sustainedHighFreqSamples = 0;
-    private int silenceSamples = 0;
-    private int interruptionSamples = 0;
-    private boolean isWhistleInProgress = false;
-    private long whistleStartTime = 0;
-    private long lastStatusUpdate = 0;
-    private static final long STATUS_UPDATE_INTERVAL = 500; // 500ms between status updates
-    private static final int MAX_INTERRUPTION_SAMPLES = 3; // Allow up to 3 samples of interruption
+    // Status display variables
+    private boolean wasWhistleLike = false;
+    private static final long STATUS_UPDATE_INTERVAL = 500; // 500ms between level readings
     
     private TextView statusText;
     private TextView counterValue;
+    private TextView sourceCounts;
     private Button startStopButton;
     private Button resetButton;
     private Button backgroundToggleButton;
+    private Button enrollButton;
+    private EditText targetInput;
     private boolean isBackgroundMode = false;
     
     private Handler mainHandler = new Handler(Looper.getMainLooper());
@@ -72,12 +70,59 @@ public class MainActivity extends AppCompatActivity {
         checkPermissions();
     }
     
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, WhistleDetectionService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+    
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Detaching is instant: a background session keeps capturing, any other session stops
+        detachFromService();
+        unbindService(serviceConnection);
+    }
+    
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((WhistleDetectionService.LocalBinder) binder).getService();
+            service.setSessionListener(sessionListener);
+            // Events arrive on the main thread, at most once per display frame
+            eventSubscription = service.getEvents().subscribe(eventListener, frameDispatcher, STATUS_UPDATE_INTERVAL);
+            
+            // Pick up whatever the session is already doing
+            int target = service.getTargetCount();
+            if (target != getTargetCount()) {
+                targetInput.setText(target > 0 ? String.valueOf(target) : "");
+            }
+            whistleCount = service.getWhistleCount();
+            counterValue.setText(String.valueOf(whistleCount));
+            showSourceCounts(service.getSourceCounts());
+            isListening = service.isDetecting();
+            isBackgroundMode = service.isBackgroundMode();
+            updateUI();
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            detachFromService();
+            isListening = false;
+            isBackgroundMode = false;
+            updateUI();
+        }
+    };
+    
     private void initializeViews() {
         statusText = findViewById(R.id.statusText);
         counterValue = findViewById(R.id.counterValue);
+        sourceCounts = findViewById(R.id.sourceCounts);
         startStopButton = findViewById(R.id.startStopButton);
         resetButton = findViewById(R.id.resetButton);
         backgroundToggleButton = findViewById(R.id.backgroundToggleButton);
+        enrollButton = findViewById(R.id.enrollButton);
+        targetInput = findViewById(R.id.targetInput);
     }
     
     private void setupClickListeners() {
@@ -105,6 +150,51 @@ public class MainActivity extends AppCompatActivity {
                 toggleBackgroundMode();
             }
         });
+        
+        enrollButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                toggleEnrollment();
+            }
+        });
+        
+        enrollButton.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                if (service != null) {
+                    service.forgetCookers();
+                    Toast.makeText(MainActivity.this, getString(R.string.cookers_forgotten), Toast.LENGTH_SHORT).show();
+                }
+                return true;
+            }
+        });
+        
+        // Hidden entry to the power instrumentation, for checking battery claims on devices
+        findViewById(R.id.titleText).setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                startActivity(new Intent(MainActivity.this, PowerStatsActivity.class));
+                return true;
+            }
+        });
+        
+        // The target applies to the running session as soon as it is edited
+        targetInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (service != null) {
+                    service.setTargetCount(getTargetCount());
+                }
+            }
+        });
     }
     
     private void checkPermissions() {
@@ -139,6 +229,17 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    private void detachFromService() {
+        if (eventSubscription != null) {
+            eventSubscription.close();
+            eventSubscription = null;
+        }
+        if (service != null) {
+            service.setSessionListener(null);
+            service = null;
+        }
+    }
+    
     private void startListening() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) 
                 != PackageManager.PERMISSION_GRANTED) {
@@ -146,285 +247,125 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         
-        try {
-            audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, 
-                    SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT, BUFFER_SIZE);
-            
-            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                Toast.makeText(this, "Failed to initialize audio recording", Toast.LENGTH_SHORT).show();
-                return;
-            }
-            
-            // Reset detection variables
-            sustainedHighFreqSamples = 0;
-            silenceSamples = 0;
-            interruptionSamples = 0;
-            isWhistleInProgress = false;
-            lastWhistleTime = 0;
-            whistleStartTime = 0;
-            
-            isListening = true;
-            isRecording = true;
-            
-            audioRecord.startRecording();
-            
-            recordingThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    processAudioData();
-                }
-            });
-            recordingThread.start();
-            
-            updateUI();
-            
-        } catch (Exception e) {
-            Toast.makeText(this, "Error starting audio recording: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        if (service == null) {
+            return;
+        }
+        
+        wasWhistleLike = false;
+        
+        service.setTargetCount(getTargetCount());
+        if (!service.startSession()) {
+            Toast.makeText(this, "Failed to initialize audio recording", Toast.LENGTH_SHORT).show();
         }
     }
     
-    private void stopListening() {
-        isListening = false;
-        isRecording = false;
-        
-        if (audioRecord != null) {
-            try {
-                audioRecord.stop();
-                audioRecord.release();
-                audioRecord = null;
-            } catch (Exception e) {
-                // Ignore errors during cleanup
-            }
+    private void toggleEnrollment() {
+        if (service == null) {
+            return;
         }
-        
-        if (recordingThread != null) {
-            try {
-                recordingThread.join(1000); // Wait up to 1 second for thread to finish
-            } catch (InterruptedException e) {
-                // Ignore
-            }
-            recordingThread = null;
+        if (service.isEnrolling()) {
+            service.cancelEnrollment();
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) 
+                != PackageManager.PERMISSION_GRANTED) {
+            Toast.makeText(this, getString(R.string.permission_required), Toast.LENGTH_SHORT).show();
+            return;
         }
         
-        // Reset whistle state when stopping
-        isWhistleInProgress = false;
-        sustainedHighFreqSamples = 0;
-        silenceSamples = 0;
-        interruptionSamples = 0;
-        whistleStartTime = 0;
-        
-        updateUI();
+        service.setTargetCount(getTargetCount());
+        if (!service.startEnrollment()) {
+            Toast.makeText(this, getString(R.string.learning_unavailable), Toast.LENGTH_SHORT).show();
+        }
     }
     
-    private void processAudioData() {
-        short[] buffer = new short[BUFFER_SIZE];
-        double[] fftBuffer = new double[BUFFER_SIZE];
-        
-        while (isRecording && audioRecord != null) {
-            int bytesRead = audioRecord.read(buffer, 0, BUFFER_SIZE);
-            
-            if (bytesRead > 0) {
-                // Convert to double for FFT processing
-                for (int i = 0; i < bytesRead; i++) {
-                    fftBuffer[i] = buffer[i] / 32768.0; // Normalize to [-1, 1]
-                }
-                
-                // Detect whistle based on frequency analysis
-                if (detectWhistle(fftBuffer, bytesRead)) {
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            incrementCounter();
-                        }
-                    });
-                } else if (isWhistleInProgress) {
-                    // Update status to show whistle is in progress
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            statusText.setText("Whistle in progress... Count: " + whistleCount);
-                        }
-                    });
-                }
-            }
+    private void stopListening() {
+        if (service != null) {
+            service.stopSession();
         }
     }
     
-    private boolean detectWhistle(double[] audioData, int length) {
-        // Improved whistle detection for pressure cooker whistles
-        // Handles both short and long whistles as single events
-        
-        long currentTime = System.currentTimeMillis();
-        
-        // Check for maximum whistle duration timeout (only if we have a valid start time)
-        if (isWhistleInProgress && whistleStartTime > 0 && currentTime - whistleStartTime > WHISTLE_MAX_DURATION_MS) {
-            isWhistleInProgress = false;
-            silenceSamples = 0;
-            sustainedHighFreqSamples = 0;
-            whistleStartTime = 0;
-            mainHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    statusText.setText("Whistle timeout - listening for new whistles...");
-                }
-            });
+    private final WhistleDetectionService.SessionListener sessionListener = new WhistleDetectionService.SessionListener() {
+        @Override
+        public void onSessionChanged(boolean detecting, boolean backgroundMode) {
+            isListening = detecting;
+            isBackgroundMode = backgroundMode;
+            updateUI();
         }
         
-        // Only check cooldown if we're not already tracking a whistle
-        if (!isWhistleInProgress && currentTime - lastWhistleTime < WHISTLE_COOLDOWN_MS) {
-            return false;
+        @Override
+        public void onTargetReached(int count) {
+            statusText.setText(getString(R.string.target_reached, count));
         }
         
-        // Calculate total energy first
-        double totalEnergy = 0;
-        for (int i = 0; i < length; i++) {
-            double sample = audioData[i];
-            totalEnergy += sample * sample;
+        @Override
+        public void onEnrollmentProgress(int whistlesHeard, int whistlesNeeded) {
+            statusText.setText(getString(R.string.learning_progress, whistlesHeard, whistlesNeeded));
+            enrollButton.setText(getString(R.string.cancel_learning));
         }
         
-        // Check if loud enough first
-        boolean isLoudEnough = totalEnergy >= MIN_VOLUME_THRESHOLD;
-        
-        if (!isLoudEnough) {
-            // Not loud enough, reset counters
-            sustainedHighFreqSamples = 0;
-            silenceSamples++;
-            interruptionSamples++;
-            
-            // Only reset sustained samples if interruption is long enough
-            if (interruptionSamples >= MAX_INTERRUPTION_SAMPLES) {
-                sustainedHighFreqSamples = 0;
-            }
-            return false;
+        @Override
+        public void onEnrollmentFinished(boolean learned, int knownCookers) {
+            enrollButton.setText(getString(R.string.learn_cooker));
+            Toast.makeText(MainActivity.this, learned 
+                    ? getString(R.string.cooker_learned, knownCookers) 
+                    : getString(R.string.learning_cancelled), Toast.LENGTH_SHORT).show();
         }
-        
-        // Simple frequency analysis using zero-crossing rate and energy distribution
-        int zeroCrossings = 0;
-        double highFreqEnergy = 0;
-        double midFreqEnergy = 0;
-        double lowFreqEnergy = 0;
-        
-        for (int i = 0; i < length - 1; i++) {
-            double sample = audioData[i];
-            double nextSample = audioData[i + 1];
-            double energy = sample * sample;
-            
-            // Count zero crossings (indicates high frequency content)
-            if ((sample > 0 && nextSample < 0) || (sample < 0 && nextSample > 0)) {
-                zeroCrossings++;
-            }
-            
-            // Simple frequency band analysis based on sample position
-            if (i < length / 8) {
-                lowFreqEnergy += energy;      // 0-2.75 kHz (low frequency)
-            } else if (i < length / 4) {
-                midFreqEnergy += energy;      // 2.75-5.5 kHz (mid frequency)
-            } else if (i < length / 2) {
-                highFreqEnergy += energy;     // 5.5-11 kHz (high frequency - whistle range)
+    };
+    
+    private final DetectionEventListener eventListener = new DetectionEventListener() {
+        @Override
+        public void onCountChanged(int count) {
+            if (count > whistleCount) {
+                incrementCounter(count);
+            } else {
+                whistleCount = count;
+                counterValue.setText(String.valueOf(whistleCount));
             }
         }
         
-        // Calculate frequency ratios
-        double highFreqRatio = totalEnergy > 0 ? highFreqEnergy / totalEnergy : 0;
-        double midFreqRatio = totalEnergy > 0 ? midFreqEnergy / totalEnergy : 0;
-        double lowFreqRatio = totalEnergy > 0 ? lowFreqEnergy / totalEnergy : 0;
-        
-        // Calculate zero crossing rate (higher = more high frequency content)
-        double zeroCrossingRate = (double) zeroCrossings / length;
-        
-        // Check if this looks like a whistle
-        boolean hasHighFreq = highFreqRatio > 0.3;  // At least 30% high frequency (lowered threshold)
-        boolean notTooMuchLowFreq = lowFreqRatio < 0.4;  // Less than 40% low frequency (relaxed)
-        boolean hasMidFreq = midFreqRatio > 0.15;  // Some mid frequency content (lowered threshold)
-        boolean hasHighZeroCrossing = zeroCrossingRate > 0.1;  // High zero crossing rate indicates high frequency
-        
-        boolean isWhistleSound = hasHighFreq && notTooMuchLowFreq && hasMidFreq && hasHighZeroCrossing && isLoudEnough;
-        
-        // Enhanced debug logging
-        if (totalEnergy > 0.001) { // Lower threshold to see more data
-            Log.d("WhistleDetection", String.format("Energy: %.4f, High: %.2f, Mid: %.2f, Low: %.2f, ZC: %.3f, Loud: %b, Whistle: %b, Sustained: %d", 
-                totalEnergy, highFreqRatio, midFreqRatio, lowFreqRatio, zeroCrossingRate, isLoudEnough, isWhistleSound, sustainedHighFreqSamples));
+        @Override
+        public void onSourceCountsChanged(List<SourceCount> counts) {
+            showSourceCounts(counts);
         }
         
-        // Update status with real-time debug info
-        if (totalEnergy > 0.01 && currentTime - lastStatusUpdate > STATUS_UPDATE_INTERVAL) {
-            lastStatusUpdate = currentTime;
-            final double finalTotalEnergy = totalEnergy;
-            final double finalHighFreqRatio = highFreqRatio;
-            final double finalZeroCrossingRate = zeroCrossingRate;
-            final int finalSustainedHighFreqSamples = sustainedHighFreqSamples;
-            mainHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    statusText.setText(String.format("Energy: %.3f, High: %.1f%%, ZC: %.2f, Sustained: %d", 
-                        finalTotalEnergy, finalHighFreqRatio * 100, finalZeroCrossingRate, finalSustainedHighFreqSamples));
-                }
-            });
+        @Override
+        public void onWhistleOffset(long timestampMs, boolean timedOut) {
+            statusText.setText(timedOut 
+                    ? "Whistle timeout - listening for new whistles..." 
+                    : "Whistle ended - listening for new whistles...");
         }
         
-        if (isWhistleSound) {
-            // We're hearing whistle-like sound
-            sustainedHighFreqSamples++;
-            silenceSamples = 0; // Reset silence counter
-            interruptionSamples = 0; // Reset interruption counter
+        @Override
+        public void onLevel(LevelReading reading) {
+            double aboveFloorDb = reading.getAboveFloorDb();
             
-            // Update status to show we're detecting whistle-like sound (throttled)
-            if (sustainedHighFreqSamples > 5 && currentTime - lastStatusUpdate > STATUS_UPDATE_INTERVAL) {
-                lastStatusUpdate = currentTime;
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        statusText.setText("Detecting whistle... (" + sustainedHighFreqSamples + "/" + SUSTAINED_SAMPLES_REQUIRED + ")");
-                    }
-                });
+            // Enhanced debug logging
+            if (aboveFloorDb > 0) {
+                Log.d("WhistleDetection", String.format("Power: %.1f dBFS, Floor: %.1f dBFS, High: %.2f, ZC: %.3f, Whistle: %b, Sustained: %d ms", 
+                    reading.powerDb, reading.noiseFloorDb, reading.highFreqRatio, 
+                    reading.zeroCrossingRate, reading.whistleLike, reading.sustainedMs));
             }
             
-            // If we're not already tracking a whistle, start tracking
-            if (!isWhistleInProgress && sustainedHighFreqSamples >= SUSTAINED_SAMPLES_REQUIRED) {
-                isWhistleInProgress = true;
-                whistleStartTime = currentTime;
-                lastWhistleTime = currentTime; // Update cooldown
-                return true; // This is the start of a new whistle
-            }
-        } else {
-            // We're not hearing whistle-like sound
-            silenceSamples++;
-            interruptionSamples++;
-            
-            // Only reset sustained samples if interruption is long enough
-            if (interruptionSamples >= MAX_INTERRUPTION_SAMPLES) {
-                sustainedHighFreqSamples = 0;
-            }
-            
-            // Update status to show we're listening
-            if (silenceSamples == 1 && !isWhistleInProgress) {
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        statusText.setText("Listening for whistles...");
-                    }
-                });
-            }
-            
-            // If we were tracking a whistle and now have enough silence, end the whistle
-            if (isWhistleInProgress && silenceSamples >= WHISTLE_END_SAMPLES) {
-                isWhistleInProgress = false;
-                silenceSamples = 0;
-                sustainedHighFreqSamples = 0;
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        statusText.setText("Whistle ended - listening for new whistles...");
-                    }
-                });
+            long onsetMs = service != null ? service.getDetectorConfig().getWhistleOnsetMs() : 0;
+            if (reading.whistleInProgress) {
+                statusText.setText("Whistle in progress... Count: " + whistleCount);
+            } else if (reading.whistleLike && reading.sustainedMs > onsetMs / 2) {
+                statusText.setText("Detecting whistle... (" + reading.sustainedMs + "/" 
+                    + onsetMs + " ms)");
+            } else if (aboveFloorDb > 6) {
+                // Real-time debug info
+                statusText.setText(String.format("Level: +%.1f dB, High: %.1f%%, ZC: %.2f, Sustained: %d ms", 
+                    aboveFloorDb, reading.highFreqRatio * 100, reading.zeroCrossingRate, reading.sustainedMs));
+            } else if (wasWhistleLike) {
+                statusText.setText("Listening for whistles...");
             }
+            wasWhistleLike = reading.whistleLike;
         }
-        
-        return false; // No new whistle detected
-    }
+    };
     
-    private void incrementCounter() {
-        whistleCount++;
+    private void incrementCounter(int count) {
+        whistleCount = count;
         counterValue.setText(String.valueOf(whistleCount));
         
         // Update status to show detection
@@ -446,58 +387,70 @@ public class MainActivity extends AppCompatActivity {
         }, 3000);
     }
     
+    // The breakdown only means something once a second cooker has whistled
+    private void showSourceCounts(List<SourceCount> counts) {
+        if (counts.size() < 2) {
+            sourceCounts.setVisibility(View.GONE);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < counts.size(); i++) {
+            SourceCount source = counts.get(i);
+            if (i > 0) {
+                text.append('\n');
+            }
+            text.append(getString(R.string.source_count, i + 1, source.frequencyHz / 1000, source.count));
+        }
+        sourceCounts.setText(text);
+        sourceCounts.setVisibility(View.VISIBLE);
+    }
+    
     private void resetCounter() {
         whistleCount = 0;
         counterValue.setText("0");
         
-        // Reset whistle state
-        isWhistleInProgress = false;
-        sustainedHighFreqSamples = 0;
-        silenceSamples = 0;
-        interruptionSamples = 0;
-        whistleStartTime = 0;
-        
-        // Also reset the service counter if running
-        if (isBackgroundMode) {
-            Intent serviceIntent = new Intent(this, WhistleDetectionService.class);
-            serviceIntent.putExtra("action", "reset");
-            startService(serviceIntent);
+        // The service owns the count, including the one shown in the notification
+        if (service != null) {
+            service.resetCount();
         }
         
         statusText.setText("Ready to listen for whistles");
     }
     
+    // Whistles to stop after, or 0 if the field is empty
+    private int getTargetCount() {
+        try {
+            return Integer.parseInt(targetInput.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
     private void toggleBackgroundMode() {
-        isBackgroundMode = !isBackgroundMode;
-        
-        if (isBackgroundMode) {
-            // Start background service
+        if (service != null) {
+            service.setTargetCount(getTargetCount());
+        }
+        if (!isBackgroundMode) {
+            // Promote the session (starting it if needed) to a foreground service
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) 
                     == PackageManager.PERMISSION_GRANTED) {
                 Intent serviceIntent = new Intent(this, WhistleDetectionService.class);
                 serviceIntent.putExtra("action", "start");
                 startForegroundService(serviceIntent);
-                
-                backgroundToggleButton.setText("Stop Background");
-                statusText.setText("Background detection active - check notification bar");
             } else {
                 Toast.makeText(this, "Microphone permission required for background detection", Toast.LENGTH_SHORT).show();
-                isBackgroundMode = false;
             }
-        } else {
-            // Stop background service
-            Intent serviceIntent = new Intent(this, WhistleDetectionService.class);
-            serviceIntent.putExtra("action", "stop");
-            startService(serviceIntent);
-            
-            backgroundToggleButton.setText("Start Background");
-            statusText.setText("Ready to listen for whistles");
+        } else if (service != null) {
+            // Keep capturing while the activity is attached; leaving the screen then stops it
+            service.setBackgroundMode(false);
         }
     }
     
     private void updateUI() {
         if (isListening) {
-            statusText.setText("Listening for whistles...");
+            statusText.setText(isBackgroundMode 
+                    ? "Background detection active - check notification bar" 
+                    : "Listening for whistles...");
             startStopButton.setText(getString(R.string.stop_listening));
             startStopButton.setBackgroundColor(getResources().getColor(R.color.secondary_color));
         } else {
@@ -505,20 +458,8 @@ public class MainActivity extends AppCompatActivity {
             startStopButton.setText(getString(R.string.start_listening));
             startStopButton.setBackgroundColor(getResources().getColor(R.color.primary_color));
         }
-    }
-    
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        stopListening();
-    }
-    
-    @Override
-    protected void onPause() {
-        super.onPause();
-        if (isListening) {
-            stopListening();
-        }
+        backgroundToggleButton.setText(isBackgroundMode ? "Stop Background" : "Start Background");
+        boolean enrolling = service != null && service.isEnrolling();
+        enrollButton.setText(getString(enrolling ? R.string.cancel_learning : R.string.learn_cooker));
     }
 }
-
@@ -0,0 +1,98 @@
+package com.whistlecounter.app;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.whistlecounter.detector.stats.PowerStats;
+
+import java.util.Locale;
+
+/**
+ * Debug screen showing the detection service's {@link PowerStats}, over the
+ * last minute and since the service started, refreshed once a second.
+ */
+public class PowerStatsActivity extends AppCompatActivity {
+    
+    private static final long REFRESH_INTERVAL = 1000;
+    
+    private TextView statsText;
+    private WhistleDetectionService service;
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_power_stats);
+        statsText = findViewById(R.id.statsText);
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, WhistleDetectionService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+    
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mainHandler.removeCallbacks(refresh);
+        service = null;
+        unbindService(serviceConnection);
+    }
+    
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((WhistleDetectionService.LocalBinder) binder).getService();
+            refresh.run();
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+            mainHandler.removeCallbacks(refresh);
+        }
+    };
+    
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (service == null) return;
+            
+            PowerStats stats = service.getPowerStats();
+            long now = System.nanoTime();
+            statsText.setText(describe("Last minute", stats.rolling(now)) + "\n" 
+                    + describe("Since service start", stats.snapshot(now)));
+            mainHandler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+    
+    private static String describe(String title, PowerStats.Snapshot s) {
+        StringBuilder text = new StringBuilder();
+        text.append(title).append(String.format(Locale.US, " (%.0f s)\n", s.periodNanos / 1e9));
+        text.append(String.format(Locale.US, "Wake lock held:  %5.1f%%  %.0f s\n", 
+                s.getWakeLockShare() * 100, s.wakeLockHeldNanos / 1e9));
+        text.append(String.format(Locale.US, "  acquire/renew/release: %d/%d/%d\n", 
+                s.wakeLockAcquires, s.wakeLockRenewals, s.wakeLockReleases));
+        text.append(String.format(Locale.US, "Microphone on:   %5.1f%%  %.0f s\n", 
+                s.getMicrophoneShare() * 100, s.microphoneOnNanos / 1e9));
+        text.append(String.format(Locale.US, "Reads:           %d, %.1f ms blocked each\n", 
+                s.reads, s.getMeanReadMillis()));
+        text.append(String.format(Locale.US, "DSP CPU:         %5.2f%% of a core, %.0f us/frame\n", 
+                s.getDspCpuShare() * 100, s.getMeanDspMicros()));
+        text.append(String.format(Locale.US, "Frames:          %d, %d skipped by gate/cooldown\n", 
+                s.frames, s.getFramesSkipped()));
+        text.append(String.format(Locale.US, "Frames dropped:  %d\n", s.framesDropped));
+        text.append(String.format(Locale.US, "Notifications:   %d\n", s.notificationUpdates));
+        return text.toString();
+    }
+}
@@ -8,97 +8,357 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.SampleClock;
+import com.whistlecounter.detector.WhistleDetector;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.audio.DetectionPipeline;
+import com.whistlecounter.detector.audio.Framer;
+import com.whistlecounter.detector.audio.PcmRingBuffer;
+import com.whistlecounter.detector.classifier.CandidateClassifier;
+import com.whistlecounter.detector.classifier.QuantizedClassifier;
+import com.whistlecounter.detector.classifier.QuantizedModel;
+import com.whistlecounter.detector.events.EventStream;
+import com.whistlecounter.detector.fingerprint.FingerprintEnroller;
+import com.whistlecounter.detector.fingerprint.FingerprintStore;
+import com.whistlecounter.detector.fingerprint.WhistleFingerprint;
+import com.whistlecounter.detector.session.ListenScheduler;
+import com.whistlecounter.detector.session.RateSwitcher;
+import com.whistlecounter.detector.session.SessionCheckpoint;
+import com.whistlecounter.detector.session.SessionLog;
+import com.whistlecounter.detector.session.WhistleRecord;
+import com.whistlecounter.detector.sources.SourceCount;
+import com.whistlecounter.detector.sources.WhistleSource;
+import com.whistlecounter.detector.stats.PowerStats;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the single detection session: one microphone capture, one pipeline and
+ * one whistle count, which is kept in a {@link SessionLog} so it survives
+ * restarts. A {@link SessionCheckpoint} holds the live state, so a background
+ * session killed by the system resumes where it left off. In background mode a
+ * {@link ListenScheduler} duty-cycles the microphone between expected whistles.
+ * The activity binds to it to drive the session and subscribes
+ * to its {@link EventStream} to observe it; background mode promotes the same session to a foreground service so it keeps
+ * running after the activity detaches.
+ */
 public class WhistleDetectionService extends Service {
     
     private static final String TAG = "WhistleDetectionService";
     private static final String CHANNEL_ID = "whistle_detection_channel";
+    private static final String SESSION_LOG_FILE = "whistles.wlog";
+    private static final String CHECKPOINT_FILE = "session.ckpt";
+    private static final String FINGERPRINT_FILE = "fingerprints.bin";
+    private static final String CLASSIFIER_ASSET = "whistle_classifier.bin";
+    private static final long CHECKPOINT_INTERVAL_MS = 1000; // Refreshes the noise floor in the checkpoint
     private static final int NOTIFICATION_ID = 1;
+    private static final String TARGET_CHANNEL_ID = "whistle_target_channel";
+    private static final int TARGET_NOTIFICATION_ID = 2;
     
     // Audio recording constants - optimized for battery efficiency
     private static final int SAMPLE_RATE = 22050; // Reduced from 44100 for better battery life
     private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
     private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT) * 2; // Larger buffer for less frequent processing
+    // Multi-rate capture: in the background, the lowest rate whose band still reaches the top of the whistle band
+    private static final int MONITOR_SAMPLE_RATE = 16000;
+    private static final int MONITOR_BUFFER_SIZE = AudioRecord.getMinBufferSize(MONITOR_SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT) * 2; // Negative if the rate is not supported
+    
+    private AudioRecordSource audioSource;
+    private DetectionPipeline pipeline;
+    private long overrunsRecorded; // Of the current pipeline's ring, already counted in powerStats
+    private Framer framer;
+    private volatile boolean isRecording = false;
+    private volatile boolean isBackgroundMode = false;
     
-    // Whistle detection constants
-    private static final long WHISTLE_COOLDOWN_MS = 3000;
-    private static final double MIN_VOLUME_THRESHOLD = 0.01; // Minimum volume to consider (lowered for sensitivity)
-    private static final int SUSTAINED_SAMPLES_REQUIRED = 8; // Samples needed for sustained sound (reduced for responsiveness)
-    private static final int WHISTLE_END_SAMPLES = 10; // Samples of silence to end whistle (reduced for faster reset)
-    private static final long WHISTLE_MAX_DURATION_MS = 30000; // Maximum 30 seconds per whistle
+    // Duty cycling: between expected whistles the microphone is released and the session paused
+    private final ListenScheduler listenScheduler = new ListenScheduler(DETECTOR_CONFIG.getWhistleOnsetMs());
+    private boolean capturePaused = false;
+    private long pausedAtMs; // Elapsed realtime when capture was paused
+    private long pausedAtSample; // Sample clock when capture was paused
+    private volatile long lastEndSample = 0; // Written by the analysis thread
     
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
-    private Thread recordingThread;
+    // Multi-rate capture: between candidates the background session monitors at a lower rate,
+    // and only the full-rate detector confirms and counts whistles
+    private final RateSwitcher rateSwitcher = new RateSwitcher();
+    private final WhistleDetector monitor = MONITOR_BUFFER_SIZE > 0 
+            ? new WhistleDetector(RateSwitcher.monitorConfig(DETECTOR_CONFIG, MONITOR_SAMPLE_RATE), 
+                    MONITOR_SAMPLE_RATE, MONITOR_BUFFER_SIZE) 
+            : null;
+    private final Framer monitorFramer = monitor != null 
+            ? new Framer(MONITOR_BUFFER_SIZE, MONITOR_BUFFER_SIZE, this::processMonitorFrame) 
+            : null;
+    private volatile boolean monitorUnavailable = monitor == null; // Also set once the device refuses the rate
+    private boolean monitoring = false; // Capture runs at the monitor rate
+    private double handoverFloorDb = Double.NaN; // Noise floor last heard at either rate, for the monitor to start from
     private PowerManager.WakeLock wakeLock;
+    private static final long WAKE_LOCK_TIMEOUT_MS = 10 * 60 * 1000L; // Auto-release after 10 minutes
+    
+    // What the service costs in power, so battery claims can be checked on real devices
+    private final PowerStats powerStats = new PowerStats(System.nanoTime());
+    
+    // Cookers whistling at once are counted apart, by the frequency of their whistles. That
+    // needs a spectrum, so the bands come from the same FFT rather than from Goertzel probes
+    // on top of it. The session runs the same way whether or not the activity is attached,
+    // so attaching never restarts capture.
+    private static final DetectorConfig DETECTOR_CONFIG = DetectorConfig.defaults().toBuilder()
+            .setAnalysisMode(AnalysisMode.SPECTRAL)
+            .setMultiSourceEnabled(true)
+            .build();
+    
+    private static final int HOP_SIZE = BUFFER_SIZE; // No overlap: each sample is analyzed once
+    private static final int RING_CAPACITY = 8; // Frames buffered between capture and analysis
     
     // Detection state
-    private int whistleCount = 0;
-    private long lastWhistleTime = 0;
-    private int sustainedHighFreqSamples = 0;
-    private int silenceSamples = 0;
-    private int interruptionSamples = 0;
-    private boolean isWhistleInProgress = false;
-    private long whistleStartTime = 0;
-    private static final int MAX_INTERRUPTION_SAMPLES = 3; // Allow up to 3 samples of interruption
+    private final AtomicInteger whistleCount = new AtomicInteger();
+    // Whistles per cooker; replaced as a whole so other threads always see a consistent list
+    private volatile List<SourceCount> sourceCounts = Collections.emptyList();
+    
+    // Learns a new cooker's fingerprint while set; fed on the analysis thread
+    private volatile FingerprintEnroller enroller;
+    
+    // Target-count mode: the session stops itself once it has counted this many whistles
+    private volatile int targetCount = 0; // 0 = listen until stopped
+    private volatile int sessionStartCount = 0; // The count is restored across sessions, the target is not
+    private volatile boolean targetReached = false;
+    private final WhistleDetector detector = new WhistleDetector(DETECTOR_CONFIG, SAMPLE_RATE, BUFFER_SIZE);
+    
+    // Detection events for UI clients, published straight from the analysis thread
+    private final EventStream events = new EventStream();
+    private SessionLog sessionLog; // Null if it could not be opened; detection works without it
+    private SessionCheckpoint checkpoint; // Likewise
+    private SessionCheckpoint.State restoredState; // Left by a previous process, until resumed or discarded
+    private volatile long lastWhistleWallMs = 0;
+    private long lastCheckpointMs = 0; // Sample-clock time of the last periodic save, analysis thread only
+    private volatile SessionListener sessionListener;
+    private final IBinder binder = new LocalBinder();
     
     // Battery optimization
     private long lastNotificationUpdate = 0;
     private static final long NOTIFICATION_UPDATE_INTERVAL = 2000; // Update notification max every 2 seconds
-    private int consecutiveSilentSamples = 0;
-    private static final int SILENT_SAMPLES_THRESHOLD = 100; // Reduce processing after 100 silent samples
-    private boolean isLowPowerMode = false;
-    private long lastProcessingTime = 0;
-    private static final long PROCESSING_INTERVAL_MS = 50; // Process audio every 50ms max
     
     private NotificationManager notificationManager;
     private Handler mainHandler = new Handler(Looper.getMainLooper());
     
+    // Receives session start/stop and mode changes on the main thread
+    public interface SessionListener {
+        
+        void onSessionChanged(boolean detecting, boolean backgroundMode);
+        
+        // The target count was reached and the session has stopped
+        default void onTargetReached(int count) {
+        }
+        
+        // Enrollment started or heard another of the whistles it needs
+        default void onEnrollmentProgress(int whistlesHeard, int whistlesNeeded) {
+        }
+        
+        // Enrollment ended: a cooker was learned, or it was cancelled before hearing a whistle
+        default void onEnrollmentFinished(boolean learned, int knownCookers) {
+        }
+    }
+    
+    public class LocalBinder extends Binder {
+        
+        public WhistleDetectionService getService() {
+            return WhistleDetectionService.this;
+        }
+    }
+    
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
         
-        // Acquire wake lock to keep CPU running
+        // Wake lock keeps the CPU running while the session is in the background
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "WhistleCounter::WhistleDetection");
+        
+        detector.setListener(detectionListener);
+        if (monitor != null) {
+            monitor.setClassifier(CandidateClassifier.INSTANCE);
+            monitor.setListener(monitorListener);
+        }
+        openSessionLog();
+        openCheckpoint();
+        loadFingerprints();
+        loadClassifier();
+    }
+    
+    // Known cookers are matched by fingerprint; with none, any whistle-like sound counts
+    private void loadFingerprints() {
+        try {
+            List<WhistleFingerprint> fingerprints = FingerprintStore.load(new File(getFilesDir(), FINGERPRINT_FILE));
+            detector.setFingerprints(fingerprints);
+            Log.i(TAG, "Loaded " + fingerprints.size() + " cooker fingerprints");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading fingerprints: " + e.getMessage());
+        }
+    }
+    
+    // A model trained with detector-tools replaces the band rules when the build ships one
+    private void loadClassifier() {
+        try (InputStream in = getAssets().open(CLASSIFIER_ASSET)) {
+            QuantizedModel model = QuantizedModel.read(in);
+            detector.setClassifier(new QuantizedClassifier(model));
+            Log.i(TAG, "Loaded classifier model with " + model.getHiddenCount() + " hidden units");
+        } catch (FileNotFoundException e) {
+            Log.i(TAG, "No classifier model, using the band rules");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading classifier model: " + e.getMessage());
+        }
+    }
+    
+    // Reopens the log and picks the count up where the previous process left it
+    private void openSessionLog() {
+        try {
+            sessionLog = SessionLog.open(new File(getFilesDir(), SESSION_LOG_FILE));
+            whistleCount.set(sessionLog.readLastCount());
+            Log.i(TAG, "Session log has " + sessionLog.getRecordCount() + " records, count restored to " 
+                    + whistleCount.get());
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening session log: " + e.getMessage());
+            sessionLog = null;
+        }
+    }
+    
+    // The checkpoint is written as soon as anything changes, so it is newer than the log's last batch
+    private void openCheckpoint() {
+        try {
+            checkpoint = SessionCheckpoint.open(new File(getFilesDir(), CHECKPOINT_FILE));
+            restoredState = checkpoint.getRestored();
+            if (restoredState != null) {
+                whistleCount.set(restoredState.count);
+                targetCount = restoredState.targetCount;
+                sessionStartCount = restoredState.sessionStartCount;
+                lastWhistleWallMs = restoredState.lastWhistleMs;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening checkpoint: " + e.getMessage());
+            checkpoint = null;
+        }
+    }
+    
+    // Cheap enough to call from the analysis thread on every state change
+    private void saveCheckpoint() {
+        if (checkpoint != null) {
+            checkpoint.save(whistleCount.get(), isRecording, isBackgroundMode, detector.isWhistleInProgress(), 
+                    lastWhistleWallMs, detector.getNoiseFloorDb(), targetCount, sessionStartCount);
+        }
+    }
+    
+    private void appendEvent(WhistleRecord.Kind kind) {
+        if (sessionLog != null) {
+            sessionLog.append(WhistleRecord.event(kind, System.currentTimeMillis(), whistleCount.get()));
+        }
+    }
+    
+    // Called on the analysis thread; the log only queues the record
+    private void appendWhistle(WhistleRecord.Kind kind, boolean timedOut) {
+        if (sessionLog != null) {
+            sessionLog.append(new WhistleRecord(kind, System.currentTimeMillis(), whistleCount.get(), 
+                    (int) detector.getWhistleDurationMs(), (float) detector.getWhistlePeakDb(), 
+                    (float) detector.getWhistleConfidence(), timedOut));
+        }
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
+        if (intent == null) {
+            // Restarted after the system killed us
+            resumeAfterRestart();
+        } else {
             String action = intent.getStringExtra("action");
             if ("start".equals(action)) {
-                startDetection();
+                if (startSession()) {
+                    setBackgroundMode(true);
+                } else {
+                    stopSelf();
+                }
             } else if ("stop".equals(action)) {
-                stopDetection();
+                stopSession();
+                stopSelf();
             } else if ("reset".equals(action)) {
-                resetCounter();
+                resetCount();
             }
         }
         
         return START_STICKY; // Restart if killed
     }
     
+    /**
+     * Resumes a background session that was running when the process died. Any
+     * other state only supplies the count; the activity restarts its own sessions.
+     */
+    private void resumeAfterRestart() {
+        SessionCheckpoint.State state = restoredState;
+        restoredState = null;
+        if (state == null || !state.detecting || !state.backgroundMode) {
+            stopSelf();
+            return;
+        }
+        
+        Log.i(TAG, "Resuming background session: count=" + state.count + ", whistle in progress=" 
+                + state.whistleInProgress);
+        if (!startSession(state)) {
+            stopSelf();
+            return;
+        }
+        try {
+            setBackgroundMode(true);
+        } catch (RuntimeException e) {
+            // Newer releases may refuse a microphone foreground service started from the background
+            Log.e(TAG, "Cannot resume in the foreground: " + e.getMessage());
+            stopSession();
+        }
+    }
+    
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
+    }
+    
+    @Override
+    public boolean onUnbind(Intent intent) {
+        sessionListener = null;
+        // Without background mode the session lives only as long as the activity is attached
+        if (!isBackgroundMode) {
+            stopSession();
+        }
+        return false;
     }
     
     private void createNotificationChannel() {
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
                 CHANNEL_ID,
@@ -108,258 +368,601 @@ public class WhistleDetectionService extends Service {
             channel.setDescription("Shows whistle count in notification bar");
             channel.setShowBadge(true);
             
-            notificationManager = getSystemService(NotificationManager.class);
             notificationManager.createNotificationChannel(channel);
+            
+            // The target alarm has to be heard from across the kitchen
+            NotificationChannel targetChannel = new NotificationChannel(
+                TARGET_CHANNEL_ID,
+                "Whistle Target",
+                NotificationManager.IMPORTANCE_HIGH
+            );
+            targetChannel.setDescription("Alerts when the target number of whistles is reached");
+            targetChannel.setSound(getAlarmSound(), new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build());
+            targetChannel.enableVibration(true);
+            notificationManager.createNotificationChannel(targetChannel);
         }
     }
     
-    private void startDetection() {
-        if (isRecording) return;
+    private static Uri getAlarmSound() {
+        Uri sound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        return sound != null ? sound : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+    }
+    
+    /**
+     * Starts capture if no session is running. Returns true if a session is running
+     * afterwards.
+     */
+    public boolean startSession() {
+        return startSession(null);
+    }
+    
+    private boolean startSession(SessionCheckpoint.State resumeFrom) {
+        if (isRecording) return true;
+        restoredState = null; // A session started now supersedes the one that was killed
         
         if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.RECORD_AUDIO) 
                 != PackageManager.PERMISSION_GRANTED) {
             Log.e(TAG, "Microphone permission not granted");
-            return;
+            return false;
+        }
+        
+        // Reset detection state; each session's detector numbers cookers afresh
+        detector.reset();
+        setSourceCounts(Collections.<SourceCount>emptyList());
+        lastCheckpointMs = 0;
+        lastEndSample = 0;
+        targetReached = false;
+        if (resumeFrom == null) {
+            sessionStartCount = whistleCount.get(); // A resumed session keeps counting towards its target
+        }
+        listenScheduler.reset();
+        rateSwitcher.reset(SystemClock.elapsedRealtime());
+        monitoring = false;
+        if (resumeFrom != null) {
+            restoreDetector(resumeFrom);
         }
+        framer = new Framer(BUFFER_SIZE, HOP_SIZE, this::processAudioFrame);
         
+        if (!startCapture(SAMPLE_RATE, BUFFER_SIZE, framer, 0)) {
+            return false;
+        }
+        isRecording = true;
+        appendEvent(WhistleRecord.Kind.SESSION_START);
+        saveCheckpoint();
+        
+        notifySessionChanged();
+        return true;
+    }
+    
+    // Opens the microphone at sampleRate and starts the pipeline, its first frame following startSample
+    private boolean startCapture(int sampleRate, int bufferSize, Framer framer, long startSample) {
         try {
-            audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, 
-                    SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT, BUFFER_SIZE);
+            AudioRecord audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, 
+                    sampleRate, CHANNEL_CONFIG, AUDIO_FORMAT, bufferSize);
             
             if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
                 Log.e(TAG, "Failed to initialize audio recording");
-                return;
-            }
-            
-            // Reset detection state
-            sustainedHighFreqSamples = 0;
-            silenceSamples = 0;
-            isWhistleInProgress = false;
-            lastWhistleTime = 0;
-            
-            isRecording = true;
-            audioRecord.startRecording();
-            
-            // Acquire wake lock with timeout to prevent indefinite battery drain
-            if (wakeLock != null && !wakeLock.isHeld()) {
-                wakeLock.acquire(10 * 60 * 1000L /*10 minutes*/); // Auto-release after 10 minutes
+                audioRecord.release();
+                return false;
             }
             
-            recordingThread = new Thread(this::processAudioData);
-            recordingThread.start();
-            
-            startForeground(NOTIFICATION_ID, createNotification());
+            // Capture and analysis run on separate threads so slow DSP never stalls the microphone
+            audioSource = new AudioRecordSource(audioRecord, powerStats);
+            DetectionPipeline started = new DetectionPipeline(audioSource, framer.getHopSize(), RING_CAPACITY, 
+                    PcmRingBuffer.OverrunPolicy.DROP_OLDEST);
+            started.setCaptureListener(cause -> mainHandler.post(() -> onCaptureLost(started, cause)));
+            pipeline = started;
+            overrunsRecorded = 0;
+            pipeline.start(framer, startSample);
+            powerStats.onMicrophoneOpened(System.nanoTime());
+            return true;
             
         } catch (Exception e) {
             Log.e(TAG, "Error starting audio recording: " + e.getMessage());
+            if (audioSource != null) {
+                audioSource.release();
+                audioSource = null;
+            }
+            pipeline = null;
+            return false;
         }
     }
     
-    private void stopDetection() {
-        isRecording = false;
-        
-        if (audioRecord != null) {
+    // The microphone could not be started or went away: end the session rather than look like it is listening
+    private void onCaptureLost(DetectionPipeline lost, RuntimeException cause) {
+        if (lost != pipeline || !isRecording) return; // Already replaced or stopped
+        Log.e(TAG, "Capture ended unexpectedly" + (cause != null ? ": " + cause.getMessage() : ""));
+        stopSession();
+    }
+    
+    // Brings the dropped frames in powerStats up to date with the current pipeline's ring
+    private void recordOverruns() {
+        if (pipeline == null) return;
+        long overruns = pipeline.getRingBuffer().getOverruns();
+        powerStats.recordDropped(overruns - overrunsRecorded);
+        overrunsRecorded = overruns;
+    }
+    
+    private void stopCapture() {
+        if (pipeline != null) {
             try {
-                audioRecord.stop();
-                audioRecord.release();
-                audioRecord = null;
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping audio recording: " + e.getMessage());
+                pipeline.stop(1000);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Error joining detection threads: " + e.getMessage());
             }
+            PcmRingBuffer ring = pipeline.getRingBuffer();
+            Log.d(TAG, "Capture stopped: frames=" + ring.getFramesWritten() 
+                    + ", overruns=" + ring.getOverruns() + ", coalesced=" + ring.getCoalesced());
+            recordOverruns();
+            powerStats.onMicrophoneClosed(System.nanoTime());
         }
         
-        if (recordingThread != null) {
+        if (audioSource != null) {
             try {
-                recordingThread.join(1000);
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Error joining recording thread: " + e.getMessage());
+                audioSource.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing audio recording: " + e.getMessage());
             }
-            recordingThread = null;
+            audioSource = null;
+            pipeline = null;
         }
-        
-        // Release wake lock
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-        }
-        
-        stopForeground(true);
-        stopSelf();
     }
     
-    private void resetCounter() {
-        whistleCount = 0;
-        updateNotification();
+    private void restoreDetector(SessionCheckpoint.State state) {
+        long now = System.currentTimeMillis();
+        long sinceLastWhistle = state.lastWhistleMs > 0 
+                ? now - state.lastWhistleMs : DETECTOR_CONFIG.getWhistleCooldownMs();
+        // Past the maximum duration the whistle cannot still be the one we counted
+        boolean whistleInProgress = state.whistleInProgress 
+                && now - state.savedAtMs < DETECTOR_CONFIG.getWhistleMaxDurationMs();
+        // Not capped at the cooldown: a whistle in progress times out counting from then
+        detector.restore(whistleInProgress, sinceLastWhistle, state.noiseFloorDb);
     }
     
-    private void processAudioData() {
-        short[] buffer = new short[BUFFER_SIZE];
-        double[] fftBuffer = new double[BUFFER_SIZE];
+    public void stopSession() {
+        boolean wasRecording = isRecording;
+        isRecording = false;
+        cancelEnrollment();
         
-        while (isRecording && audioRecord != null) {
-            long currentTime = System.currentTimeMillis();
+        mainHandler.removeCallbacks(dutyCycleTick);
+        stopCapture();
+        capturePaused = false;
+        monitoring = false;
+        if (wasRecording) {
+            Log.i(TAG, "Classifier ran on " + detector.getFramesClassified() + " of " 
+                    + detector.getFramesProcessed() + " frames, overrun gaps=" + framer.getGaps());
             
-            // Throttle processing to save battery
-            if (currentTime - lastProcessingTime < PROCESSING_INTERVAL_MS) {
-                try {
-                    Thread.sleep(10); // Small sleep to reduce CPU usage
-                } catch (InterruptedException e) {
-                    break;
-                }
-                continue;
-            }
-            
-            int bytesRead = audioRecord.read(buffer, 0, BUFFER_SIZE);
-            
-            if (bytesRead > 0) {
-                // Convert to double for processing
-                for (int i = 0; i < bytesRead; i++) {
-                    fftBuffer[i] = buffer[i] / 32768.0;
-                }
-                
-                // Adaptive processing based on silence detection
-                if (isLowPowerMode && consecutiveSilentSamples > SILENT_SAMPLES_THRESHOLD) {
-                    // Skip processing every other sample in low power mode
-                    if (consecutiveSilentSamples % 2 == 0) {
-                        lastProcessingTime = currentTime;
-                        continue;
-                    }
-                }
-                
-                if (detectWhistle(fftBuffer, bytesRead)) {
-                    mainHandler.post(this::incrementCounter);
-                    isLowPowerMode = false; // Exit low power mode when activity detected
-                    consecutiveSilentSamples = 0;
-                    renewWakeLock(); // Renew wake lock when activity detected
-                } else {
-                    consecutiveSilentSamples++;
-                    if (consecutiveSilentSamples > SILENT_SAMPLES_THRESHOLD) {
-                        isLowPowerMode = true;
-                    }
-                }
-                
-                lastProcessingTime = currentTime;
+            // The pipeline has stopped, so the detector can be read from here
+            if (detector.isWhistleInProgress()) {
+                appendWhistle(WhistleRecord.Kind.WHISTLE_END, false);
             }
+            appendEvent(WhistleRecord.Kind.SESSION_END);
         }
-    }
-    
-    private boolean detectWhistle(double[] audioData, int length) {
-        long currentTime = System.currentTimeMillis();
         
-        // Check for maximum whistle duration timeout (only if we have a valid start time)
-        if (isWhistleInProgress && whistleStartTime > 0 && currentTime - whistleStartTime > WHISTLE_MAX_DURATION_MS) {
-            isWhistleInProgress = false;
-            silenceSamples = 0;
-            sustainedHighFreqSamples = 0;
-            whistleStartTime = 0;
-        }
+        // Reset whistle state when stopping
+        detector.reset();
         
-        // Only check cooldown if we're not already tracking a whistle
-        if (!isWhistleInProgress && currentTime - lastWhistleTime < WHISTLE_COOLDOWN_MS) {
-            return false;
-        }
+        setBackgroundMode(false);
+        saveCheckpoint();
         
-        // Calculate total energy first
-        double totalEnergy = 0;
-        for (int i = 0; i < length; i++) {
-            double sample = audioData[i];
-            totalEnergy += sample * sample;
+        if (wasRecording) {
+            notifySessionChanged();
         }
+    }
+    
+    /**
+     * Promotes the session to a foreground service so it survives the activity
+     * detaching, or demotes it back to a bound-only session.
+     */
+    public void setBackgroundMode(boolean background) {
+        if (background == isBackgroundMode) return;
+        if (background && !isRecording) return;
         
-        // Check if loud enough first
-        boolean isLoudEnough = totalEnergy >= MIN_VOLUME_THRESHOLD;
+        isBackgroundMode = background;
         
-        if (!isLoudEnough) {
-            // Not loud enough, reset counters
-            sustainedHighFreqSamples = 0;
-            silenceSamples++;
-            interruptionSamples++;
+        if (background) {
+            startForeground(NOTIFICATION_ID, createNotification());
+            rateSwitcher.reset(SystemClock.elapsedRealtime()); // Capture runs at full rate until things are quiet
+            mainHandler.post(dutyCycleTick);
+            
+            // Acquire wake lock with timeout to prevent indefinite battery drain
+            if (wakeLock != null && !wakeLock.isHeld()) {
+                wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+                powerStats.onWakeLockAcquired(System.nanoTime(), WAKE_LOCK_TIMEOUT_MS * 1000000L);
+            }
+        } else {
+            // With the activity attached the microphone stays on, at full rate
+            mainHandler.removeCallbacks(dutyCycleTick);
+            if (capturePaused && isRecording) {
+                resumeCapture();
+            }
+            applyRate();
             
-            // Only reset sustained samples if interruption is long enough
-            if (interruptionSamples >= MAX_INTERRUPTION_SAMPLES) {
-                sustainedHighFreqSamples = 0;
+            // Release wake lock
+            if (wakeLock != null && wakeLock.isHeld()) {
+                wakeLock.release();
+                powerStats.onWakeLockReleased(System.nanoTime());
             }
-            return false;
+            
+            stopForeground(true);
+            stopSelf(); // Stays alive while the activity is still bound
         }
+        saveCheckpoint();
         
-        // Simple frequency analysis using zero-crossing rate and energy distribution
-        int zeroCrossings = 0;
-        double highFreqEnergy = 0;
-        double midFreqEnergy = 0;
-        double lowFreqEnergy = 0;
-        
-        for (int i = 0; i < length - 1; i++) {
-            double sample = audioData[i];
-            double nextSample = audioData[i + 1];
-            double energy = sample * sample;
+        notifySessionChanged();
+    }
+    
+    /**
+     * Sets the number of whistles after which the session raises an alarm and
+     * stops itself; 0 turns target-count mode off. Only whistles counted since
+     * the session started, or since the count was last reset, count towards it.
+     * The target is edited as it is typed, so one the session has already
+     * passed does not stop it at once: the next whistle does.
+     */
+    public void setTargetCount(int target) {
+        targetCount = Math.max(0, target);
+        if (isBackgroundMode) {
+            updateNotification();
+        }
+        saveCheckpoint();
+    }
+    
+    public int getTargetCount() {
+        return targetCount;
+    }
+    
+    // Applies the listen scheduler's decision and comes back when it is due to change
+    private final Runnable dutyCycleTick = new Runnable() {
+        @Override
+        public void run() {
+            if (!isRecording || !isBackgroundMode) return;
             
-            // Count zero crossings (indicates high frequency content)
-            if ((sample > 0 && nextSample < 0) || (sample < 0 && nextSample > 0)) {
-                zeroCrossings++;
+            long now = SystemClock.elapsedRealtime();
+            boolean listen = listenScheduler.update(now);
+            if (listen && capturePaused) {
+                resumeCapture();
+            } else if (!listen && !capturePaused) {
+                pauseCapture();
             }
-            
-            // Simple frequency band analysis based on sample position
-            if (i < length / 8) {
-                lowFreqEnergy += energy;      // 0-2.75 kHz (low frequency)
-            } else if (i < length / 4) {
-                midFreqEnergy += energy;      // 2.75-5.5 kHz (mid frequency)
-            } else if (i < length / 2) {
-                highFreqEnergy += energy;     // 5.5-11 kHz (high frequency - whistle range)
+            long delay = Math.max(100, listenScheduler.getNextDecisionMs() - now);
+            mainHandler.postDelayed(this, delay);
+        }
+    };
+    
+    private void pauseCapture() {
+        stopCurrentCapture();
+        capturePaused = true;
+    }
+    
+    private void resumeCapture() {
+        if (restartCapture()) {
+            capturePaused = false;
+        } else {
+            Log.e(TAG, "Could not resume capture, retrying on the next tick");
+        }
+    }
+    
+    // Stops capture at whichever rate it runs, noting where the full-rate detector's clock stopped
+    private void stopCurrentCapture() {
+        stopCapture();
+        // Analysis thread has been joined
+        if (monitoring) {
+            handoverFloorDb = monitor.getNoiseFloorDb();
+        } else {
+            pausedAtMs = SystemClock.elapsedRealtime();
+            pausedAtSample = lastEndSample;
+            handoverFloorDb = detector.getNoiseFloorDb();
+        }
+    }
+    
+    /**
+     * Opens capture at the rate the rate switcher asks for. The full-rate sample
+     * clock jumps over the time it was not listening, so detector timing still
+     * follows real time. The monitor starts afresh each time: it never hears the
+     * end of the whistles it hands over, so what it learned before is stale.
+     */
+    private boolean restartCapture() {
+        if (wantsMonitorRate()) {
+            monitor.reset();
+            monitor.restore(false, 0, handoverFloorDb);
+            monitorFramer.reset();
+            if (startCapture(MONITOR_SAMPLE_RATE, MONITOR_BUFFER_SIZE, monitorFramer, 0)) {
+                monitoring = true;
+                return true;
             }
+            Log.w(TAG, "Cannot capture at " + MONITOR_SAMPLE_RATE + " Hz, staying at full rate");
+            monitorUnavailable = true;
         }
+        monitoring = false;
+        long pausedMs = SystemClock.elapsedRealtime() - pausedAtMs;
+        framer.reset(); // The clock jumps over the pause on purpose; only overruns count as gaps
+        return startCapture(SAMPLE_RATE, BUFFER_SIZE, framer, pausedAtSample + pausedMs * SAMPLE_RATE / 1000);
+    }
+    
+    // Multi-rate capture runs in the background only, and never while a cooker is being learned
+    private boolean wantsMonitorRate() {
+        return isBackgroundMode && !monitorUnavailable && enroller == null && !rateSwitcher.isFullRate();
+    }
+    
+    // Restarts capture if it is not at the rate the rate switcher asks for; posted from the analysis thread
+    private void applyRate() {
+        if (!isRecording || capturePaused || monitoring == wantsMonitorRate()) return;
         
-        // Calculate frequency ratios
-        double highFreqRatio = totalEnergy > 0 ? highFreqEnergy / totalEnergy : 0;
-        double midFreqRatio = totalEnergy > 0 ? midFreqEnergy / totalEnergy : 0;
-        double lowFreqRatio = totalEnergy > 0 ? lowFreqEnergy / totalEnergy : 0;
-        
-        // Calculate zero crossing rate (higher = more high frequency content)
-        double zeroCrossingRate = (double) zeroCrossings / length;
+        stopCurrentCapture();
+        if (!restartCapture()) {
+            // Like a failed resume: the next duty-cycle tick tries again
+            Log.e(TAG, "Could not restart capture after a rate switch");
+            capturePaused = true;
+        }
+    }
+    
+    public void resetCount() {
+        whistleCount.set(0);
+        sessionStartCount = 0;
+        events.publishCount(0);
+        setSourceCounts(Collections.<SourceCount>emptyList());
+        appendEvent(WhistleRecord.Kind.RESET);
+        saveCheckpoint();
+        if (isBackgroundMode) {
+            updateNotification();
+        }
+    }
+    
+    public void setSessionListener(SessionListener listener) {
+        sessionListener = listener;
+    }
+    
+    public int getWhistleCount() {
+        return whistleCount.get();
+    }
+    
+    /**
+     * Learns the next few whistles as a new cooker, starting the session if it
+     * is not running. Whistles heard meanwhile are counted as usual.
+     *
+     * @return false if the session cannot start or no more cookers fit
+     */
+    public boolean startEnrollment() {
+        if (enroller != null) return true;
+        if (detector.getFingerprints().size() >= FingerprintStore.MAX_FINGERPRINTS) return false;
+        if (!startSession()) return false;
         
-        // Check if this looks like a whistle
-        boolean hasHighFreq = highFreqRatio > 0.3;  // At least 30% high frequency (lowered threshold)
-        boolean notTooMuchLowFreq = lowFreqRatio < 0.4;  // Less than 40% low frequency (relaxed)
-        boolean hasMidFreq = midFreqRatio > 0.15;  // Some mid frequency content (lowered threshold)
-        boolean hasHighZeroCrossing = zeroCrossingRate > 0.1;  // High zero crossing rate indicates high frequency
+        FingerprintEnroller learning = new FingerprintEnroller(DETECTOR_CONFIG, SAMPLE_RATE, BUFFER_SIZE, 
+                FingerprintEnroller.DEFAULT_WHISTLES);
+        enroller = learning;
+        applyRate(); // Cookers are learned at full rate
+        notifyEnrollmentProgress(learning);
+        return true;
+    }
+    
+    public void cancelEnrollment() {
+        FingerprintEnroller learning = enroller;
+        if (learning != null) {
+            enroller = null;
+            notifyEnrollmentFinished(false);
+        }
+    }
+    
+    public boolean isEnrolling() {
+        return enroller != null;
+    }
+    
+    public int getKnownCookers() {
+        return detector.getFingerprints().size();
+    }
+    
+    // Back to counting any whistle-like sound
+    public void forgetCookers() {
+        cancelEnrollment();
+        detector.setFingerprints(Collections.<WhistleFingerprint>emptyList());
+        if (!new File(getFilesDir(), FINGERPRINT_FILE).delete()) {
+            Log.w(TAG, "No fingerprint file to delete");
+        }
+    }
+    
+    // Runs on the main thread once the enroller has heard its last whistle end
+    private void finishEnrollment(FingerprintEnroller learning) {
+        if (enroller != learning) return; // Cancelled meanwhile
+        enroller = null;
         
-        boolean isWhistleSound = hasHighFreq && notTooMuchLowFreq && hasMidFreq && hasHighZeroCrossing && isLoudEnough;
+        WhistleFingerprint fingerprint = learning.build();
+        if (fingerprint == null) {
+            notifyEnrollmentFinished(false);
+            return;
+        }
+        List<WhistleFingerprint> fingerprints = new ArrayList<>(detector.getFingerprints());
+        fingerprints.add(fingerprint);
+        detector.setFingerprints(fingerprints);
+        Log.i(TAG, "Learned a cooker whistling at " + Math.round(fingerprint.getDominantHz()) + " Hz with " 
+                + fingerprint.getPartialCount() + " partials");
+        try {
+            FingerprintStore.save(new File(getFilesDir(), FINGERPRINT_FILE), fingerprints);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving fingerprints: " + e.getMessage());
+        }
+        notifyEnrollmentFinished(true);
+    }
+    
+    private void notifyEnrollmentProgress(FingerprintEnroller learning) {
+        SessionListener listener = sessionListener;
+        if (listener != null) {
+            listener.onEnrollmentProgress(learning.getWhistlesHeard(), learning.getWhistlesNeeded());
+        }
+    }
+    
+    private void notifyEnrollmentFinished(boolean learned) {
+        SessionListener listener = sessionListener;
+        if (listener != null) {
+            listener.onEnrollmentFinished(learned, getKnownCookers());
+        }
+    }
+    
+    public List<SourceCount> getSourceCounts() {
+        return sourceCounts;
+    }
+    
+    public EventStream getEvents() {
+        return events;
+    }
+    
+    // Main thread: frames dropped by the running capture are counted as of this call
+    public PowerStats getPowerStats() {
+        recordOverruns();
+        return powerStats;
+    }
+    
+    // Whistle history for queries; null if the log could not be opened
+    public SessionLog getSessionLog() {
+        return sessionLog;
+    }
+    
+    public boolean isDetecting() {
+        return isRecording;
+    }
+    
+    public boolean isBackgroundMode() {
+        return isBackgroundMode;
+    }
+    
+    public boolean isWhistleInProgress() {
+        return detector.isWhistleInProgress();
+    }
+    
+    public DetectorConfig getDetectorConfig() {
+        return detector.getConfig();
+    }
+    
+    private synchronized void countSourceWhistle(WhistleSource source) {
+        List<SourceCount> counts = new ArrayList<>(sourceCounts);
+        int index = 0;
+        while (index < counts.size() && counts.get(index).sourceId != source.getId()) {
+            index++;
+        }
+        int count = index < counts.size() ? counts.get(index).count + 1 : 1;
+        SourceCount updated = new SourceCount(source.getId(), source.getFrequencyHz(), count);
+        if (index < counts.size()) {
+            counts.set(index, updated);
+        } else {
+            counts.add(updated);
+        }
+        setSourceCounts(Collections.unmodifiableList(counts));
+    }
+    
+    private synchronized void setSourceCounts(List<SourceCount> counts) {
+        sourceCounts = counts;
+        events.publishSourceCounts(counts);
+    }
+    
+    private void processAudioFrame(short[] window, int length, int hopLength, long endSample) {
+        lastEndSample = endSample;
+        long cpuStart = Debug.threadCpuTimeNanos();
+        long classifiedBefore = detector.getFramesClassified();
+        // The detector's energy gate keeps the spectral classifier idle during quiet periods
+        boolean whistleStarted = detector.process(window, length, hopLength, endSample);
+        powerStats.recordFrame(Debug.threadCpuTimeNanos() - cpuStart, 
+                detector.getFramesClassified() != classifiedBefore);
         
-        if (isWhistleSound) {
-            // We're hearing whistle-like sound
-            sustainedHighFreqSamples++;
-            silenceSamples = 0;
-            interruptionSamples = 0; // Reset interruption counter
-            
-            // If we're not already tracking a whistle, start tracking
-            if (!isWhistleInProgress && sustainedHighFreqSamples >= SUSTAINED_SAMPLES_REQUIRED) {
-                isWhistleInProgress = true;
-                whistleStartTime = currentTime;
-                lastWhistleTime = currentTime;
-                return true; // This is the start of a new whistle
+        final FingerprintEnroller learning = enroller;
+        if (isBackgroundMode && !monitorUnavailable) {
+            boolean busy = detector.isWhistleInProgress() || detector.getSustainedMs() > 0 || learning != null;
+            if (rateSwitcher.onFullRateFrame(busy, SystemClock.elapsedRealtime())) {
+                mainHandler.post(this::applyRate);
             }
-        } else {
-            // We're not hearing whistle-like sound
-            silenceSamples++;
-            interruptionSamples++;
-            
-            // Only reset sustained samples if interruption is long enough
-            if (interruptionSamples >= MAX_INTERRUPTION_SAMPLES) {
-                sustainedHighFreqSamples = 0;
+        }
+        if (learning != null && !learning.isComplete()) {
+            int heardBefore = learning.getWhistlesHeard();
+            learning.process(window, length, hopLength, endSample);
+            if (learning.isComplete()) {
+                mainHandler.post(() -> finishEnrollment(learning));
+            } else if (learning.getWhistlesHeard() != heardBefore) {
+                mainHandler.post(() -> notifyEnrollmentProgress(learning));
             }
+        }
+        if (whistleStarted) {
+            listenScheduler.onWhistle(SystemClock.elapsedRealtime());
+            Log.i(TAG, "Whistle began at " + detector.getWhistleOnsetMs() + " ms (sample " 
+                    + detector.getWhistleOnsetSample() + "), confirmed at " 
+                    + SampleClock.millisAt(endSample, SAMPLE_RATE) + " ms");
+            lastWhistleWallMs = System.currentTimeMillis();
+            int count = whistleCount.incrementAndGet();
+            events.publishCount(count);
+            appendWhistle(WhistleRecord.Kind.WHISTLE, false);
+            saveCheckpoint();
             
-            // If we were tracking a whistle and now have enough silence, end the whistle
-            if (isWhistleInProgress && silenceSamples >= WHISTLE_END_SAMPLES) {
-                isWhistleInProgress = false;
-                silenceSamples = 0;
-                sustainedHighFreqSamples = 0;
-                interruptionSamples = 0;
+            int target = targetCount;
+            if (target > 0 && count - sessionStartCount >= target && !targetReached) {
+                // Stopping joins this thread, so it has to happen on the main thread
+                targetReached = true;
+                mainHandler.post(this::onTargetReached);
+            }
+            if (isBackgroundMode) {
+                mainHandler.post(this::onWhistleCountedInBackground);
+            }
+        } else {
+            // Keep the noise floor in the checkpoint reasonably fresh
+            long currentMs = SampleClock.millisAt(endSample, SAMPLE_RATE);
+            if (currentMs - lastCheckpointMs >= CHECKPOINT_INTERVAL_MS) {
+                lastCheckpointMs = currentMs;
+                saveCheckpoint();
             }
         }
+    }
+    
+    // Monitor frames only find candidates; nothing is counted at this rate
+    private void processMonitorFrame(short[] window, int length, int hopLength, long endSample) {
+        long cpuStart = Debug.threadCpuTimeNanos();
+        long classifiedBefore = monitor.getFramesClassified();
+        monitor.process(window, length, hopLength, endSample);
+        powerStats.recordFrame(Debug.threadCpuTimeNanos() - cpuStart, 
+                monitor.getFramesClassified() != classifiedBefore);
+    }
+    
+    // Stops capture and releases the wake lock right away; the recipe is done
+    private void onTargetReached() {
+        if (!isRecording) return;
         
-        return false; // No new whistle detected
+        int count = whistleCount.get();
+        Log.i(TAG, "Target of " + targetCount + " whistles reached, stopping");
+        stopSession();
+        showTargetAlarm(count);
+        
+        SessionListener listener = sessionListener;
+        if (listener != null) {
+            listener.onTargetReached(count);
+        }
     }
     
-    private void incrementCounter() {
-        whistleCount++;
+    private void showTargetAlarm(int count) {
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            this, 3, notificationIntent, 
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        
+        Notification notification = new NotificationCompat.Builder(this, TARGET_CHANNEL_ID)
+            .setContentTitle("Whistle Counter")
+            .setContentText(getString(R.string.target_reached, count))
+            .setSmallIcon(R.drawable.ic_notification)
+            .setContentIntent(pendingIntent)
+            .setAutoCancel(true)
+            .setCategory(NotificationCompat.CATEGORY_ALARM)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setSound(getAlarmSound()) // Channels set their own sound from Android 8
+            .setVibrate(new long[]{0, 500, 250, 500})
+            .build();
+        if (notificationManager != null) {
+            notificationManager.notify(TARGET_NOTIFICATION_ID, notification);
+            powerStats.recordNotificationUpdate();
+        }
+    }
+    
+    private void onWhistleCountedInBackground() {
+        if (!isBackgroundMode) return;
+        
+        renewWakeLock(); // Renew wake lock when activity detected
         
         // Throttle notification updates to save battery
         long currentTime = System.currentTimeMillis();
@@ -369,10 +972,66 @@ public class WhistleDetectionService extends Service {
         }
     }
     
+    private void notifySessionChanged() {
+        SessionListener listener = sessionListener;
+        if (listener != null) {
+            listener.onSessionChanged(isRecording, isBackgroundMode);
+        }
+    }
+    
+    // Publishes detector events to the stream; these run on the analysis thread
+    private final WhistleListener detectionListener = new WhistleListener() {
+        @Override
+        public void onWhistleStarted(long timestampMs) {
+            events.publishOnset(detector.getWhistleOnsetMs(), timestampMs);
+        }
+        
+        @Override
+        public void onWhistleEnded(long timestampMs) {
+            events.publishOffset(timestampMs, false);
+            appendWhistle(WhistleRecord.Kind.WHISTLE_END, false);
+            listenScheduler.onWhistleEnded(detector.getWhistleDurationMs());
+            saveCheckpoint();
+        }
+        
+        @Override
+        public void onWhistleTimedOut(long timestampMs) {
+            events.publishOffset(timestampMs, true);
+            appendWhistle(WhistleRecord.Kind.WHISTLE_END, true);
+            listenScheduler.onWhistleEnded(detector.getWhistleDurationMs());
+            saveCheckpoint();
+        }
+        
+        @Override
+        public void onSourceWhistleStarted(WhistleSource source, long timestampMs) {
+            countSourceWhistle(source);
+        }
+        
+        @Override
+        public void onFrameAnalyzed(FrameFeatures features) {
+            // Only frames past the energy gate get here: that is the trigger to keep listening
+            listenScheduler.onActivity(SystemClock.elapsedRealtime());
+            events.publishLevel(features, detector.isWhistleInProgress());
+        }
+    };
+    
+    // A monitor frame past the energy gate with high-frequency content is a candidate to confirm at full rate
+    private final WhistleListener monitorListener = new WhistleListener() {
+        @Override
+        public void onFrameAnalyzed(FrameFeatures features) {
+            long now = SystemClock.elapsedRealtime();
+            listenScheduler.onActivity(now);
+            if (rateSwitcher.onMonitorFrame(features.whistleLike, now)) {
+                mainHandler.post(WhistleDetectionService.this::applyRate);
+            }
+        }
+    };
+    
     private void updateNotification() {
         Notification notification = createNotification();
         if (notificationManager != null) {
             notificationManager.notify(NOTIFICATION_ID, notification);
+            powerStats.recordNotificationUpdate();
         }
     }
     
@@ -381,7 +1040,8 @@ public class WhistleDetectionService extends Service {
             if (wakeLock.isHeld()) {
                 wakeLock.release();
             }
-            wakeLock.acquire(10 * 60 * 1000L /*10 minutes*/);
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+            powerStats.onWakeLockRenewed(System.nanoTime(), WAKE_LOCK_TIMEOUT_MS * 1000000L);
         }
     }
     
@@ -409,7 +1069,9 @@ public class WhistleDetectionService extends Service {
         
         return new NotificationCompat.Builder(this, CHANNEL_ID)
             .setContentTitle("Whistle Counter")
-            .setContentText("Whistles detected: " + whistleCount)
+            .setContentText(targetCount > 0 
+                    ? "Whistles detected: " + (whistleCount.get() - sessionStartCount) + " of " + targetCount 
+                    : "Whistles detected: " + whistleCount.get())
             .setSmallIcon(R.drawable.ic_notification) // We'll need to add this
             .setContentIntent(pendingIntent)
             .setOngoing(true)
@@ -422,6 +1084,24 @@ public class WhistleDetectionService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopDetection();
+        stopSession();
+        
+        if (sessionLog != null) {
+            try {
+                sessionLog.close(1000); // Flushes queued records
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing session log: " + e.getMessage());
+            }
+            sessionLog = null;
+        }
+        
+        if (checkpoint != null) {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing checkpoint: " + e.getMessage());
+            }
+            checkpoint = null;
+        }
     }
 }
@@ -0,0 +1,111 @@
+package com.whistlecounter.bench;
+
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.SpectralFeatureExtractor;
+import com.whistlecounter.detector.classifier.FrameClassifier;
+import com.whistlecounter.detector.classifier.QuantizedClassifier;
+import com.whistlecounter.detector.classifier.QuantizedModel;
+import com.whistlecounter.detector.classifier.RuleClassifier;
+import com.whistlecounter.detector.dsp.PcmScale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The classifier stage alone, one frame per operation, for the band rules and
+ * quantized models of each size. Weights are random: inference costs the same
+ * whatever they are. {@code bandLevelsAndClassify} adds the band levels taken
+ * from a spectrum that SPECTRAL mode has already computed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassifierBenchmark {
+    
+    private static final int SAMPLE_RATE = 22050;
+    
+    public enum Model {
+        RULE, LOGISTIC, MLP8, MLP16
+    }
+    
+    @Param({"RULE", "LOGISTIC", "MLP8", "MLP16"})
+    public Model model;
+    
+    private final FrameFeatures features = new FrameFeatures();
+    private SpectralFeatureExtractor spectrum;
+    private FrameClassifier classifier;
+    
+    @Setup
+    public void setUp() {
+        DetectorConfig config = DetectorConfig.defaults();
+        int length = BenchFrames.minBufferSize(SAMPLE_RATE) * 2;
+        short[] frame = BenchFrames.create(BenchFrames.Signal.WHISTLE, SAMPLE_RATE, length, 42);
+        long sumOfSquares = 0;
+        for (int i = 0; i < length; i++) {
+            sumOfSquares += frame[i] * frame[i];
+        }
+        features.totalEnergy = sumOfSquares * PcmScale.ENERGY_SCALE;
+        spectrum = new SpectralFeatureExtractor(SAMPLE_RATE, length, config.getLowBandMaxHz(), config.getMidBandMaxHz());
+        spectrum.extract(frame, length, features);
+        spectrum.bandLevels(features.bandLevels);
+        features.zeroCrossingRate = 0.4;
+        features.powerDb = -20;
+        features.noiseFloorDb = -50;
+        
+        switch (model) {
+            case LOGISTIC:
+                classifier = new QuantizedClassifier(randomModel(0));
+                break;
+            case MLP8:
+                classifier = new QuantizedClassifier(randomModel(8));
+                break;
+            case MLP16:
+                classifier = new QuantizedClassifier(randomModel(16));
+                break;
+            case RULE:
+            default:
+                classifier = RuleClassifier.INSTANCE;
+        }
+    }
+    
+    private static QuantizedModel randomModel(int hiddenCount) {
+        Random random = new Random(hiddenCount);
+        int inputs = QuantizedModel.FEATURE_COUNT;
+        float[] mean = new float[inputs];
+        float[] invStd = new float[inputs];
+        for (int i = 0; i < inputs; i++) {
+            mean[i] = (float) random.nextGaussian();
+            invStd[i] = 1;
+        }
+        byte[] hiddenWeights = new byte[hiddenCount * inputs];
+        random.nextBytes(hiddenWeights);
+        float[] hiddenBias = new float[hiddenCount];
+        byte[] outputWeights = new byte[hiddenCount > 0 ? hiddenCount : inputs];
+        random.nextBytes(outputWeights);
+        return new QuantizedModel(mean, invStd, hiddenCount, hiddenWeights, 0.01f, hiddenBias, 20,
+                outputWeights, 0.01f, 0, 0);
+    }
+    
+    @Benchmark
+    public boolean classify() {
+        return classifier.isWhistle(features);
+    }
+    
+    @Benchmark
+    public boolean bandLevelsAndClassify() {
+        if (classifier.needsBandLevels()) {
+            spectrum.bandLevels(features.bandLevels);
+        }
+        return classifier.isWhistle(features);
+    }
+}
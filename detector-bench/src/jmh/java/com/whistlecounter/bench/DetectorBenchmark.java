@@ -0,0 +1,73 @@
+package com.whistlecounter.bench;
+
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.WhistleDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The complete per-frame path of {@link WhistleDetector#process}, one frame per
+ * operation: energy and zero crossings, the energy gate and, when it is open,
+ * feature extraction and the state machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectorBenchmark {
+    
+    private static final int FRAMES = 16; // Distinct frames so the branch history is not trivially learned
+    
+    // 16000 is the multi-rate monitor rate
+    @Param({"16000", "22050", "44100", "48000"})
+    public int sampleRate;
+    
+    // 1 = getMinBufferSize as in the activity, 2 = twice that as in the service
+    @Param({"1", "2"})
+    public int bufferMultiple;
+    
+    @Param({"SPECTRAL", "GOERTZEL"})
+    public AnalysisMode mode;
+    
+    @Param({"WHISTLE", "NOISE"})
+    public BenchFrames.Signal signal;
+    
+    private short[][] frames;
+    private int length;
+    private WhistleDetector detector;
+    private long endSample;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        // No cooldown or timeout, so a whistle keeps the classifier busy for the whole run
+        DetectorConfig config = DetectorConfig.defaults().toBuilder()
+                .setAnalysisMode(mode)
+                .setWhistleCooldownMs(0)
+                .setWhistleMaxDurationMs(Long.MAX_VALUE / 2)
+                .build();
+        length = BenchFrames.minBufferSize(sampleRate) * bufferMultiple;
+        frames = new short[FRAMES][];
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = BenchFrames.create(signal, sampleRate, length, i);
+        }
+        detector = new WhistleDetector(config, sampleRate, length);
+    }
+    
+    @Benchmark
+    public boolean process() {
+        endSample += length;
+        short[] frame = frames[next];
+        next = (next + 1) % FRAMES;
+        return detector.process(frame, length, endSample);
+    }
+}
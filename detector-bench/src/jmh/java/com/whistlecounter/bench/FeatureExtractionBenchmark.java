@@ -0,0 +1,86 @@
+package com.whistlecounter.bench;
+
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.FeatureExtractor;
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.GoertzelFeatureExtractor;
+import com.whistlecounter.detector.SpectralFeatureExtractor;
+import com.whistlecounter.detector.dsp.PcmScale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Band-ratio extraction alone, one frame per operation, for each strategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeatureExtractionBenchmark {
+    
+    public enum Strategy {
+        LEGACY, SPECTRAL, GOERTZEL
+    }
+    
+    @Param({"22050", "44100", "48000"})
+    public int sampleRate;
+    
+    // 1 = getMinBufferSize as in the activity, 2 = twice that as in the service
+    @Param({"1", "2"})
+    public int bufferMultiple;
+    
+    @Param({"LEGACY", "SPECTRAL", "GOERTZEL"})
+    public Strategy strategy;
+    
+    private short[] frame;
+    private int length;
+    private final FrameFeatures features = new FrameFeatures();
+    private FeatureExtractor extractor;
+    private LegacyKernel legacy;
+    
+    @Setup
+    public void setUp() {
+        DetectorConfig config = DetectorConfig.defaults();
+        length = BenchFrames.minBufferSize(sampleRate) * bufferMultiple;
+        frame = BenchFrames.create(BenchFrames.Signal.WHISTLE, sampleRate, length, 42);
+        
+        // The detector hands the extractor the frame energy it already computed
+        long sumOfSquares = 0;
+        for (int i = 0; i < length; i++) {
+            sumOfSquares += frame[i] * frame[i];
+        }
+        features.totalEnergy = sumOfSquares * PcmScale.ENERGY_SCALE;
+        
+        switch (strategy) {
+            case LEGACY:
+                legacy = new LegacyKernel(length);
+                break;
+            case SPECTRAL:
+                extractor = new SpectralFeatureExtractor(sampleRate, length,
+                        config.getLowBandMaxHz(), config.getMidBandMaxHz());
+                break;
+            case GOERTZEL:
+                extractor = new GoertzelFeatureExtractor(sampleRate, config.getGoertzelBlockSize(),
+                        config.getLowBandMaxHz(), config.getMidBandMaxHz(), config.getGoertzelMaxHz());
+                break;
+        }
+    }
+    
+    @Benchmark
+    public FrameFeatures extract() {
+        if (legacy != null) {
+            legacy.extract(frame, length, features);
+        } else {
+            extractor.extract(frame, length, features);
+        }
+        return features;
+    }
+}
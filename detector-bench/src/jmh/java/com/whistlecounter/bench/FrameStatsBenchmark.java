@@ -0,0 +1,72 @@
+package com.whistlecounter.bench;
+
+import com.whistlecounter.detector.dsp.RollingFrameStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Energy and zero crossings of a stream of service-sized windows, one window
+ * per operation, as the windows overlap more. Overlap 1 is the service's own
+ * setting and costs a full pass; at overlap N only a 1/N hop of each window
+ * is new, and only that part is summed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameStatsBenchmark {
+    
+    private static final int SAMPLE_RATE = 22050;
+    private static final int HOPS = 64; // The signal repeats after this many hops, so every window is real audio
+    
+    // Windows per hop: 1 = no overlap
+    @Param({"1", "2", "4", "8"})
+    public int overlap;
+    
+    private short[][] windows;
+    private int length;
+    private int hop;
+    private final RollingFrameStats stats = new RollingFrameStats();
+    private long endSample;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        length = BenchFrames.minBufferSize(SAMPLE_RATE) * 2;
+        hop = length / overlap;
+        short[] signal = BenchFrames.create(BenchFrames.Signal.WHISTLE, SAMPLE_RATE, HOPS * hop, 42);
+        windows = new short[HOPS][length];
+        for (int w = 0; w < HOPS; w++) {
+            for (int i = 0; i < length; i++) {
+                windows[w][i] = signal[(w * hop + i) % signal.length];
+            }
+        }
+        endSample = length;
+    }
+    
+    @Benchmark
+    public long energy() {
+        advance();
+        return stats.sumOfSquares();
+    }
+    
+    @Benchmark
+    public long energyAndZeroCrossings() {
+        advance();
+        return stats.sumOfSquares() + stats.zeroCrossings();
+    }
+    
+    private void advance() {
+        stats.next(windows[next], length, hop, endSample);
+        next = (next + 1) % HOPS;
+        endSample += hop;
+    }
+}
@@ -0,0 +1,56 @@
+package com.whistlecounter.bench;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * The per-frame feature work the app did before detector-core existed: convert
+ * to double, then energy, zero crossings and position-based "bands" in separate
+ * passes. Kept only as the reference point the other strategies are measured
+ * against.
+ */
+final class LegacyKernel {
+    
+    private final double[] buffer;
+    
+    LegacyKernel(int maxFrameLength) {
+        this.buffer = new double[maxFrameLength];
+    }
+    
+    void extract(short[] frame, int length, FrameFeatures out) {
+        for (int i = 0; i < length; i++) {
+            buffer[i] = frame[i] / 32768.0;
+        }
+        
+        double totalEnergy = 0;
+        for (int i = 0; i < length; i++) {
+            double sample = buffer[i];
+            totalEnergy += sample * sample;
+        }
+        
+        int zeroCrossings = 0;
+        double highFreqEnergy = 0;
+        double midFreqEnergy = 0;
+        double lowFreqEnergy = 0;
+        for (int i = 0; i < length - 1; i++) {
+            double sample = buffer[i];
+            double nextSample = buffer[i + 1];
+            double energy = sample * sample;
+            if ((sample > 0 && nextSample < 0) || (sample < 0 && nextSample > 0)) {
+                zeroCrossings++;
+            }
+            if (i < length / 8) {
+                lowFreqEnergy += energy;
+            } else if (i < length / 4) {
+                midFreqEnergy += energy;
+            } else if (i < length / 2) {
+                highFreqEnergy += energy;
+            }
+        }
+        
+        out.totalEnergy = totalEnergy;
+        out.highFreqRatio = totalEnergy > 0 ? highFreqEnergy / totalEnergy : 0;
+        out.midFreqRatio = totalEnergy > 0 ? midFreqEnergy / totalEnergy : 0;
+        out.lowFreqRatio = totalEnergy > 0 ? lowFreqEnergy / totalEnergy : 0;
+        out.zeroCrossingRate = (double) zeroCrossings / length;
+    }
+}
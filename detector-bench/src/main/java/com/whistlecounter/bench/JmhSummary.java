@@ -0,0 +1,141 @@
+package com.whistlecounter.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the JMH CSV results into the checked-in baseline table: time per frame,
+ * frames per second, how many times faster than real time that is, and bytes
+ * allocated per frame from the gc profiler.
+ *
+ * <pre>
+ * JmhSummary results.csv BASELINE.md
+ * </pre>
+ */
+public final class JmhSummary {
+    
+    private static final String ALLOC_SUFFIX = ":gc.alloc.rate.norm";
+    
+    private static final class Row {
+        String benchmark;
+        Map<String, String> params = new LinkedHashMap<>();
+        double nsPerFrame;
+        double error;
+        double bytesPerFrame = Double.NaN;
+    }
+    
+    private JmhSummary() {
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: JmhSummary RESULTS_CSV OUTPUT_MD");
+            System.exit(2);
+        }
+        List<Row> rows = read(new File(args[0]));
+        try (PrintWriter out = new PrintWriter(new File(args[1]), "UTF-8")) {
+            write(rows, out);
+        }
+    }
+    
+    static List<Row> read(File csv) throws IOException {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            List<String> header = split(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> cells = split(line);
+                String name = cells.get(header.indexOf("Benchmark"));
+                String unit = cells.get(header.indexOf("Unit"));
+                boolean alloc = name.endsWith(ALLOC_SUFFIX);
+                if (!alloc && !unit.equals("ns/op")) {
+                    continue; // Other secondary metrics
+                }
+                
+                Map<String, String> params = new LinkedHashMap<>();
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && i < cells.size() && !cells.get(i).isEmpty()) {
+                        params.put(header.get(i).substring("Param: ".length()), cells.get(i));
+                    }
+                }
+                String benchmark = alloc ? name.substring(0, name.length() - ALLOC_SUFFIX.length()) : name;
+                String key = benchmark + params;
+                Row row = rows.computeIfAbsent(key, k -> new Row());
+                row.benchmark = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+                row.params = params;
+                double score = Double.parseDouble(cells.get(header.indexOf("Score")));
+                if (alloc) {
+                    row.bytesPerFrame = score;
+                } else {
+                    row.nsPerFrame = score;
+                    row.error = parseOrNaN(cells.get(header.indexOf("Score Error (99.9%)")));
+                }
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+    
+    static void write(List<Row> rows, PrintWriter out) {
+        out.println("| Benchmark | Parameters | ns/frame | +/- | frames/s | x real time | B/frame |");
+        out.println("|---|---|---:|---:|---:|---:|---:|");
+        for (Row row : rows) {
+            String realTime = "";
+            String rate = row.params.get("sampleRate");
+            String multiple = row.params.get("bufferMultiple");
+            if (rate != null && multiple != null && row.nsPerFrame > 0) {
+                int sampleRate = Integer.parseInt(rate);
+                int length = BenchFrames.minBufferSize(sampleRate) * Integer.parseInt(multiple);
+                realTime = String.format("%.0f", length * 1e9 / sampleRate / row.nsPerFrame);
+            }
+            out.printf("| %s | %s | %.0f | %.0f | %.0f | %s | %s |%n", row.benchmark, formatParams(row.params),
+                    row.nsPerFrame, row.error, row.nsPerFrame > 0 ? 1e9 / row.nsPerFrame : 0, realTime,
+                    Double.isNaN(row.bytesPerFrame) ? "" : String.format("%.1f", row.bytesPerFrame));
+        }
+    }
+    
+    private static String formatParams(Map<String, String> params) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(param.getKey()).append('=').append(param.getValue());
+        }
+        return builder.toString();
+    }
+    
+    private static double parseOrNaN(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    
+    // JMH quotes text cells and leaves numbers bare; no cell contains a quote
+    private static List<String> split(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
@@ -0,0 +1,11 @@
+package com.whistlecounter.detector;
+
+/**
+ * How {@link WhistleDetector} splits a frame into frequency bands.
+ */
+public enum AnalysisMode {
+    // Full magnitude spectrum from a windowed FFT
+    SPECTRAL,
+    // A few Goertzel probes inside the whistle band; several times cheaper per frame
+    GOERTZEL
+}
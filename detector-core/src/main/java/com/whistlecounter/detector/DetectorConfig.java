@@ -0,0 +1,406 @@
+package com.whistlecounter.detector;
+
+/**
+ * Tuning constants for {@link WhistleDetector}. Instances are immutable; use
+ * {@link #defaults()} or a {@link Builder} to derive variations.
+ */
+public final class DetectorConfig {
+    
+    // Defaults tuned on-device for pressure cooker whistles
+    public static final long DEFAULT_WHISTLE_COOLDOWN_MS = 3000; // 3 seconds between detections
+    public static final double DEFAULT_MIN_POWER_DBFS = -55; // Absolute minimum mean power per sample to consider
+    public static final double DEFAULT_LOUDNESS_MARGIN_DB = 3; // Frame must stand this far above the noise floor
+    // Hysteresis in milliseconds of audio; formerly 8, 10 and 3 frames of the activity's ~81 ms buffer
+    public static final long DEFAULT_WHISTLE_ONSET_MS = 600; // Whistle-like sound needed before a whistle is counted
+    public static final long DEFAULT_WHISTLE_END_MS = 800; // Time without whistle-like sound that ends a whistle
+    public static final long DEFAULT_MAX_INTERRUPTION_MS = 240; // Gap that still counts as the same sustained sound
+    public static final long DEFAULT_WHISTLE_MAX_DURATION_MS = 30000; // Maximum 30 seconds per whistle
+    public static final double DEFAULT_LOW_BAND_MAX_HZ = 2750; // 0-2.75 kHz (low frequency)
+    public static final double DEFAULT_MID_BAND_MAX_HZ = 5500; // 2.75-5.5 kHz (mid frequency), above is high (whistle range)
+    public static final int DEFAULT_GOERTZEL_BLOCK_SIZE = 32; // ~690 Hz per probe at 22.05 kHz
+    public static final double DEFAULT_GOERTZEL_MAX_HZ = 8000; // Upper edge of the probed whistle band
+    public static final double DEFAULT_GATE_OPEN_MARGIN_DB = 6; // Wake the classifier 6 dB above the noise floor
+    public static final long DEFAULT_GATE_HANGOVER_MS = 1500; // Keep the classifier running after activity
+    public static final double DEFAULT_NOISE_FLOOR_PERCENTILE = 0.1; // Floor sits at the 10th percentile of frame power
+    public static final double DEFAULT_NOISE_FLOOR_ADAPT_DB_PER_SECOND = 30; // Rises 3 dB/s, falls 27 dB/s at the 10th percentile
+    public static final long DEFAULT_BAND_FLOOR_REFRESH_MS = 1000; // Classify a gated frame this often to keep band floors fresh
+    public static final double DEFAULT_SOURCE_TOLERANCE_HZ = 150; // Peaks this close to a source's frequency belong to it
+    public static final double DEFAULT_SOURCE_MIN_SHARE = 0.2; // A peak must carry 20% of the whistle-range power to count
+    public static final int DEFAULT_MAX_SOURCES = 4; // Cookers tracked at once
+    public static final int DEFAULT_FINGERPRINT_BLOCK_SIZE = 128; // ~170 Hz probes at 22.05 kHz, room for pitch drift
+    public static final double DEFAULT_FINGERPRINT_MIN_SHARE = 0.3; // Enrolled partials must carry 30% of the frame's power
+    public static final double DEFAULT_FINGERPRINT_MIN_SIMILARITY = 0.8; // Cosine similarity to the enrolled partial profile
+    
+    private static final DetectorConfig DEFAULTS = new Builder().build();
+    
+    private final long whistleCooldownMs;
+    private final double minPowerDbfs;
+    private final double loudnessMarginDb;
+    private final long whistleOnsetMs;
+    private final long whistleEndMs;
+    private final long maxInterruptionMs;
+    private final long whistleMaxDurationMs;
+    private final double lowBandMaxHz;
+    private final double midBandMaxHz;
+    private final AnalysisMode analysisMode;
+    private final int goertzelBlockSize;
+    private final double goertzelMaxHz;
+    private final boolean energyGateEnabled;
+    private final double gateOpenMarginDb;
+    private final long gateHangoverMs;
+    private final double noiseFloorPercentile;
+    private final double noiseFloorAdaptDbPerSecond;
+    private final long bandFloorRefreshMs;
+    private final boolean multiSourceEnabled;
+    private final double sourceToleranceHz;
+    private final double sourceMinShare;
+    private final int maxSources;
+    private final int fingerprintBlockSize;
+    private final double fingerprintMinShare;
+    private final double fingerprintMinSimilarity;
+    
+    private DetectorConfig(Builder builder) {
+        this.whistleCooldownMs = builder.whistleCooldownMs;
+        this.minPowerDbfs = builder.minPowerDbfs;
+        this.loudnessMarginDb = builder.loudnessMarginDb;
+        this.whistleOnsetMs = builder.whistleOnsetMs;
+        this.whistleEndMs = builder.whistleEndMs;
+        this.maxInterruptionMs = builder.maxInterruptionMs;
+        this.whistleMaxDurationMs = builder.whistleMaxDurationMs;
+        this.lowBandMaxHz = builder.lowBandMaxHz;
+        this.midBandMaxHz = builder.midBandMaxHz;
+        this.analysisMode = builder.analysisMode;
+        this.goertzelBlockSize = builder.goertzelBlockSize;
+        this.goertzelMaxHz = builder.goertzelMaxHz;
+        this.energyGateEnabled = builder.energyGateEnabled;
+        this.gateOpenMarginDb = builder.gateOpenMarginDb;
+        this.gateHangoverMs = builder.gateHangoverMs;
+        this.noiseFloorPercentile = builder.noiseFloorPercentile;
+        this.noiseFloorAdaptDbPerSecond = builder.noiseFloorAdaptDbPerSecond;
+        this.bandFloorRefreshMs = builder.bandFloorRefreshMs;
+        this.multiSourceEnabled = builder.multiSourceEnabled;
+        this.sourceToleranceHz = builder.sourceToleranceHz;
+        this.sourceMinShare = builder.sourceMinShare;
+        this.maxSources = builder.maxSources;
+        this.fingerprintBlockSize = builder.fingerprintBlockSize;
+        this.fingerprintMinShare = builder.fingerprintMinShare;
+        this.fingerprintMinSimilarity = builder.fingerprintMinSimilarity;
+    }
+    
+    public static DetectorConfig defaults() {
+        return DEFAULTS;
+    }
+    
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+    
+    public long getWhistleCooldownMs() {
+        return whistleCooldownMs;
+    }
+    
+    public double getMinPowerDbfs() {
+        return minPowerDbfs;
+    }
+    
+    public double getLoudnessMarginDb() {
+        return loudnessMarginDb;
+    }
+    
+    public long getWhistleOnsetMs() {
+        return whistleOnsetMs;
+    }
+    
+    public long getWhistleEndMs() {
+        return whistleEndMs;
+    }
+    
+    public long getMaxInterruptionMs() {
+        return maxInterruptionMs;
+    }
+    
+    public long getWhistleMaxDurationMs() {
+        return whistleMaxDurationMs;
+    }
+    
+    public double getLowBandMaxHz() {
+        return lowBandMaxHz;
+    }
+    
+    public double getMidBandMaxHz() {
+        return midBandMaxHz;
+    }
+    
+    public AnalysisMode getAnalysisMode() {
+        return analysisMode;
+    }
+    
+    public int getGoertzelBlockSize() {
+        return goertzelBlockSize;
+    }
+    
+    public double getGoertzelMaxHz() {
+        return goertzelMaxHz;
+    }
+    
+    public boolean isEnergyGateEnabled() {
+        return energyGateEnabled;
+    }
+    
+    public double getGateOpenMarginDb() {
+        return gateOpenMarginDb;
+    }
+    
+    public long getGateHangoverMs() {
+        return gateHangoverMs;
+    }
+    
+    public double getNoiseFloorPercentile() {
+        return noiseFloorPercentile;
+    }
+    
+    public double getNoiseFloorAdaptDbPerSecond() {
+        return noiseFloorAdaptDbPerSecond;
+    }
+    
+    public long getBandFloorRefreshMs() {
+        return bandFloorRefreshMs;
+    }
+    
+    public boolean isMultiSourceEnabled() {
+        return multiSourceEnabled;
+    }
+    
+    public double getSourceToleranceHz() {
+        return sourceToleranceHz;
+    }
+    
+    public double getSourceMinShare() {
+        return sourceMinShare;
+    }
+    
+    public int getMaxSources() {
+        return maxSources;
+    }
+    
+    public int getFingerprintBlockSize() {
+        return fingerprintBlockSize;
+    }
+    
+    public double getFingerprintMinShare() {
+        return fingerprintMinShare;
+    }
+    
+    public double getFingerprintMinSimilarity() {
+        return fingerprintMinSimilarity;
+    }
+    
+    public static final class Builder {
+        private long whistleCooldownMs = DEFAULT_WHISTLE_COOLDOWN_MS;
+        private double minPowerDbfs = DEFAULT_MIN_POWER_DBFS;
+        private double loudnessMarginDb = DEFAULT_LOUDNESS_MARGIN_DB;
+        private long whistleOnsetMs = DEFAULT_WHISTLE_ONSET_MS;
+        private long whistleEndMs = DEFAULT_WHISTLE_END_MS;
+        private long maxInterruptionMs = DEFAULT_MAX_INTERRUPTION_MS;
+        private long whistleMaxDurationMs = DEFAULT_WHISTLE_MAX_DURATION_MS;
+        private double lowBandMaxHz = DEFAULT_LOW_BAND_MAX_HZ;
+        private double midBandMaxHz = DEFAULT_MID_BAND_MAX_HZ;
+        private AnalysisMode analysisMode = AnalysisMode.SPECTRAL;
+        private int goertzelBlockSize = DEFAULT_GOERTZEL_BLOCK_SIZE;
+        private double goertzelMaxHz = DEFAULT_GOERTZEL_MAX_HZ;
+        private boolean energyGateEnabled = true;
+        private double gateOpenMarginDb = DEFAULT_GATE_OPEN_MARGIN_DB;
+        private long gateHangoverMs = DEFAULT_GATE_HANGOVER_MS;
+        private double noiseFloorPercentile = DEFAULT_NOISE_FLOOR_PERCENTILE;
+        private double noiseFloorAdaptDbPerSecond = DEFAULT_NOISE_FLOOR_ADAPT_DB_PER_SECOND;
+        private long bandFloorRefreshMs = DEFAULT_BAND_FLOOR_REFRESH_MS;
+        private boolean multiSourceEnabled = false;
+        private double sourceToleranceHz = DEFAULT_SOURCE_TOLERANCE_HZ;
+        private double sourceMinShare = DEFAULT_SOURCE_MIN_SHARE;
+        private int maxSources = DEFAULT_MAX_SOURCES;
+        private int fingerprintBlockSize = DEFAULT_FINGERPRINT_BLOCK_SIZE;
+        private double fingerprintMinShare = DEFAULT_FINGERPRINT_MIN_SHARE;
+        private double fingerprintMinSimilarity = DEFAULT_FINGERPRINT_MIN_SIMILARITY;
+        
+        public Builder() {
+        }
+        
+        private Builder(DetectorConfig config) {
+            this.whistleCooldownMs = config.whistleCooldownMs;
+            this.minPowerDbfs = config.minPowerDbfs;
+            this.loudnessMarginDb = config.loudnessMarginDb;
+            this.whistleOnsetMs = config.whistleOnsetMs;
+            this.whistleEndMs = config.whistleEndMs;
+            this.maxInterruptionMs = config.maxInterruptionMs;
+            this.whistleMaxDurationMs = config.whistleMaxDurationMs;
+            this.lowBandMaxHz = config.lowBandMaxHz;
+            this.midBandMaxHz = config.midBandMaxHz;
+            this.analysisMode = config.analysisMode;
+            this.goertzelBlockSize = config.goertzelBlockSize;
+            this.goertzelMaxHz = config.goertzelMaxHz;
+            this.energyGateEnabled = config.energyGateEnabled;
+            this.gateOpenMarginDb = config.gateOpenMarginDb;
+            this.gateHangoverMs = config.gateHangoverMs;
+            this.noiseFloorPercentile = config.noiseFloorPercentile;
+            this.noiseFloorAdaptDbPerSecond = config.noiseFloorAdaptDbPerSecond;
+            this.bandFloorRefreshMs = config.bandFloorRefreshMs;
+            this.multiSourceEnabled = config.multiSourceEnabled;
+            this.sourceToleranceHz = config.sourceToleranceHz;
+            this.sourceMinShare = config.sourceMinShare;
+            this.maxSources = config.maxSources;
+            this.fingerprintBlockSize = config.fingerprintBlockSize;
+            this.fingerprintMinShare = config.fingerprintMinShare;
+            this.fingerprintMinSimilarity = config.fingerprintMinSimilarity;
+        }
+        
+        public Builder setWhistleCooldownMs(long whistleCooldownMs) {
+            this.whistleCooldownMs = whistleCooldownMs;
+            return this;
+        }
+        
+        // Mean power per sample in dBFS, so it means the same for any frame size
+        public Builder setMinPowerDbfs(double minPowerDbfs) {
+            this.minPowerDbfs = minPowerDbfs;
+            return this;
+        }
+        
+        public Builder setLoudnessMarginDb(double loudnessMarginDb) {
+            this.loudnessMarginDb = loudnessMarginDb;
+            return this;
+        }
+        
+        public Builder setWhistleOnsetMs(long whistleOnsetMs) {
+            this.whistleOnsetMs = whistleOnsetMs;
+            return this;
+        }
+        
+        public Builder setWhistleEndMs(long whistleEndMs) {
+            this.whistleEndMs = whistleEndMs;
+            return this;
+        }
+        
+        public Builder setMaxInterruptionMs(long maxInterruptionMs) {
+            this.maxInterruptionMs = maxInterruptionMs;
+            return this;
+        }
+        
+        public Builder setWhistleMaxDurationMs(long whistleMaxDurationMs) {
+            this.whistleMaxDurationMs = whistleMaxDurationMs;
+            return this;
+        }
+        
+        public Builder setLowBandMaxHz(double lowBandMaxHz) {
+            this.lowBandMaxHz = lowBandMaxHz;
+            return this;
+        }
+        
+        public Builder setMidBandMaxHz(double midBandMaxHz) {
+            this.midBandMaxHz = midBandMaxHz;
+            return this;
+        }
+        
+        public Builder setAnalysisMode(AnalysisMode analysisMode) {
+            this.analysisMode = analysisMode;
+            return this;
+        }
+        
+        // GOERTZEL mode probes every bin of a block this long between the low band edge and the max frequency
+        public Builder setGoertzelBlockSize(int goertzelBlockSize) {
+            this.goertzelBlockSize = goertzelBlockSize;
+            return this;
+        }
+        
+        public Builder setGoertzelMaxHz(double goertzelMaxHz) {
+            this.goertzelMaxHz = goertzelMaxHz;
+            return this;
+        }
+        
+        // When disabled, the spectral classifier runs on every loud frame
+        public Builder setEnergyGateEnabled(boolean energyGateEnabled) {
+            this.energyGateEnabled = energyGateEnabled;
+            return this;
+        }
+        
+        public Builder setGateOpenMarginDb(double gateOpenMarginDb) {
+            this.gateOpenMarginDb = gateOpenMarginDb;
+            return this;
+        }
+        
+        public Builder setGateHangoverMs(long gateHangoverMs) {
+            this.gateHangoverMs = gateHangoverMs;
+            return this;
+        }
+        
+        public Builder setNoiseFloorPercentile(double noiseFloorPercentile) {
+            this.noiseFloorPercentile = noiseFloorPercentile;
+            return this;
+        }
+        
+        public Builder setNoiseFloorAdaptDbPerSecond(double noiseFloorAdaptDbPerSecond) {
+            this.noiseFloorAdaptDbPerSecond = noiseFloorAdaptDbPerSecond;
+            return this;
+        }
+        
+        public Builder setBandFloorRefreshMs(long bandFloorRefreshMs) {
+            this.bandFloorRefreshMs = bandFloorRefreshMs;
+            return this;
+        }
+        
+        // Also count each cooker separately, told apart by the frequency of its whistle
+        // The peaks come from an FFT, so pair it with SPECTRAL unless fingerprints are enrolled
+        public Builder setMultiSourceEnabled(boolean multiSourceEnabled) {
+            this.multiSourceEnabled = multiSourceEnabled;
+            return this;
+        }
+        
+        public Builder setSourceToleranceHz(double sourceToleranceHz) {
+            this.sourceToleranceHz = sourceToleranceHz;
+            return this;
+        }
+        
+        public Builder setSourceMinShare(double sourceMinShare) {
+            this.sourceMinShare = sourceMinShare;
+            return this;
+        }
+        
+        public Builder setMaxSources(int maxSources) {
+            this.maxSources = maxSources;
+            return this;
+        }
+        
+        // With fingerprints enrolled, each partial is probed over blocks this long
+        public Builder setFingerprintBlockSize(int fingerprintBlockSize) {
+            this.fingerprintBlockSize = fingerprintBlockSize;
+            return this;
+        }
+        
+        public Builder setFingerprintMinShare(double fingerprintMinShare) {
+            this.fingerprintMinShare = fingerprintMinShare;
+            return this;
+        }
+        
+        public Builder setFingerprintMinSimilarity(double fingerprintMinSimilarity) {
+            this.fingerprintMinSimilarity = fingerprintMinSimilarity;
+            return this;
+        }
+        
+        public DetectorConfig build() {
+            if (whistleOnsetMs < 0 || whistleEndMs <= 0 || maxInterruptionMs <= 0) {
+                throw new IllegalArgumentException("Onset, end and interruption durations must be positive");
+            }
+            if (lowBandMaxHz <= 0 || midBandMaxHz <= lowBandMaxHz) {
+                throw new IllegalArgumentException("Band edges must be positive and increasing");
+            }
+            if (noiseFloorPercentile <= 0 || noiseFloorPercentile >= 1) {
+                throw new IllegalArgumentException("Noise floor percentile must be in (0, 1)");
+            }
+            if (sourceToleranceHz <= 0 || sourceMinShare <= 0 || sourceMinShare > 1 || maxSources < 1) {
+                throw new IllegalArgumentException("Source tolerance, minimum share and maximum sources must be positive");
+            }
+            if (fingerprintBlockSize < 2) {
+                throw new IllegalArgumentException("Fingerprint block size must be at least 2");
+            }
+            return new DetectorConfig(this);
+        }
+    }
+}
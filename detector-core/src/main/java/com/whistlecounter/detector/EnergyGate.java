@@ -0,0 +1,81 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.dsp.NoiseFloorTracker;
+
+/**
+ * First, always-on stage of the detector: decides from frame power alone whether
+ * the spectral classifier needs to run.
+ *
+ * <p>The gate follows the background noise floor with a {@link NoiseFloorTracker}
+ * on mean power per sample, and opens whenever a frame is more than a margin
+ * above it. Once open it stays open for a hangover period so the classifier
+ * sees the whole whistle, not just the frames that stood out from the floor.
+ * Cost is one logarithm per frame on top of the energy the detector already
+ * computes.
+ */
+public final class EnergyGate {
+    
+    private final double openMarginDb;
+    private final long hangoverMs;
+    private final NoiseFloorTracker floor;
+    
+    private double lastPowerDb = NoiseFloorTracker.MIN_POWER_DB;
+    private long openUntilMs = Long.MIN_VALUE;
+    
+    public EnergyGate(double openMarginDb, long hangoverMs, double floorPercentile, double floorAdaptDbPerSecond) {
+        this.openMarginDb = openMarginDb;
+        this.hangoverMs = hangoverMs;
+        this.floor = new NoiseFloorTracker(floorPercentile, floorAdaptDbPerSecond);
+    }
+    
+    public void reset() {
+        floor.reset();
+        lastPowerDb = NoiseFloorTracker.MIN_POWER_DB;
+        openUntilMs = Long.MIN_VALUE;
+    }
+    
+    /**
+     * Feeds one frame and reports whether the classifier should run for it.
+     *
+     * @param meanPower       mean squared sample value of the frame, normalized audio
+     * @param frameDurationMs duration of the frame
+     * @param timestampMs     sample-clock time at the end of the frame
+     * @param adaptFloor      false while a whistle is being tracked, so it is not
+     *                        absorbed into the floor
+     */
+    public boolean update(double meanPower, double frameDurationMs, long timestampMs, boolean adaptFloor) {
+        double powerDb = NoiseFloorTracker.toDb(meanPower);
+        lastPowerDb = powerDb;
+        
+        if (adaptFloor || !floor.isInitialized()) {
+            floor.update(powerDb, frameDurationMs);
+        }
+        
+        if (powerDb > floor.getFloorDb() + openMarginDb) {
+            hold(timestampMs);
+        }
+        return isOpen(timestampMs);
+    }
+    
+    // Keeps the gate open for the hangover period starting at the given time
+    public void hold(long timestampMs) {
+        openUntilMs = Math.max(openUntilMs, timestampMs + hangoverMs);
+    }
+    
+    public boolean isOpen(long timestampMs) {
+        return timestampMs <= openUntilMs;
+    }
+    
+    public double getNoiseFloorDb() {
+        return floor.getFloorDb();
+    }
+    
+    // Seeds the floor with a previously observed value, e.g. after a restart
+    public void setNoiseFloorDb(double floorDb) {
+        floor.setFloorDb(floorDb);
+    }
+    
+    public double getLastPowerDb() {
+        return lastPowerDb;
+    }
+}
@@ -0,0 +1,137 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.dsp.PcmScale;
+import com.whistlecounter.detector.dsp.RollingFrameStats;
+
+/**
+ * Features of the frame being analyzed, each computed the first time it is
+ * asked for and reused for the rest of the frame.
+ *
+ * <p>In cost order: energy, then zero crossings (both a pass over the new hop
+ * at most, see {@link RollingFrameStats}), then band ratios from the configured
+ * extractor, then a full spectrum. The detector asks for them in that order and
+ * stops as soon as one rules the frame out, so a frame only pays for the
+ * features its decision needs.
+ */
+final class FeatureCache {
+    
+    private final DetectorConfig config;
+    private final int sampleRate;
+    private final RollingFrameStats stats = new RollingFrameStats();
+    private FeatureExtractor extractor;
+    private final FrameFeatures bands = new FrameFeatures();
+    private SpectralFeatureExtractor spectrumExtractor; // GOERTZEL mode only
+    private final FrameFeatures spectrumFeatures = new FrameFeatures();
+    
+    private short[] frame;
+    private int length;
+    private double totalEnergy;
+    private double zeroCrossingRate;
+    private boolean hasEnergy;
+    private boolean hasZeroCrossings;
+    private boolean hasBands;
+    private boolean hasSpectrum;
+    
+    /**
+     * @param spectrumUpFront allocate the spectrum now rather than on first use,
+     *                        for detectors that need it on every classified frame
+     */
+    FeatureCache(DetectorConfig config, int sampleRate, int maxFrameLength, boolean spectrumUpFront) {
+        this.config = config;
+        this.sampleRate = sampleRate;
+        this.extractor = createExtractor(maxFrameLength);
+        if (spectrumUpFront && !(extractor instanceof SpectralFeatureExtractor)) {
+            spectrumExtractor(maxFrameLength);
+        }
+    }
+    
+    /**
+     * Moves on to the next frame, dropping every feature of the previous one.
+     */
+    void begin(short[] frame, int length, int hopLength, long endSample) {
+        if (extractor.getMaxFrameLength() < length) {
+            extractor = createExtractor(length);
+        }
+        stats.next(frame, length, hopLength, endSample);
+        this.frame = frame;
+        this.length = length;
+        hasEnergy = false;
+        hasZeroCrossings = false;
+        hasBands = false;
+        hasSpectrum = false;
+    }
+    
+    // Forgets the blocks kept across frames, for when the sample clock starts again
+    void reset() {
+        stats.clear();
+    }
+    
+    // Sum of squares of the normalized samples
+    double totalEnergy() {
+        if (!hasEnergy) {
+            totalEnergy = stats.sumOfSquares() * PcmScale.ENERGY_SCALE;
+            hasEnergy = true;
+        }
+        return totalEnergy;
+    }
+    
+    // Sign changes per sample (higher = more high frequency content)
+    double zeroCrossingRate() {
+        if (!hasZeroCrossings) {
+            zeroCrossingRate = (double) stats.zeroCrossings() / length;
+            hasZeroCrossings = true;
+        }
+        return zeroCrossingRate;
+    }
+    
+    /**
+     * Band ratios of the whole frame power from the configured analysis mode,
+     * before any noise floor is taken off.
+     */
+    FrameFeatures bands() {
+        if (!hasBands) {
+            bands.totalEnergy = totalEnergy();
+            extractor.extract(frame, length, bands);
+            hasBands = true;
+        }
+        return bands;
+    }
+    
+    // Telling cookers apart and band levels take finer frequency resolution than GOERTZEL
+    // mode's probes, so that mode runs a spectrum of its own, on classified frames only.
+    // SPECTRAL mode reuses the transform its band ratios already took.
+    SpectralFeatureExtractor spectrum() {
+        if (extractor instanceof SpectralFeatureExtractor) {
+            bands();
+            return (SpectralFeatureExtractor) extractor;
+        }
+        SpectralFeatureExtractor spectrum = spectrumExtractor(length);
+        if (!hasSpectrum) {
+            spectrumFeatures.totalEnergy = totalEnergy();
+            spectrum.extract(frame, length, spectrumFeatures);
+            hasSpectrum = true;
+        }
+        return spectrum;
+    }
+    
+    // Created on first use, or when frames grow, as the main extractor is
+    private SpectralFeatureExtractor spectrumExtractor(int maxFrameLength) {
+        if (spectrumExtractor == null || spectrumExtractor.getMaxFrameLength() < maxFrameLength) {
+            spectrumExtractor = new SpectralFeatureExtractor(sampleRate, maxFrameLength,
+                    config.getLowBandMaxHz(), config.getMidBandMaxHz());
+        }
+        return spectrumExtractor;
+    }
+    
+    private FeatureExtractor createExtractor(int maxFrameLength) {
+        switch (config.getAnalysisMode()) {
+            case GOERTZEL:
+                return new GoertzelFeatureExtractor(sampleRate, config.getGoertzelBlockSize(),
+                        config.getLowBandMaxHz(), config.getMidBandMaxHz(), config.getGoertzelMaxHz());
+            case SPECTRAL:
+            default:
+                return new SpectralFeatureExtractor(sampleRate, maxFrameLength,
+                        config.getLowBandMaxHz(), config.getMidBandMaxHz());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.whistlecounter.detector;
+
+/**
+ * Strategy that fills the frequency band ratios of {@link FrameFeatures}.
+ * Implementations read the raw 16-bit samples directly, preallocate their work
+ * buffers and must not allocate per frame.
+ */
+public interface FeatureExtractor {
+    
+    // Largest frame the extractor can analyze without being recreated
+    int getMaxFrameLength();
+    
+    /**
+     * Fills {@code lowFreqRatio}, {@code midFreqRatio} and {@code highFreqRatio}
+     * of {@code out}. {@code totalEnergy} has already been set by the detector.
+     */
+    void extract(short[] frame, int length, FrameFeatures out);
+}
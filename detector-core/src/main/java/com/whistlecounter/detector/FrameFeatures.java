@@ -0,0 +1,27 @@
+package com.whistlecounter.detector;
+
+/**
+ * Features of the most recently analyzed frame. The detector reuses a single
+ * instance, so listeners must copy any values they want to keep.
+ */
+public final class FrameFeatures {
+    
+    public static final int BAND_COUNT = 16;
+    
+    public long timestampMs;
+    public int length;
+    public double totalEnergy;
+    public double powerDb; // Mean power per sample, dBFS
+    public double noiseFloorDb; // Broadband noise floor at this frame, dBFS
+    // Band shares of the power above each band's noise floor
+    public double lowFreqRatio;
+    public double midFreqRatio;
+    public double highFreqRatio;
+    public double zeroCrossingRate;
+    // log10 of each mel band's share of the spectral power, filled only for classifiers that use them
+    public final float[] bandLevels = new float[BAND_COUNT];
+    public int matchedFingerprint; // Enrolled fingerprint the frame matched best, -1 if none
+    public boolean loudEnough;
+    public boolean whistleLike;
+    public long sustainedMs; // Whistle-like sound accumulated towards the onset
+}
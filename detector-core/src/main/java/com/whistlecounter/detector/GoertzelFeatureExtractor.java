@@ -0,0 +1,86 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.dsp.GoertzelBank;
+import com.whistlecounter.detector.dsp.PcmScale;
+
+/**
+ * Cheap alternative to {@link SpectralFeatureExtractor} that only measures the
+ * DFT bins of a short block that fall inside the whistle band.
+ *
+ * <p>Probes sit exactly on the bin grid of a {@code blockSize}-sample DFT, so
+ * together they partition the band energy without gaps or double counting. Mid
+ * and high band energies are the energy captured by the probes in each band;
+ * everything the probes do not capture is attributed to the low band. The
+ * "not too much low frequency" rule therefore reads as "not too much energy
+ * outside the whistle bins", which is what it is meant to reject.
+ */
+public final class GoertzelFeatureExtractor implements FeatureExtractor {
+    
+    private final GoertzelBank bank;
+    private final int blockSize;
+    private final int midProbeCount;
+    private final double[] energies;
+    
+    public GoertzelFeatureExtractor(int sampleRate, int blockSize, double midMinHz, double highMinHz, double highMaxHz) {
+        double binWidthHz = (double) sampleRate / blockSize;
+        int firstMidBin = Math.max(1, (int) Math.ceil(midMinHz / binWidthHz));
+        int firstHighBin = Math.max(firstMidBin, (int) Math.ceil(highMinHz / binWidthHz));
+        int endBin = Math.min((blockSize - 1) / 2 + 1, (int) Math.ceil(highMaxHz / binWidthHz));
+        if (endBin <= firstMidBin) {
+            throw new IllegalArgumentException("No Goertzel probes between " + midMinHz + " and " + highMaxHz + " Hz");
+        }
+        
+        double[] probes = new double[endBin - firstMidBin];
+        for (int k = firstMidBin; k < endBin; k++) {
+            probes[k - firstMidBin] = k * binWidthHz;
+        }
+        this.bank = new GoertzelBank(sampleRate, blockSize, probes);
+        this.blockSize = blockSize;
+        this.midProbeCount = Math.min(probes.length, firstHighBin - firstMidBin);
+        this.energies = new double[probes.length];
+    }
+    
+    public int getProbeCount() {
+        return energies.length;
+    }
+    
+    @Override
+    public int getMaxFrameLength() {
+        return Integer.MAX_VALUE; // Works block by block, any frame length will do
+    }
+    
+    @Override
+    public void extract(short[] frame, int length, FrameFeatures out) {
+        bank.energies(frame, length, energies);
+        
+        double midFreqEnergy = 0;
+        double highFreqEnergy = 0;
+        for (int p = 0; p < midProbeCount; p++) {
+            midFreqEnergy += energies[p];
+        }
+        for (int p = midProbeCount; p < energies.length; p++) {
+            highFreqEnergy += energies[p];
+        }
+        
+        // The probes skip a trailing partial block, so the ratios leave its energy out too
+        int covered = length / blockSize * blockSize;
+        double totalEnergy = out.totalEnergy - energy(frame, covered, length);
+        if (totalEnergy <= 0) {
+            out.lowFreqRatio = 0;
+            out.midFreqRatio = 0;
+            out.highFreqRatio = 0;
+            return;
+        }
+        out.midFreqRatio = Math.min(1, midFreqEnergy / totalEnergy);
+        out.highFreqRatio = Math.min(1 - out.midFreqRatio, highFreqEnergy / totalEnergy);
+        out.lowFreqRatio = 1 - out.midFreqRatio - out.highFreqRatio;
+    }
+    
+    private static double energy(short[] frame, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += frame[i] * frame[i];
+        }
+        return sum * PcmScale.ENERGY_SCALE;
+    }
+}
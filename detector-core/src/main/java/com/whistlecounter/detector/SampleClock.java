@@ -0,0 +1,47 @@
+package com.whistlecounter.detector;
+
+/**
+ * Stream time derived from the number of samples captured so far, so detection
+ * timing follows the audio itself rather than the wall clock.
+ */
+public final class SampleClock {
+    
+    private final int sampleRate;
+    private long samplePosition = 0;
+    
+    public SampleClock(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+    
+    public void advance(int samples) {
+        samplePosition += samples;
+    }
+    
+    public void reset() {
+        samplePosition = 0;
+    }
+    
+    // Continues from a known position, e.g. after capture was paused for a while
+    public void reset(long samplePosition) {
+        this.samplePosition = samplePosition;
+    }
+    
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    public long getSamplePosition() {
+        return samplePosition;
+    }
+    
+    public long nowMillis() {
+        return millisAt(samplePosition, sampleRate);
+    }
+    
+    public static long millisAt(long samplePosition, int sampleRate) {
+        return samplePosition * 1000 / sampleRate;
+    }
+}
@@ -0,0 +1,133 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.dsp.RealFft;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+
+/**
+ * Splits a frame into low, mid and high frequency bands using the magnitude
+ * spectrum of a Hann-windowed real FFT. Band edges are resolved to FFT bins once
+ * at construction so per-frame work is the transform plus one pass over the bins.
+ */
+public final class SpectralFeatureExtractor implements FeatureExtractor {
+    
+    private static final double MEL_MIN_HZ = 250;
+    private static final double MEL_MAX_HZ = 10000;
+    private static final double MIN_BAND_SHARE = 1e-6;
+    
+    private final RealFft fft;
+    private final float[] power;
+    private final int midStartBin;
+    private final int highStartBin;
+    private final double binWidthHz;
+    private double bandEnergy = 0; // Mid and high band power of the last frame
+    private double spectralEnergy = 0; // All power of the last frame
+    private int[] melBandStart; // First bin of each mel band, plus one past the last band
+    
+    public SpectralFeatureExtractor(int sampleRate, int maxFrameLength, double lowBandMaxHz, double midBandMaxHz) {
+        this.fft = new RealFft(RealFft.sizeFor(maxFrameLength));
+        this.power = new float[fft.getBinCount()];
+        this.binWidthHz = (double) sampleRate / fft.getSize();
+        int lastBin = fft.getBinCount() - 1;
+        this.midStartBin = Math.min(lastBin + 1, (int) Math.ceil(lowBandMaxHz / binWidthHz));
+        this.highStartBin = Math.min(lastBin + 1, Math.max(midStartBin, (int) Math.ceil(midBandMaxHz / binWidthHz)));
+    }
+    
+    @Override
+    public int getMaxFrameLength() {
+        return fft.getSize();
+    }
+    
+    /**
+     * Fills the band ratios of {@code out} for the given frame. Ratios are
+     * fractions of the total spectral power, so they sum to one.
+     */
+    @Override
+    public void extract(short[] frame, int length, FrameFeatures out) {
+        fft.powerSpectrum(frame, length, power);
+        
+        double lowFreqEnergy = 0;
+        double midFreqEnergy = 0;
+        double highFreqEnergy = 0;
+        for (int k = 0; k < midStartBin; k++) {
+            lowFreqEnergy += power[k];
+        }
+        for (int k = midStartBin; k < highStartBin; k++) {
+            midFreqEnergy += power[k];
+        }
+        for (int k = highStartBin; k < power.length; k++) {
+            highFreqEnergy += power[k];
+        }
+        
+        bandEnergy = midFreqEnergy + highFreqEnergy;
+        spectralEnergy = lowFreqEnergy + midFreqEnergy + highFreqEnergy;
+        out.lowFreqRatio = spectralEnergy > 0 ? lowFreqEnergy / spectralEnergy : 0;
+        out.midFreqRatio = spectralEnergy > 0 ? midFreqEnergy / spectralEnergy : 0;
+        out.highFreqRatio = spectralEnergy > 0 ? highFreqEnergy / spectralEnergy : 0;
+    }
+    
+    /**
+     * Fills {@code out} with the strongest peaks above the low band of the frame
+     * last passed to {@link #extract}, keeping those that carry at least
+     * {@code minShare} of the power above the low band. Each local maximum is
+     * credited with the power of its bin and both neighbours, where a
+     * Hann-windowed tone puts nearly all of its power, and placed between bins
+     * by parabolic interpolation. Reuses the spectrum, so it is one pass over
+     * the bins.
+     */
+    public void findPeaks(double minShare, SpectralPeaks out) {
+        out.clear();
+        if (bandEnergy <= 0) {
+            return;
+        }
+        double minPower = minShare * bandEnergy;
+        for (int k = Math.max(1, midStartBin); k < power.length - 1; k++) {
+            float peak = power[k];
+            if (peak <= power[k - 1] || peak < power[k + 1]) {
+                continue;
+            }
+            double peakPower = power[k - 1] + peak + power[k + 1];
+            if (peakPower >= minPower) {
+                double offset = SpectralPeaks.interpolate(power[k - 1], peak, power[k + 1]);
+                out.offer((k + offset) * binWidthHz, Math.min(1, peakPower / bandEnergy));
+            }
+        }
+    }
+    
+    /**
+     * Fills {@code out} with the level of {@code out.length} mel-spaced bands
+     * between 250 Hz and 10 kHz (or just below Nyquist) in the frame last passed
+     * to {@link #extract}: log10 of each band's share of the frame's power,
+     * floored at -6. Reuses the spectrum, so it is one pass over those bins.
+     */
+    public void bandLevels(float[] out) {
+        if (melBandStart == null || melBandStart.length != out.length + 1) {
+            melBandStart = melBands(out.length);
+        }
+        for (int band = 0; band < out.length; band++) {
+            double energy = 0;
+            for (int k = melBandStart[band]; k < melBandStart[band + 1]; k++) {
+                energy += power[k];
+            }
+            double share = spectralEnergy > 0 ? energy / spectralEnergy : 0;
+            out[band] = (float) Math.log10(Math.max(share, MIN_BAND_SHARE));
+        }
+    }
+    
+    // Band edges equally spaced in mel, every band at least one bin wide
+    private int[] melBands(int count) {
+        double maxHz = Math.min(MEL_MAX_HZ, 0.95 * binWidthHz * (power.length - 1));
+        double minMel = toMel(MEL_MIN_HZ);
+        double maxMel = toMel(Math.max(maxHz, MEL_MIN_HZ));
+        int[] start = new int[count + 1];
+        for (int band = 0; band <= count; band++) {
+            double hz = 700 * (Math.pow(10, (minMel + (maxMel - minMel) * band / count) / 2595) - 1);
+            int bin = (int) Math.round(hz / binWidthHz);
+            start[band] = Math.min(power.length, band > 0 ? Math.max(bin, start[band - 1] + 1) : bin);
+        }
+        return start;
+    }
+    
+    private static double toMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+}
@@ -0,0 +1,543 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.classifier.FrameClassifier;
+import com.whistlecounter.detector.classifier.RuleClassifier;
+import com.whistlecounter.detector.dsp.NoiseFloorTracker;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+import com.whistlecounter.detector.fingerprint.FingerprintMatcher;
+import com.whistlecounter.detector.fingerprint.WhistleFingerprint;
+import com.whistlecounter.detector.sources.SourceTracker;
+import com.whistlecounter.detector.sources.WhistleSource;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Platform-independent pressure cooker whistle detector.
+ *
+ * <p>Feed it consecutive 16-bit PCM frames together with their timestamp on the
+ * sample clock; it tracks whether a whistle is in progress and reports onsets,
+ * endings and per-frame features to its {@link WhistleListener}. The detector is
+ * not thread-safe and is meant to be driven from a single audio thread.
+ */
+public final class WhistleDetector {
+    
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int ONSET_BLOCK_SIZE = 64; // Onset resolution, ~3 ms at 22.05 kHz
+    
+    private final DetectorConfig config;
+    private final int sampleRate;
+    private final FrameFeatures features = new FrameFeatures();
+    private final FeatureCache cache;
+    private final EnergyGate energyGate;
+    private final NoiseFloorTracker lowBandFloor;
+    private final NoiseFloorTracker midBandFloor;
+    private final NoiseFloorTracker highBandFloor;
+    private long lastBandFloorUpdate = Long.MIN_VALUE;
+    private WhistleListener listener;
+    private volatile FrameClassifier classifier = RuleClassifier.INSTANCE;
+    
+    // Per-source counting, only when multi-source tracking is enabled
+    private final SourceTracker sourceTracker;
+    private final SpectralPeaks peaks;
+    
+    // Template matching against enrolled cookers, replaced whole when the set changes
+    private volatile FingerprintMatcher fingerprintMatcher;
+    
+    // Detection state, all in sample-clock milliseconds so it means the same for any frame size
+    private long lastWhistleTime;
+    private long sustainedSince = NONE; // Start of the current run of whistle-like sound
+    private long lastWhistleLikeTime = NONE; // End of the most recent whistle-like frame
+    private long runOnsetSample = NONE; // Where the current run's sound began, located within its first frame
+    private long whistleOnsetSample = NONE;
+    private long[] onsetBlockEnergy = new long[0];
+    private boolean isWhistleInProgress = false;
+    private long whistleStartTime = NONE; // When the whistle in progress was confirmed
+    
+    // Per-whistle statistics: whistle-like share of the run's frames and the loudest whistle-band frame
+    private int runFrames = 0;
+    private int runWhistleFrames = 0;
+    private double whistleConfidence = 0;
+    private double whistlePeakDb = NoiseFloorTracker.MIN_POWER_DB;
+    
+    // Cost accounting: frames seen versus frames that reached the classifier
+    private long framesProcessed = 0;
+    private long framesClassified = 0;
+    
+    public WhistleDetector(DetectorConfig config, int sampleRate, int maxFrameLength) {
+        this.config = config;
+        this.sampleRate = sampleRate;
+        // Multi-source tracking needs a spectrum on every classified frame
+        this.cache = new FeatureCache(config, sampleRate, maxFrameLength, config.isMultiSourceEnabled());
+        this.energyGate = new EnergyGate(config.getGateOpenMarginDb(), config.getGateHangoverMs(),
+                config.getNoiseFloorPercentile(), config.getNoiseFloorAdaptDbPerSecond());
+        this.lowBandFloor = createBandFloor();
+        this.midBandFloor = createBandFloor();
+        this.highBandFloor = createBandFloor();
+        this.lastWhistleTime = -config.getWhistleCooldownMs();
+        this.sourceTracker = config.isMultiSourceEnabled() ? new SourceTracker(config) : null;
+        this.peaks = config.isMultiSourceEnabled() ? new SpectralPeaks(config.getMaxSources()) : null;
+    }
+    
+    public void setListener(WhistleListener listener) {
+        this.listener = listener;
+        if (sourceTracker != null) {
+            sourceTracker.setListener(listener);
+        }
+    }
+    
+    public DetectorConfig getConfig() {
+        return config;
+    }
+    
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    public boolean isWhistleInProgress() {
+        return isWhistleInProgress;
+    }
+    
+    /**
+     * Sample-clock position where the current or most recent whistle began, found
+     * to within 64 samples inside the frame that first
+     * heard it. Confirmation comes later, once the sound has been sustained.
+     */
+    public long getWhistleOnsetSample() {
+        return whistleOnsetSample;
+    }
+    
+    public long getWhistleOnsetMs() {
+        return whistleOnsetSample != NONE ? SampleClock.millisAt(whistleOnsetSample, sampleRate) : NONE;
+    }
+    
+    // Whistle-like sound accumulated towards the onset threshold, in ms of audio
+    public long getSustainedMs() {
+        return sustainedSince != NONE ? lastWhistleLikeTime - sustainedSince : 0;
+    }
+    
+    /**
+     * Duration of the current or most recent whistle, from its onset to the last
+     * whistle-like sound, in ms of audio.
+     */
+    public long getWhistleDurationMs() {
+        long onsetMs = getWhistleOnsetMs();
+        return onsetMs != NONE && lastWhistleLikeTime != NONE ? Math.max(0, lastWhistleLikeTime - onsetMs) : 0;
+    }
+    
+    // Peak power in the high (whistle) band over the current or most recent whistle, dBFS
+    public double getWhistlePeakDb() {
+        return whistlePeakDb;
+    }
+    
+    // Share of the frames between run onset and confirmation that were whistle-like, 0..1
+    public double getWhistleConfidence() {
+        return whistleConfidence;
+    }
+    
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+    
+    public long getFramesClassified() {
+        return framesClassified;
+    }
+    
+    public double getNoiseFloorDb() {
+        return energyGate.getNoiseFloorDb();
+    }
+    
+    /**
+     * Replaces the band rules that decide whether a frame sounds like a whistle;
+     * null goes back to {@link RuleClassifier}. May be called from any thread and
+     * takes effect from the next frame. Enrolled fingerprints still take
+     * precedence over any classifier.
+     */
+    public void setClassifier(FrameClassifier classifier) {
+        this.classifier = classifier != null ? classifier : RuleClassifier.INSTANCE;
+    }
+    
+    public FrameClassifier getClassifier() {
+        return classifier;
+    }
+    
+    /**
+     * Classifies frames by matching these enrolled fingerprints instead of the
+     * generic band rules; an empty list goes back to the band rules. May be
+     * called from any thread and takes effect from the next frame.
+     */
+    public void setFingerprints(List<WhistleFingerprint> fingerprints) {
+        fingerprintMatcher = fingerprints.isEmpty() ? null : new FingerprintMatcher(fingerprints, sampleRate, config);
+    }
+    
+    public List<WhistleFingerprint> getFingerprints() {
+        FingerprintMatcher matcher = fingerprintMatcher;
+        return matcher != null ? matcher.getFingerprints() : Collections.<WhistleFingerprint>emptyList();
+    }
+    
+    // Sources told apart so far by frequency, empty unless multi-source tracking is enabled
+    public List<WhistleSource> getSources() {
+        return sourceTracker != null ? sourceTracker.getSources() : Collections.<WhistleSource>emptyList();
+    }
+    
+    /**
+     * Clears all detection state, including the cooldown after the last whistle.
+     */
+    public void reset() {
+        sustainedSince = NONE;
+        lastWhistleLikeTime = NONE;
+        runOnsetSample = NONE;
+        whistleOnsetSample = NONE;
+        isWhistleInProgress = false;
+        whistleStartTime = NONE;
+        runFrames = 0;
+        runWhistleFrames = 0;
+        whistleConfidence = 0;
+        whistlePeakDb = NoiseFloorTracker.MIN_POWER_DB;
+        lastWhistleTime = -config.getWhistleCooldownMs();
+        energyGate.reset();
+        lowBandFloor.reset();
+        midBandFloor.reset();
+        highBandFloor.reset();
+        lastBandFloorUpdate = Long.MIN_VALUE;
+        cache.reset();
+        if (sourceTracker != null) {
+            sourceTracker.reset();
+        }
+    }
+    
+    /**
+     * Continues from state saved before the detector last stopped, as if the time
+     * since then had passed in silence. Call after {@link #reset()} and before the
+     * first frame, whose sample clock starts again at zero.
+     *
+     * @param whistleInProgress  a whistle was in progress, and has already been
+     *                           counted; it continues until it ends normally or
+     *                           reaches the maximum duration
+     * @param msSinceLastWhistle time since the last confirmed whistle, so the
+     *                           cooldown after it still applies; a whistle in
+     *                           progress is the one confirmed then
+     * @param noiseFloorDb       broadband noise floor, or NaN if none was known
+     */
+    public void restore(boolean whistleInProgress, long msSinceLastWhistle, double noiseFloorDb) {
+        lastWhistleTime = -Math.max(0, msSinceLastWhistle);
+        if (!Double.isNaN(noiseFloorDb)) {
+            energyGate.setNoiseFloorDb(noiseFloorDb);
+        }
+        if (whistleInProgress) {
+            isWhistleInProgress = true;
+            whistleStartTime = lastWhistleTime;
+            lastWhistleLikeTime = 0;
+        }
+    }
+    
+    /**
+     * Analyzes one frame of PCM audio that directly follows the previous one.
+     *
+     * @param frame     16-bit PCM samples
+     * @param length    number of valid samples in {@code frame}
+     * @param endSample sample-clock position just past the frame's last sample
+     * @return true if this frame confirmed the start of a new whistle
+     */
+    public boolean process(short[] frame, int length, long endSample) {
+        return process(frame, length, length, endSample);
+    }
+    
+    /**
+     * Analyzes one analysis window, which may overlap the previous one.
+     *
+     * @param window    16-bit PCM samples
+     * @param length    number of valid samples in {@code window}
+     * @param hopLength samples of new audio since the previous window
+     * @param endSample sample-clock position just past the window's last sample
+     * @return true if this window confirmed the start of a new whistle
+     */
+    public boolean process(short[] window, int length, int hopLength, long endSample) {
+        if (length <= 0) {
+            return false;
+        }
+        cache.begin(window, length, hopLength, endSample);
+        return detectWhistle(window, length, hopLength, endSample);
+    }
+    
+    private boolean detectWhistle(short[] audioData, int length, int hopLength, long endSample) {
+        // Handles both short and long whistles as single events
+        long currentTime = SampleClock.millisAt(endSample, sampleRate);
+        
+        // Check for maximum whistle duration timeout (only if we have a valid start time)
+        if (isWhistleInProgress && whistleStartTime != NONE
+                && currentTime - whistleStartTime > config.getWhistleMaxDurationMs()) {
+            isWhistleInProgress = false;
+            sustainedSince = NONE;
+            whistleStartTime = NONE;
+            if (listener != null) {
+                listener.onWhistleTimedOut(currentTime);
+            }
+        }
+        
+        // Only check cooldown if we're not already tracking a whistle. Tracked sources
+        // keep their own cooldowns, so frames still reach them but start no whistle here.
+        boolean coolingDown = !isWhistleInProgress && currentTime - lastWhistleTime < config.getWhistleCooldownMs();
+        if (coolingDown && sourceTracker == null) {
+            return false;
+        }
+        if (sourceTracker != null) {
+            sourceTracker.advance(currentTime);
+        }
+        framesProcessed++;
+        
+        // Energy first: the cheapest feature, and all the loudness check and the gate
+        // need. With overlapping windows it costs only the new hop's samples.
+        double totalEnergy = cache.totalEnergy();
+        double meanPower = totalEnergy / length;
+        
+        // Stage one: the energy gate decides whether the classifier has to run.
+        // Anything already under way keeps it open so onsets and endings are seen,
+        // and keeps the noise floor from adapting to the whistle itself.
+        boolean tracking = isWhistleInProgress || sustainedSince != NONE 
+                || (sourceTracker != null && sourceTracker.isActive());
+        double frameDurationMs = hopLength * 1000.0 / sampleRate; // Only the new audio advances time
+        boolean gateOpen = energyGate.update(meanPower, frameDurationMs, currentTime, !tracking);
+        if (tracking) {
+            energyGate.hold(currentTime);
+            gateOpen = true;
+        }
+        
+        // Check if loud enough first: per-sample power, so the same in dB for any
+        // frame size, and far enough above the floor to stand out from the kitchen
+        double powerDb = energyGate.getLastPowerDb();
+        double noiseFloorDb = energyGate.getNoiseFloorDb();
+        boolean isLoudEnough = powerDb >= config.getMinPowerDbfs()
+                && powerDb - noiseFloorDb >= config.getLoudnessMarginDb();
+        
+        if (!isLoudEnough) {
+            // Not loud enough: the sustained run is over, and silence counts towards the end
+            sustainedSince = NONE;
+            if (updateWhistleEnd(currentTime) && listener != null) {
+                listener.onWhistleEnded(currentTime);
+            }
+            refreshBandFloors(currentTime, meanPower);
+            return false;
+        }
+        
+        if (config.isEnergyGateEnabled() && !gateOpen) {
+            // Steady background noise: count it as a non-whistle frame without classifying
+            updateInterruption(currentTime);
+            if (updateWhistleEnd(currentTime) && listener != null) {
+                listener.onWhistleEnded(currentTime);
+            }
+            refreshBandFloors(currentTime, meanPower);
+            return false;
+        }
+        
+        // Stage two: a template match against enrolled cookers, or else the classifier
+        // on frequency band ratios from the configured analysis mode, taken over the
+        // power each band carries above its own noise floor
+        framesClassified++;
+        double lowFreqRatio = 0;
+        double midFreqRatio = 0;
+        double highFreqRatio = 0;
+        double whistlePower; // Power in what the classifier takes for the whistle
+        boolean isWhistleSound;
+        
+        FingerprintMatcher matcher = fingerprintMatcher;
+        int matchedFingerprint = -1;
+        if (matcher != null) {
+            // Enrolled cookers: probing only their partials replaces the band rules
+            matchedFingerprint = matcher.match(audioData, length, totalEnergy);
+            isWhistleSound = matchedFingerprint >= 0;
+            whistlePower = isWhistleSound ? matcher.getShare(matchedFingerprint) * meanPower : 0;
+            if (sourceTracker != null && isWhistleSound) {
+                matcher.findPeaks(peaks);
+                sourceTracker.update(peaks, currentTime, Math.round(frameDurationMs));
+            }
+        } else {
+            // Cheap features first: a classifier may rule the frame out before any band analysis
+            FrameClassifier frameClassifier = classifier;
+            features.timestampMs = currentTime;
+            features.powerDb = powerDb;
+            features.noiseFloorDb = noiseFloorDb;
+            features.zeroCrossingRate = cache.zeroCrossingRate();
+            if (frameClassifier.rejectsEarly(features)) {
+                // Band floors then learn from the frame at their refresh rate, as from a gated one
+                isWhistleSound = false;
+                whistlePower = 0;
+                if (!tracking) {
+                    refreshBandFloors(currentTime, meanPower);
+                }
+            } else {
+                FrameFeatures bands = cache.bands();
+                double lowPower = bands.lowFreqRatio * meanPower;
+                double midPower = bands.midFreqRatio * meanPower;
+                double highPower = bands.highFreqRatio * meanPower;
+                double lowExcess = Math.max(0, lowPower - lowBandFloor.getFloorPower());
+                double midExcess = Math.max(0, midPower - midBandFloor.getFloorPower());
+                double highExcess = Math.max(0, highPower - highBandFloor.getFloorPower());
+                double excess = lowExcess + midExcess + highExcess;
+                lowFreqRatio = excess > 0 ? lowExcess / excess : 0;
+                midFreqRatio = excess > 0 ? midExcess / excess : 0;
+                highFreqRatio = excess > 0 ? highExcess / excess : 0;
+                whistlePower = highPower;
+                
+                if (frameClassifier.needsBandLevels()) {
+                    cache.spectrum().bandLevels(features.bandLevels);
+                }
+                
+                // Check if this looks like a whistle
+                features.lowFreqRatio = lowFreqRatio;
+                features.midFreqRatio = midFreqRatio;
+                features.highFreqRatio = highFreqRatio;
+                isWhistleSound = frameClassifier.isWhistle(features) && isLoudEnough;
+                
+                // Only whistle-like frames reach the sources, or every kettle and oven beep
+                // would be counted as a cooker of its own
+                if (sourceTracker != null && isWhistleSound) {
+                    cache.spectrum().findPeaks(config.getSourceMinShare(), peaks);
+                    sourceTracker.update(peaks, currentTime, Math.round(frameDurationMs));
+                }
+                
+                // Loud but not whistle-like frames outside a whistle are background too
+                if (!isWhistleSound && !tracking) {
+                    updateBandFloors(lowPower, midPower, highPower, currentTime);
+                }
+            }
+        }
+        
+        boolean whistleStarted = false;
+        boolean whistleEnded = false;
+        if (isWhistleSound && !coolingDown) {
+            // We're hearing whistle-like sound; a new run starts where its sound began
+            if (sustainedSince == NONE) {
+                runOnsetSample = endSample - length + locateOnset(audioData, length);
+                sustainedSince = SampleClock.millisAt(runOnsetSample, sampleRate);
+                runFrames = 0;
+                runWhistleFrames = 0;
+                if (!isWhistleInProgress) {
+                    whistlePeakDb = NoiseFloorTracker.MIN_POWER_DB;
+                }
+            }
+            lastWhistleLikeTime = currentTime;
+            runFrames++;
+            runWhistleFrames++;
+            whistlePeakDb = Math.max(whistlePeakDb, NoiseFloorTracker.toDb(whistlePower));
+            
+            // If we're not already tracking a whistle, start tracking
+            if (!isWhistleInProgress && getSustainedMs() >= config.getWhistleOnsetMs()) {
+                isWhistleInProgress = true;
+                whistleOnsetSample = runOnsetSample;
+                whistleStartTime = currentTime;
+                whistleConfidence = (double) runWhistleFrames / runFrames;
+                lastWhistleTime = currentTime; // Update cooldown
+                whistleStarted = true;
+            }
+        } else {
+            // We're not hearing whistle-like sound
+            if (sustainedSince != NONE) {
+                runFrames++;
+            }
+            updateInterruption(currentTime);
+            whistleEnded = updateWhistleEnd(currentTime);
+        }
+        
+        if (listener != null) {
+            features.timestampMs = currentTime;
+            features.length = length;
+            features.powerDb = powerDb;
+            features.noiseFloorDb = noiseFloorDb;
+            features.lowFreqRatio = lowFreqRatio;
+            features.midFreqRatio = midFreqRatio;
+            features.highFreqRatio = highFreqRatio;
+            features.zeroCrossingRate = cache.zeroCrossingRate();
+            features.matchedFingerprint = matchedFingerprint;
+            features.loudEnough = isLoudEnough;
+            features.whistleLike = isWhistleSound;
+            features.sustainedMs = getSustainedMs();
+            listener.onFrameAnalyzed(features);
+            if (whistleStarted) {
+                listener.onWhistleStarted(currentTime);
+            } else if (whistleEnded) {
+                listener.onWhistleEnded(currentTime);
+            }
+        }
+        
+        return whistleStarted;
+    }
+    
+    // First block of the frame whose high-passed energy rises halfway (in dB) from
+    // the quietest block to the loudest. Differencing the samples suppresses hum
+    // and rumble, which would otherwise make blocks of background stand out, and
+    // a frame without that much contrast is taken to be whistle from its start.
+    private long locateOnset(short[] audioData, int length) {
+        int blocks = length / ONSET_BLOCK_SIZE;
+        if (onsetBlockEnergy.length < blocks) {
+            onsetBlockEnergy = new long[blocks];
+        }
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int block = 0; block < blocks; block++) {
+            int start = block * ONSET_BLOCK_SIZE;
+            long energy = 0;
+            int previous = start > 0 ? audioData[start - 1] : audioData[0];
+            for (int i = start; i < start + ONSET_BLOCK_SIZE; i++) {
+                int difference = audioData[i] - previous;
+                energy += difference * difference;
+                previous = audioData[i];
+            }
+            onsetBlockEnergy[block] = energy;
+            min = Math.min(min, energy);
+            max = Math.max(max, energy);
+        }
+        
+        int onset = 0;
+        if (max > 4 * min) {
+            double threshold = Math.sqrt((double) min * max);
+            while (onset < blocks && onsetBlockEnergy[onset] < threshold) {
+                onset++;
+            }
+        }
+        return onset * ONSET_BLOCK_SIZE;
+    }
+    
+    // Only reset the sustained run if the interruption is long enough
+    private void updateInterruption(long currentTime) {
+        if (sustainedSince != NONE && currentTime - lastWhistleLikeTime >= config.getMaxInterruptionMs()) {
+            sustainedSince = NONE;
+        }
+    }
+    
+    // Ends the whistle in progress once nothing whistle-like has been heard for long enough
+    private boolean updateWhistleEnd(long currentTime) {
+        if (!isWhistleInProgress || currentTime - lastWhistleLikeTime < config.getWhistleEndMs()) {
+            return false;
+        }
+        isWhistleInProgress = false;
+        sustainedSince = NONE;
+        return true;
+    }
+    
+    // Band floors only learn from frames the classifier sees, so a quiet or gated
+    // frame is analyzed now and then purely to keep them current
+    private void refreshBandFloors(long currentTime, double meanPower) {
+        if (isWhistleInProgress || fingerprintMatcher != null 
+                || currentTime - lastBandFloorUpdate < config.getBandFloorRefreshMs()) {
+            return;
+        }
+        FrameFeatures bands = cache.bands();
+        updateBandFloors(bands.lowFreqRatio * meanPower, bands.midFreqRatio * meanPower,
+                bands.highFreqRatio * meanPower, currentTime);
+    }
+    
+    private void updateBandFloors(double lowPower, double midPower, double highPower, long currentTime) {
+        // Weight each observation by the time it stands for, capped at the refresh interval
+        double elapsedMs = lastBandFloorUpdate == Long.MIN_VALUE ? 0
+                : Math.min(currentTime - lastBandFloorUpdate, config.getBandFloorRefreshMs());
+        lowBandFloor.update(NoiseFloorTracker.toDb(lowPower), elapsedMs);
+        midBandFloor.update(NoiseFloorTracker.toDb(midPower), elapsedMs);
+        highBandFloor.update(NoiseFloorTracker.toDb(highPower), elapsedMs);
+        lastBandFloorUpdate = currentTime;
+    }
+    
+    private NoiseFloorTracker createBandFloor() {
+        return new NoiseFloorTracker(config.getNoiseFloorPercentile(), config.getNoiseFloorAdaptDbPerSecond());
+    }
+}
@@ -0,0 +1,34 @@
+package com.whistlecounter.detector;
+
+import com.whistlecounter.detector.sources.WhistleSource;
+
+/**
+ * Receives detection events from {@link WhistleDetector}. Callbacks run on the
+ * thread that feeds the detector, so implementations must not block.
+ */
+public interface WhistleListener {
+    
+    // A new whistle has been confirmed; this is the event that should be counted
+    default void onWhistleStarted(long timestampMs) {
+    }
+    
+    // The whistle in progress was followed by enough silence to end it
+    default void onWhistleEnded(long timestampMs) {
+    }
+    
+    // The whistle in progress exceeded the maximum whistle duration
+    default void onWhistleTimedOut(long timestampMs) {
+    }
+    
+    // Called for every frame that reached feature extraction
+    default void onFrameAnalyzed(FrameFeatures features) {
+    }
+    
+    // With multi-source tracking: a whistle of one source was confirmed and counted towards it
+    default void onSourceWhistleStarted(WhistleSource source, long timestampMs) {
+    }
+    
+    // With multi-source tracking: a source's whistle ended after silence or by timing out
+    default void onSourceWhistleEnded(WhistleSource source, long timestampMs) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.whistlecounter.detector.audio;
+
+/**
+ * Blocking source of 16-bit mono PCM, such as a microphone or a recording.
+ */
+public interface AudioSource {
+    
+    int getSampleRate();
+    
+    void start();
+    
+    /**
+     * Blocks until at least one sample is available and copies up to
+     * {@code length} samples into {@code buffer}.
+     *
+     * @return number of samples read, or a negative value once the source has
+     *         been stopped, reached its end or failed
+     */
+    int read(short[] buffer, int offset, int length);
+    
+    // Stops capture; a read blocked in another thread returns promptly
+    void stop();
+    
+    void release();
+}
@@ -0,0 +1,120 @@
+package com.whistlecounter.detector.audio;
+
+import com.whistlecounter.detector.SampleClock;
+
+/**
+ * Drives an {@link AudioSource} with blocking reads sized to the analysis hop.
+ *
+ * <p>Each frame is handed to the consumer as soon as the source has produced a
+ * full hop, so the capture thread sleeps inside the read instead of polling, and
+ * frames are stamped with their exact end position on the sample clock. The consumer
+ * runs on the capture thread and may reuse nothing but the frame it is given.
+ */
+public final class CaptureScheduler {
+    
+    public interface FrameConsumer {
+        // endSample is the sample-clock position just past the frame's last sample
+        void onFrame(short[] frame, int length, long endSample);
+    }
+    
+    private static final int MAX_EMPTY_READS = 50; // In a row, before a source that returns nothing counts as ended
+    private static final long EMPTY_READ_BACKOFF_MS = 10;
+    
+    private final AudioSource source;
+    private final int hopSize;
+    private final short[] frame;
+    private final SampleClock clock;
+    private volatile boolean running = false;
+    private volatile long startSample = 0;
+    
+    public CaptureScheduler(AudioSource source, int hopSize) {
+        if (hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be positive: " + hopSize);
+        }
+        this.source = source;
+        this.hopSize = hopSize;
+        this.frame = new short[hopSize];
+        this.clock = new SampleClock(source.getSampleRate());
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Sample-clock position the next {@link #run} starts counting from, so a
+     * capture resumed after a pause continues the stream's timeline.
+     */
+    public void setStartSample(long startSample) {
+        this.startSample = startSample;
+    }
+    
+    /**
+     * Captures and dispatches frames on the calling thread until {@link #stop()}
+     * is called or the source ends. A source that keeps returning no samples
+     * instead of blocking is retried for about half a second, then taken to have
+     * ended. If the source fails to start, its exception is rethrown once the
+     * source has been stopped.
+     */
+    public void run(FrameConsumer consumer) {
+        running = true;
+        clock.reset(startSample);
+        try {
+            source.start();
+            while (running) {
+                int length = readHop();
+                if (length > 0) {
+                    clock.advance(length);
+                    consumer.onFrame(frame, length, clock.getSamplePosition());
+                }
+                if (length < hopSize) {
+                    break; // Source stopped or ended mid-hop
+                }
+            }
+        } finally {
+            running = false;
+            source.stop();
+        }
+    }
+    
+    // Safe to call from any thread; unblocks a pending read
+    public void stop() {
+        running = false;
+        source.stop();
+    }
+    
+    private int readHop() {
+        int filled = 0;
+        int empty = 0;
+        while (filled < hopSize && running) {
+            int read = source.read(frame, filled, hopSize - filled);
+            if (read < 0) {
+                break;
+            }
+            if (read == 0) {
+                // Sources should block, but a driver in trouble can return nothing without waiting
+                if (++empty >= MAX_EMPTY_READS || !backOff()) {
+                    break;
+                }
+                continue;
+            }
+            empty = 0;
+            filled += read;
+        }
+        return filled;
+    }
+    
+    private static boolean backOff() {
+        try {
+            Thread.sleep(EMPTY_READ_BACKOFF_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.whistlecounter.detector.audio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capture and analysis on separate threads joined by a {@link PcmRingBuffer}.
+ *
+ * <p>The capture thread only reads the source and copies frames into the ring,
+ * so slow analysis can never stall it into an overrun inside the audio driver;
+ * if the analyzer falls behind, the ring's overrun policy decides what to drop
+ * and the counters record it.
+ */
+public final class DetectionPipeline {
+    
+    public interface CaptureListener {
+        /**
+         * Capture ended without {@link #stop(long)}: the source failed to start,
+         * failed while reading, or ended. Runs on the capture thread.
+         *
+         * @param cause what the capture thread threw, or null if the source just ended
+         */
+        void onCaptureLost(RuntimeException cause);
+    }
+    
+    private static final long POLL_TIMEOUT_MS = 500; // Re-check the running flag at least this often
+    
+    private final CaptureScheduler scheduler;
+    private final PcmRingBuffer ring;
+    private final PcmFrame analysisFrame;
+    private volatile boolean running = false;
+    private Thread captureThread;
+    private Thread analysisThread;
+    private volatile CaptureListener captureListener;
+    
+    public DetectionPipeline(AudioSource source, int hopSize, int ringCapacity, PcmRingBuffer.OverrunPolicy policy) {
+        this.scheduler = new CaptureScheduler(source, hopSize);
+        this.ring = new PcmRingBuffer(ringCapacity, hopSize, policy);
+        this.analysisFrame = new PcmFrame(hopSize);
+    }
+    
+    public PcmRingBuffer getRingBuffer() {
+        return ring;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    public void setCaptureListener(CaptureListener listener) {
+        this.captureListener = listener;
+    }
+    
+    /**
+     * Starts the capture and analysis threads; {@code analyzer} runs on the
+     * analysis thread for every frame taken from the ring.
+     */
+    public synchronized void start(CaptureScheduler.FrameConsumer analyzer) {
+        start(analyzer, 0);
+    }
+    
+    /**
+     * Like {@link #start(CaptureScheduler.FrameConsumer)}, with the first frame
+     * stamped as following {@code startSample} on the sample clock.
+     */
+    public synchronized void start(CaptureScheduler.FrameConsumer analyzer, long startSample) {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler.setStartSample(startSample);
+        
+        analysisThread = new Thread(() -> analyze(analyzer), "WhistleAnalysis");
+        captureThread = new Thread(() -> {
+            RuntimeException failure = null;
+            try {
+                scheduler.run(ring::offer);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            boolean lost = running; // stop() clears the flag before stopping the scheduler
+            running = false; // Source ended or failed, let the analyzer drain and exit
+            ring.wakeConsumer();
+            CaptureListener listener = captureListener;
+            if (lost && listener != null) {
+                listener.onCaptureLost(failure);
+            }
+        }, "WhistleCapture");
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        
+        analysisThread.start();
+        captureThread.start();
+    }
+    
+    /**
+     * Stops capture, lets the analyzer finish the frames already buffered and
+     * waits up to {@code timeoutMs} for each thread to exit.
+     */
+    public synchronized void stop(long timeoutMs) throws InterruptedException {
+        running = false;
+        scheduler.stop();
+        ring.wakeConsumer();
+        if (captureThread != null) {
+            captureThread.join(timeoutMs);
+            captureThread = null;
+        }
+        if (analysisThread != null) {
+            analysisThread.join(timeoutMs);
+            analysisThread = null;
+        }
+    }
+    
+    private void analyze(CaptureScheduler.FrameConsumer analyzer) {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT_MS);
+        while (running || ring.size() > 0) {
+            if (ring.take(analysisFrame, timeoutNanos)) {
+                analyzer.onFrame(analysisFrame.samples, analysisFrame.length, analysisFrame.endSample);
+            }
+        }
+    }
+}
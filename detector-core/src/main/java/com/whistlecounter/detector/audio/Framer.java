@@ -0,0 +1,93 @@
+package com.whistlecounter.detector.audio;
+
+/**
+ * Cuts a stream of captured chunks into analysis windows of a fixed size that
+ * advance by a fixed hop.
+ *
+ * <p>A hop shorter than the window makes consecutive windows overlap, so the
+ * detector sees new audio more often (lower latency) at the cost of analyzing
+ * each sample more than once; a hop equal to the window analyzes every sample
+ * exactly once. The window lives in one preallocated buffer: after each window
+ * is emitted the retained overlap is shifted down and the next hop appended.
+ * Chunks carry their sample-clock position, and a chunk that does not continue
+ * where the previous one ended (a dropped frame) restarts the window, so every
+ * emitted window is contiguous audio with an exact end position.
+ */
+public final class Framer implements CaptureScheduler.FrameConsumer {
+    
+    public interface WindowConsumer {
+        /**
+         * @param window    the analysis window, valid only during the call
+         * @param length    window length in samples
+         * @param hopLength samples of new audio since the previous window; the whole
+         *                  window for the first one after a (re)start
+         * @param endSample sample-clock position just past the window's last sample
+         */
+        void onWindow(short[] window, int length, int hopLength, long endSample);
+    }
+    
+    private final int windowSize;
+    private final int hopSize;
+    private final short[] window;
+    private final WindowConsumer consumer;
+    private int filled = 0;
+    private int fresh = 0; // Samples appended since the last window
+    private long nextSample = -1; // Position the next chunk must start at to be contiguous
+    private long gaps = 0;
+    
+    public Framer(int windowSize, int hopSize, WindowConsumer consumer) {
+        if (hopSize <= 0 || windowSize < hopSize) {
+            throw new IllegalArgumentException("Need 0 < hop <= window: hop " + hopSize + ", window " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.window = new short[windowSize];
+        this.consumer = consumer;
+    }
+    
+    public int getWindowSize() {
+        return windowSize;
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    // Discontinuities in the incoming stream, each of which restarted the window; a reset is not one
+    public long getGaps() {
+        return gaps;
+    }
+    
+    // Starts a new stream, as when capture resumes after a deliberate pause
+    public void reset() {
+        filled = 0;
+        fresh = 0;
+        nextSample = -1;
+    }
+    
+    @Override
+    public void onFrame(short[] frame, int length, long endSample) {
+        long startSample = endSample - length;
+        if (nextSample >= 0 && startSample != nextSample) {
+            gaps++;
+            filled = 0;
+            fresh = 0;
+        }
+        nextSample = endSample;
+        
+        int offset = 0;
+        while (offset < length) {
+            int n = Math.min(length - offset, windowSize - filled);
+            System.arraycopy(frame, offset, window, filled, n);
+            filled += n;
+            fresh += n;
+            offset += n;
+            if (filled == windowSize) {
+                consumer.onWindow(window, windowSize, fresh, startSample + offset);
+                System.arraycopy(window, hopSize, window, 0, windowSize - hopSize);
+                filled = windowSize - hopSize;
+                fresh = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.whistlecounter.detector.audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link AudioSource} that streams 16-bit PCM from a WAV or headerless raw file.
+ *
+ * <p>Reads never wait for real time, so a recording runs through the detector as
+ * fast as it can analyze it, while the {@link CaptureScheduler}'s sample clock
+ * still stamps every frame with its position in the recording. Multi-channel
+ * WAV files are mixed down to mono. I/O errors end the stream like end of file;
+ * {@link #getError()} tells the two apart.
+ */
+public final class PcmFileSource implements AudioSource {
+    
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    
+    private final File file;
+    private final InputStream in;
+    private final int sampleRate;
+    private final int channels;
+    private long remainingBytes;
+    private byte[] bytes = new byte[0];
+    private volatile boolean stopped = false;
+    private IOException error;
+    
+    private PcmFileSource(File file, InputStream in, int sampleRate, int channels, long dataBytes) {
+        this.file = file;
+        this.in = in;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.remainingBytes = dataBytes;
+    }
+    
+    /**
+     * Opens a file by extension: {@code .wav} files are parsed, anything else is
+     * read as raw little-endian mono at {@code rawSampleRate}.
+     */
+    public static PcmFileSource open(File file, int rawSampleRate) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".wav")) {
+            return openWav(file);
+        }
+        return openRaw(file, rawSampleRate);
+    }
+    
+    public static PcmFileSource openRaw(File file, int sampleRate) throws IOException {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        return new PcmFileSource(file, in, sampleRate, 1, file.length());
+    }
+    
+    public static PcmFileSource openWav(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (readInt(in) != 0x46464952 /* RIFF */) {
+                throw new IOException("Not a RIFF file: " + file);
+            }
+            readInt(in); // RIFF size, unreliable for streamed recordings
+            if (readInt(in) != 0x45564157 /* WAVE */) {
+                throw new IOException("Not a WAVE file: " + file);
+            }
+            
+            int sampleRate = 0;
+            int channels = 0;
+            while (true) {
+                int tag = readInt(in);
+                long size = readInt(in) & 0xFFFFFFFFL;
+                if (tag == 0x20746d66 /* fmt  */) {
+                    int format = readShort(in);
+                    channels = readShort(in);
+                    sampleRate = readInt(in);
+                    readInt(in); // Byte rate
+                    readShort(in); // Block align
+                    int bitsPerSample = readShort(in);
+                    if ((format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_EXTENSIBLE) || bitsPerSample != 16) {
+                        throw new IOException("Only 16-bit PCM is supported: " + file);
+                    }
+                    skipFully(in, size - 16 + (size & 1));
+                } else if (tag == 0x61746164 /* data */) {
+                    if (sampleRate <= 0 || channels <= 0) {
+                        throw new IOException("Missing fmt chunk: " + file);
+                    }
+                    // Recorders that never finalized the header leave the size at 0 or -1
+                    long dataBytes = size == 0 || size == 0xFFFFFFFFL ? Long.MAX_VALUE : size;
+                    return new PcmFileSource(file, in, sampleRate, channels, dataBytes);
+                } else {
+                    skipFully(in, size + (size & 1));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public int getChannels() {
+        return channels;
+    }
+    
+    // The I/O error that ended the stream, or null if it ended normally
+    public IOException getError() {
+        return error;
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public void start() {
+        stopped = false;
+    }
+    
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (stopped || remainingBytes < 2L * channels) {
+            return -1;
+        }
+        int frameBytes = 2 * channels;
+        int wanted = (int) Math.min((long) length * frameBytes, remainingBytes / frameBytes * frameBytes);
+        if (bytes.length < wanted) {
+            bytes = new byte[wanted];
+        }
+        
+        int filled = 0;
+        try {
+            while (filled < wanted) {
+                int read = in.read(bytes, filled, wanted - filled);
+                if (read < 0) {
+                    break;
+                }
+                filled += read;
+            }
+        } catch (IOException e) {
+            error = e;
+            remainingBytes = 0;
+            return -1;
+        }
+        if (filled < wanted) {
+            remainingBytes = 0; // Truncated file
+        } else {
+            remainingBytes -= filled;
+        }
+        
+        int samples = filled / frameBytes;
+        if (samples == 0) {
+            return -1;
+        }
+        for (int i = 0, b = 0; i < samples; i++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++, b += 2) {
+                sum += (short) ((bytes[b] & 0xFF) | (bytes[b + 1] << 8));
+            }
+            buffer[offset + i] = (short) (sum / channels);
+        }
+        return samples;
+    }
+    
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+    
+    @Override
+    public void release() {
+        stopped = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to read from it either way
+        }
+    }
+    
+    private static int readInt(InputStream in) throws IOException {
+        return readShort(in) | (readShort(in) << 16);
+    }
+    
+    private static int readShort(InputStream in) throws IOException {
+        int lo = in.read();
+        int hi = in.read();
+        if ((lo | hi) < 0) {
+            throw new EOFException("Unexpected end of WAV header");
+        }
+        return lo | (hi << 8);
+    }
+    
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of WAV header");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.whistlecounter.detector.audio;
+
+/**
+ * Reusable holder for one frame of 16-bit PCM and its position on the sample clock.
+ */
+public final class PcmFrame {
+    
+    public final short[] samples;
+    public int length;
+    public long endSample; // Sample-clock position just past the last sample
+    
+    public PcmFrame(int capacity) {
+        this.samples = new short[capacity];
+    }
+}
@@ -0,0 +1,157 @@
+package com.whistlecounter.detector.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated PCM frames.
+ *
+ * <p>The producer (capture thread) never waits: when the ring is full it evicts
+ * the oldest frame and counts an overrun. The consumer (analysis thread) copies a
+ * frame out and then claims it with a compare-and-set on the tail; if the
+ * producer evicted that frame while it was being copied, the claim fails and the
+ * possibly torn copy is discarded. An idle consumer parks until the producer
+ * publishes the next frame.
+ */
+public final class PcmRingBuffer {
+    
+    public enum OverrunPolicy {
+        // Analyze every buffered frame in order; the oldest is dropped when full
+        DROP_OLDEST,
+        // Skip straight to the newest frame whenever a backlog builds up
+        COALESCE
+    }
+    
+    private final short[][] slots;
+    private final int[] lengths;
+    private final long[] endSamples;
+    private final int capacity;
+    private final OverrunPolicy policy;
+    
+    private final AtomicLong head = new AtomicLong(); // Next sequence the producer writes
+    private final AtomicLong tail = new AtomicLong(); // Next sequence the consumer reads
+    private volatile Thread waitingConsumer;
+    
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    public PcmRingBuffer(int capacity, int frameCapacity, OverrunPolicy policy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Ring needs at least two slots: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.slots = new short[capacity][frameCapacity];
+        this.lengths = new int[capacity];
+        this.endSamples = new long[capacity];
+    }
+    
+    /**
+     * Producer side: copies a frame into the ring, evicting the oldest frame if the
+     * consumer has fallen a full ring behind. Never blocks.
+     */
+    public void offer(short[] frame, int length, long endSample) {
+        long h = head.get();
+        long t = tail.get();
+        if (h - t >= capacity && tail.compareAndSet(t, t + 1)) {
+            overruns.incrementAndGet();
+        }
+        
+        int slot = (int) (h % capacity);
+        int n = Math.min(length, slots[slot].length);
+        System.arraycopy(frame, 0, slots[slot], 0, n);
+        lengths[slot] = n;
+        endSamples[slot] = endSample;
+        // A full volatile store: the consumer publishes waitingConsumer before
+        // re-checking head, so with a lazySet both sides could miss each other
+        head.set(h + 1);
+        
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    /**
+     * Consumer side: copies the next frame into {@code out}, parking for up to
+     * {@code timeoutNanos} if none is available.
+     *
+     * @return true if a frame was copied, false if the ring stayed empty until the
+     *         timeout or {@link #wakeConsumer()}
+     */
+    public boolean take(PcmFrame out, long timeoutNanos) {
+        boolean parked = false;
+        while (true) {
+            long t = tail.get();
+            long h = head.get();
+            if (t < h) {
+                if (policy == OverrunPolicy.COALESCE && h - t > 1) {
+                    if (tail.compareAndSet(t, h - 1)) {
+                        coalesced.addAndGet(h - 1 - t);
+                    }
+                    continue;
+                }
+                int slot = (int) (t % capacity);
+                int n = Math.min(lengths[slot], out.samples.length);
+                System.arraycopy(slots[slot], 0, out.samples, 0, n);
+                out.length = n;
+                out.endSample = endSamples[slot];
+                if (tail.compareAndSet(t, t + 1)) {
+                    return true;
+                }
+                continue; // Evicted while copying, the copy may be torn
+            }
+            
+            if (parked || timeoutNanos <= 0) {
+                return false;
+            }
+            underruns.incrementAndGet();
+            waitingConsumer = Thread.currentThread();
+            if (tail.get() >= head.get()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+            waitingConsumer = null;
+            parked = true;
+        }
+    }
+    
+    // Wakes a parked consumer without publishing anything, e.g. on shutdown
+    public void wakeConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public OverrunPolicy getPolicy() {
+        return policy;
+    }
+    
+    public int size() {
+        return (int) Math.max(0, head.get() - tail.get());
+    }
+    
+    public long getFramesWritten() {
+        return head.get();
+    }
+    
+    // Frames evicted by the producer because the consumer was a full ring behind
+    public long getOverruns() {
+        return overruns.get();
+    }
+    
+    // Times the consumer found the ring empty and had to wait for capture
+    public long getUnderruns() {
+        return underruns.get();
+    }
+    
+    // Frames skipped by the consumer under COALESCE
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
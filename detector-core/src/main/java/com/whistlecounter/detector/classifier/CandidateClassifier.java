@@ -0,0 +1,32 @@
+package com.whistlecounter.detector.classifier;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * For a detector that only finds candidates for another detector to confirm:
+ * any loud frame that the band rules would not rule out on zero crossings alone.
+ * It ignores the band ratios, and with them the band floors, which go stale in a
+ * detector that hears only part of the stream.
+ */
+public final class CandidateClassifier implements FrameClassifier {
+    
+    public static final CandidateClassifier INSTANCE = new CandidateClassifier();
+    
+    private CandidateClassifier() {
+    }
+    
+    @Override
+    public boolean needsBandLevels() {
+        return false;
+    }
+    
+    @Override
+    public boolean rejectsEarly(FrameFeatures features) {
+        return RuleClassifier.INSTANCE.rejectsEarly(features);
+    }
+    
+    @Override
+    public boolean isWhistle(FrameFeatures features) {
+        return !rejectsEarly(features);
+    }
+}
@@ -0,0 +1,31 @@
+package com.whistlecounter.detector.classifier;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * Decides whether a frame that passed the energy gate sounds like a whistle.
+ * The detector calls it once per classified frame from its audio thread, so
+ * implementations preallocate their work buffers and must not allocate.
+ */
+public interface FrameClassifier {
+    
+    // Whether the detector has to fill FrameFeatures.bandLevels, which costs a spectrum in GOERTZEL mode
+    boolean needsBandLevels();
+    
+    /**
+     * @param features the frame's band ratios (shares of the power above each
+     *                 band's noise floor), zero crossing rate, power and noise
+     *                 floor, and its band levels if {@link #needsBandLevels()}
+     */
+    boolean isWhistle(FrameFeatures features);
+    
+    /**
+     * Asked before any band analysis, with only the power, noise floor and zero
+     * crossing rate filled. Returning true rules the frame out at once, and it
+     * then never costs a band analysis or reaches {@link #isWhistle}; it must
+     * only do so where {@code isWhistle} would say no whatever the bands hold.
+     */
+    default boolean rejectsEarly(FrameFeatures features) {
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package com.whistlecounter.detector.classifier;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * Runs a {@link QuantizedModel} on each classified frame. Inputs and hidden
+ * activations are quantized to int8 in buffers allocated once, and every dot
+ * product accumulates in an int, so a frame costs a few hundred integer
+ * multiply-adds and no allocation. Instances are not thread-safe; use one per
+ * detector.
+ */
+public final class QuantizedClassifier implements FrameClassifier {
+    
+    private final QuantizedModel model;
+    private final float[] vector = new float[QuantizedModel.FEATURE_COUNT];
+    private final byte[] inputs = new byte[QuantizedModel.FEATURE_COUNT];
+    private final byte[] hidden;
+    
+    public QuantizedClassifier(QuantizedModel model) {
+        this.model = model;
+        this.hidden = new byte[model.hiddenCount];
+    }
+    
+    public QuantizedModel getModel() {
+        return model;
+    }
+    
+    @Override
+    public boolean needsBandLevels() {
+        return true;
+    }
+    
+    @Override
+    public boolean isWhistle(FrameFeatures features) {
+        return score(features) >= model.threshold;
+    }
+    
+    /**
+     * @return the output logit for the frame, before the threshold
+     */
+    public float score(FrameFeatures features) {
+        QuantizedModel.featureVector(features, vector);
+        return score(vector);
+    }
+    
+    /**
+     * @param vector the frame's inputs, as filled by {@link QuantizedModel#featureVector}
+     * @return the output logit, before the threshold
+     */
+    public float score(float[] vector) {
+        QuantizedModel m = model;
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = quantize((vector[i] - m.inputMean[i]) * m.inputInvStd[i] * QuantizedModel.INPUT_STEPS);
+        }
+        if (m.hiddenCount == 0) {
+            return dot(m.outputWeights, 0, inputs) * (m.outputScale / QuantizedModel.INPUT_STEPS) + m.outputBias;
+        }
+        
+        float hiddenAccScale = m.hiddenScale / QuantizedModel.INPUT_STEPS;
+        for (int j = 0; j < hidden.length; j++) {
+            float activation = dot(m.hiddenWeights, j * inputs.length, inputs) * hiddenAccScale + m.hiddenBias[j];
+            hidden[j] = quantize(Math.max(0, activation) * m.hiddenSteps);
+        }
+        return dot(m.outputWeights, 0, hidden) * (m.outputScale / m.hiddenSteps) + m.outputBias;
+    }
+    
+    private static int dot(byte[] weights, int offset, byte[] values) {
+        int sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += weights[offset + i] * values[i];
+        }
+        return sum;
+    }
+    
+    private static byte quantize(float value) {
+        return (byte) Math.max(-127, Math.min(127, Math.round(value)));
+    }
+}
@@ -0,0 +1,199 @@
+package com.whistlecounter.detector.classifier;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Weights of a small whistle classifier with int8 weights and activations: an
+ * optional hidden layer with ReLU, then one output whose logit is compared with
+ * a threshold. Without a hidden layer it is plain logistic regression.
+ *
+ * <p>Inputs are standardized with the training set's mean and deviation, then
+ * quantized to {@link #INPUT_STEPS} steps per deviation; each layer has one
+ * weight scale, and hidden activations one step size. Immutable, so one model
+ * can back any number of {@link QuantizedClassifier}s.
+ */
+public final class QuantizedModel {
+    
+    // Band levels, then the band ratios, zero crossing rate and level above the noise floor
+    public static final int FEATURE_COUNT = FrameFeatures.BAND_COUNT + 5;
+    public static final int MAX_HIDDEN = 64;
+    public static final float INPUT_STEPS = 31.75f; // Quantized inputs cover +-4 deviations
+    
+    private static final int MAGIC = 0x57434C46; // "WCLF"
+    private static final int VERSION = 1;
+    
+    final int hiddenCount;
+    final float[] inputMean;
+    final float[] inputInvStd;
+    final byte[] hiddenWeights; // hiddenCount rows of FEATURE_COUNT
+    final float hiddenScale;
+    final float[] hiddenBias;
+    final float hiddenSteps; // Quantization steps per unit of hidden activation
+    final byte[] outputWeights; // One per hidden unit, or per input without a hidden layer
+    final float outputScale;
+    final float outputBias;
+    final float threshold; // Logit at or above which a frame is a whistle
+    
+    /**
+     * @param hiddenWeights row-major, {@code hiddenCount} rows of {@link #FEATURE_COUNT};
+     *                      empty without a hidden layer
+     * @param hiddenScale   value of one weight step in the hidden layer
+     * @param hiddenSteps   steps per unit of hidden activation
+     * @param outputWeights one per hidden unit, or one per feature without a hidden layer
+     * @param outputScale   value of one weight step in the output layer
+     * @param threshold     output logit at or above which a frame is a whistle
+     */
+    public QuantizedModel(float[] inputMean, float[] inputInvStd, int hiddenCount, byte[] hiddenWeights,
+            float hiddenScale, float[] hiddenBias, float hiddenSteps, byte[] outputWeights, float outputScale,
+            float outputBias, float threshold) {
+        if (inputMean.length != FEATURE_COUNT || inputInvStd.length != FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + FEATURE_COUNT + " input statistics");
+        }
+        if (hiddenCount < 0 || hiddenCount > MAX_HIDDEN) {
+            throw new IllegalArgumentException("Hidden units must be 0.." + MAX_HIDDEN);
+        }
+        if (hiddenWeights.length != hiddenCount * FEATURE_COUNT || hiddenBias.length != hiddenCount
+                || outputWeights.length != (hiddenCount > 0 ? hiddenCount : FEATURE_COUNT)) {
+            throw new IllegalArgumentException("Weight counts do not match " + hiddenCount + " hidden units");
+        }
+        if (hiddenCount > 0 && !(hiddenSteps > 0)) {
+            throw new IllegalArgumentException("Hidden steps must be positive");
+        }
+        this.hiddenCount = hiddenCount;
+        this.inputMean = inputMean.clone();
+        this.inputInvStd = inputInvStd.clone();
+        this.hiddenWeights = hiddenWeights.clone();
+        this.hiddenScale = hiddenScale;
+        this.hiddenBias = hiddenBias.clone();
+        this.hiddenSteps = hiddenSteps;
+        this.outputWeights = outputWeights.clone();
+        this.outputScale = outputScale;
+        this.outputBias = outputBias;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Fills {@code out} with the model inputs of a frame, in the order the
+     * weights expect.
+     */
+    public static void featureVector(FrameFeatures features, float[] out) {
+        System.arraycopy(features.bandLevels, 0, out, 0, FrameFeatures.BAND_COUNT);
+        int i = FrameFeatures.BAND_COUNT;
+        out[i++] = (float) features.lowFreqRatio;
+        out[i++] = (float) features.midFreqRatio;
+        out[i++] = (float) features.highFreqRatio;
+        out[i++] = (float) features.zeroCrossingRate;
+        out[i] = (float) (features.powerDb - features.noiseFloorDb);
+    }
+    
+    public int getHiddenCount() {
+        return hiddenCount;
+    }
+    
+    public float getThreshold() {
+        return threshold;
+    }
+    
+    // The same weights deciding at another logit, as chosen after quantization
+    public QuantizedModel withThreshold(float threshold) {
+        return new QuantizedModel(inputMean, inputInvStd, hiddenCount, hiddenWeights, hiddenScale, hiddenBias,
+                hiddenSteps, outputWeights, outputScale, outputBias, threshold);
+    }
+    
+    /**
+     * @throws IOException if the stream does not hold a model of this version
+     */
+    public static QuantizedModel read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " classifier model");
+        }
+        int features = in.readInt();
+        int hiddenCount = in.readInt();
+        if (features != FEATURE_COUNT || hiddenCount < 0 || hiddenCount > MAX_HIDDEN) {
+            throw new IOException("Unsupported model shape " + features + "x" + hiddenCount);
+        }
+        float[] inputMean = readFloats(in, FEATURE_COUNT);
+        float[] inputInvStd = readFloats(in, FEATURE_COUNT);
+        byte[] hiddenWeights = readBytes(in, hiddenCount * FEATURE_COUNT);
+        float hiddenScale = in.readFloat();
+        float[] hiddenBias = readFloats(in, hiddenCount);
+        float hiddenSteps = in.readFloat();
+        byte[] outputWeights = readBytes(in, hiddenCount > 0 ? hiddenCount : FEATURE_COUNT);
+        float outputScale = in.readFloat();
+        float outputBias = in.readFloat();
+        float threshold = in.readFloat();
+        try {
+            return new QuantizedModel(inputMean, inputInvStd, hiddenCount, hiddenWeights, hiddenScale, hiddenBias,
+                    hiddenSteps, outputWeights, outputScale, outputBias, threshold);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt classifier model", e);
+        }
+    }
+    
+    public static QuantizedModel load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+    
+    // Written to a temporary file that then replaces the old one, as fingerprints are
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(FEATURE_COUNT);
+            out.writeInt(hiddenCount);
+            writeFloats(out, inputMean);
+            writeFloats(out, inputInvStd);
+            out.write(hiddenWeights);
+            out.writeFloat(hiddenScale);
+            writeFloats(out, hiddenBias);
+            out.writeFloat(hiddenSteps);
+            out.write(outputWeights);
+            out.writeFloat(outputScale);
+            out.writeFloat(outputBias);
+            out.writeFloat(threshold);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+    
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+    
+    private static byte[] readBytes(DataInputStream in, int count) throws IOException {
+        byte[] values = new byte[count];
+        in.readFully(values);
+        return values;
+    }
+    
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+}
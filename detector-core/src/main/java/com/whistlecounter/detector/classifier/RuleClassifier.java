@@ -0,0 +1,35 @@
+package com.whistlecounter.detector.classifier;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * The hand-tuned band rules: mostly high-band power, some mid-band power, little
+ * low-band power and a high zero crossing rate. Used when no model is installed.
+ */
+public final class RuleClassifier implements FrameClassifier {
+    
+    public static final RuleClassifier INSTANCE = new RuleClassifier();
+    
+    private RuleClassifier() {
+    }
+    
+    @Override
+    public boolean needsBandLevels() {
+        return false;
+    }
+    
+    // Zero crossings are nearly free, and a low rate fails the rules before the bands matter
+    @Override
+    public boolean rejectsEarly(FrameFeatures features) {
+        return features.zeroCrossingRate <= 0.1;
+    }
+    
+    @Override
+    public boolean isWhistle(FrameFeatures features) {
+        boolean hasHighFreq = features.highFreqRatio > 0.3;  // At least 30% high frequency (lowered threshold)
+        boolean notTooMuchLowFreq = features.lowFreqRatio < 0.4;  // Less than 40% low frequency (relaxed)
+        boolean hasMidFreq = features.midFreqRatio > 0.15;  // Some mid frequency content (lowered threshold)
+        boolean hasHighZeroCrossing = features.zeroCrossingRate > 0.1;  // High zero crossing rate indicates high frequency
+        return hasHighFreq && notTooMuchLowFreq && hasMidFreq && hasHighZeroCrossing;
+    }
+}
@@ -0,0 +1,79 @@
+package com.whistlecounter.detector.dsp;
+
+/**
+ * Running estimate of a low percentile of a power signal, in dB.
+ *
+ * <p>Each update nudges the estimate up by {@code percentile} or down by
+ * {@code 1 - percentile} steps, scaled by the time the update covers, so the
+ * estimate settles where that fraction of observations lie below it. Tracking a
+ * low percentile follows the background level while ignoring short loud events,
+ * and because steps are scaled by elapsed time rather than counted per frame,
+ * adaptation speed does not depend on the frame size.
+ */
+public final class NoiseFloorTracker {
+    
+    public static final double MIN_POWER_DB = -120; // Digital silence clamp
+    
+    private final double percentile;
+    private final double adaptDbPerSecond;
+    private double floorDb = Double.NaN;
+    
+    /**
+     * @param percentile       fraction of observations expected below the floor, in (0, 1)
+     * @param adaptDbPerSecond full step size; the floor rises at {@code percentile}
+     *                         and falls at {@code 1 - percentile} times this rate
+     */
+    public NoiseFloorTracker(double percentile, double adaptDbPerSecond) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be in (0, 1): " + percentile);
+        }
+        this.percentile = percentile;
+        this.adaptDbPerSecond = adaptDbPerSecond;
+    }
+    
+    public static double toDb(double power) {
+        return power > 0 ? Math.max(MIN_POWER_DB, 10 * Math.log10(power)) : MIN_POWER_DB;
+    }
+    
+    public void reset() {
+        floorDb = Double.NaN;
+    }
+    
+    // Restores a previously observed floor, e.g. after a restart
+    public void setFloorDb(double floorDb) {
+        this.floorDb = floorDb;
+    }
+    
+    public boolean isInitialized() {
+        return !Double.isNaN(floorDb);
+    }
+    
+    /**
+     * Feeds one observation covering {@code durationMs} of audio.
+     *
+     * @param powerDb observed power in dB
+     * @return the updated floor in dB
+     */
+    public double update(double powerDb, double durationMs) {
+        if (Double.isNaN(floorDb)) {
+            floorDb = powerDb;
+            return floorDb;
+        }
+        double step = adaptDbPerSecond * durationMs / 1000;
+        if (powerDb > floorDb) {
+            floorDb = Math.min(powerDb, floorDb + step * percentile);
+        } else {
+            floorDb = Math.max(powerDb, floorDb - step * (1 - percentile));
+        }
+        return floorDb;
+    }
+    
+    public double getFloorDb() {
+        return floorDb;
+    }
+    
+    // Floor as linear power; zero before the first observation
+    public double getFloorPower() {
+        return Double.isNaN(floorDb) ? 0 : Math.pow(10, floorDb / 10);
+    }
+}
@@ -0,0 +1,15 @@
+package com.whistlecounter.detector.dsp;
+
+/**
+ * Scale factors between raw 16-bit PCM and normalized [-1, 1] audio. Kernels
+ * work on the raw samples and apply these once per result instead of converting
+ * every sample.
+ */
+public final class PcmScale {
+    
+    public static final float SAMPLE_SCALE = 1f / 32768f;
+    public static final double ENERGY_SCALE = 1.0 / (32768.0 * 32768.0);
+    
+    private PcmScale() {
+    }
+}
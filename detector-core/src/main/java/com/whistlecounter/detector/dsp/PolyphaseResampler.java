@@ -0,0 +1,131 @@
+package com.whistlecounter.detector.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Converts a stream of 16-bit PCM from one sample rate to another by a rational
+ * factor, with a windowed-sinc low-pass in polyphase form.
+ *
+ * <p>The prototype filter runs at the input rate times {@code up}; split into
+ * {@code up} phases, each output sample needs only one phase of
+ * {@code tapsPerPhase} taps over the last input samples, so only the kept outputs
+ * are ever computed. With {@code up = 1} this is a plain decimator. The cutoff,
+ * where the gain is half, is 90% of the lower rate's Nyquist frequency. State
+ * carries over from one call to the next, so a stream can be fed in chunks of
+ * any size; {@link #reset()} starts a new one.
+ */
+public final class PolyphaseResampler {
+    
+    public static final int DEFAULT_TAPS_PER_PHASE = 32; // From 22.05 to 16 kHz: 9 kHz is over 60 dB down
+    private static final double CUTOFF = 0.9; // Share of the lower Nyquist frequency kept
+    
+    private final int inputRate;
+    private final int outputRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[][] phases; // phases[p][j] weights the input sample j before the current one
+    
+    private float[] buffer; // taps - 1 samples of history, then the chunk being converted
+    private long position; // Next output's time since the chunk start, in 1/up input samples
+    
+    public PolyphaseResampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, DEFAULT_TAPS_PER_PHASE);
+    }
+    
+    public PolyphaseResampler(int inputRate, int outputRate, int tapsPerPhase) {
+        if (inputRate <= 0 || outputRate <= 0 || tapsPerPhase < 2) {
+            throw new IllegalArgumentException("Rates must be positive and phases need at least 2 taps");
+        }
+        int divisor = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / divisor;
+        this.down = inputRate / divisor;
+        this.taps = tapsPerPhase;
+        this.phases = design(up, down, tapsPerPhase);
+        this.buffer = new float[taps - 1];
+    }
+    
+    public int getInputRate() {
+        return inputRate;
+    }
+    
+    public int getOutputRate() {
+        return outputRate;
+    }
+    
+    // Most samples one call can write for this many input samples
+    public int maxOutput(int inputLength) {
+        return (int) (((long) inputLength * up + down - 1) / down) + 1;
+    }
+    
+    // Starts a new stream, as after a gap in the input
+    public void reset() {
+        Arrays.fill(buffer, 0, taps - 1, 0f);
+        position = 0;
+    }
+    
+    /**
+     * Converts the next {@code length} input samples.
+     *
+     * @param out receives the output; must hold {@link #maxOutput(int)} samples
+     * @return samples written to {@code out}
+     */
+    public int process(short[] in, int length, short[] out) {
+        int history = taps - 1;
+        if (buffer.length < history + length) {
+            float[] grown = new float[history + length];
+            System.arraycopy(buffer, 0, grown, 0, history);
+            buffer = grown;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[history + i] = in[i];
+        }
+        
+        int written = 0;
+        long end = (long) length * up;
+        while (position < end) {
+            int index = (int) (position / up);
+            float[] phase = phases[(int) (position - (long) index * up)];
+            int newest = history + index;
+            float sum = 0;
+            for (int j = 0; j < taps; j++) {
+                sum += phase[j] * buffer[newest - j];
+            }
+            int sample = Math.round(sum);
+            out[written++] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            position += down;
+        }
+        position -= end;
+        
+        // The newest samples become the history of the next chunk
+        System.arraycopy(buffer, length, buffer, 0, history);
+        return written;
+    }
+    
+    // Blackman-windowed sinc at the upsampled rate, with a gain of up to make up for the zeros it interpolates
+    private static float[][] design(int up, int down, int taps) {
+        int length = up * taps;
+        double cutoff = 0.5 * CUTOFF / Math.max(up, down); // Cycles per upsampled sample
+        double center = (length - 1) / 2.0;
+        float[][] phases = new float[up][taps];
+        for (int k = 0; k < length; k++) {
+            double x = k - center;
+            double sinc = x == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * (k + 0.5) / length)
+                    + 0.08 * Math.cos(4 * Math.PI * (k + 0.5) / length);
+            phases[k % up][k / up] = (float) (up * 2 * cutoff * sinc * window);
+        }
+        return phases;
+    }
+    
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
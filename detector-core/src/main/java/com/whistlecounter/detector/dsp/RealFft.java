@@ -0,0 +1,149 @@
+package com.whistlecounter.detector.dsp;
+
+/**
+ * In-place radix-2 FFT for real-valued frames with a built-in Hann window.
+ *
+ * <p>All tables (window, twiddles, bit-reversal) and work buffers are allocated
+ * once in the constructor so {@link #powerSpectrum} never allocates. The window
+ * spans the frame itself, not the zero padding after it, and is recomputed in
+ * place only when the frame length changes. A real frame
+ * of {@code size} samples is packed into a complex frame of {@code size / 2}
+ * points, transformed, and then split back into the {@code size / 2 + 1}
+ * non-negative frequency bins. Instances are not thread-safe.
+ */
+public final class RealFft {
+    
+    private final int size;
+    private final int half;
+    private final float[] window;
+    private int windowLength = 0; // Frame length the window currently spans
+    private final float[] cos; // cos(2*pi*k/size), k = 0..size/2
+    private final float[] sin; // sin(2*pi*k/size), k = 0..size/2
+    private final int[] bitReverse;
+    private final float[] re;
+    private final float[] im;
+    
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        
+        window = new float[size];
+        
+        cos = new float[half + 1];
+        sin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            double angle = 2 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+        
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        
+        re = new float[half];
+        im = new float[half];
+    }
+    
+    /**
+     * Smallest supported FFT size that holds {@code frameLength} samples.
+     */
+    public static int sizeFor(int frameLength) {
+        int size = 4;
+        while (size < frameLength) {
+            size <<= 1;
+        }
+        return size;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public int getBinCount() {
+        return half + 1;
+    }
+    
+    /**
+     * Windows the first {@code length} samples of {@code frame}, zero-pads them up
+     * to the FFT size and writes the power of each bin into {@code power}.
+     *
+     * @param frame  raw 16-bit PCM samples
+     * @param length number of valid samples, at most {@link #getSize()}
+     * @param power  output of at least {@link #getBinCount()} elements, in units
+     *               of normalized [-1, 1] audio
+     */
+    public void powerSpectrum(short[] frame, int length, float[] power) {
+        int n = Math.min(length, size);
+        if (n != windowLength) {
+            buildWindow(n);
+        }
+        
+        // Pack even samples into the real part and odd samples into the imaginary part
+        for (int k = 0; k < half; k++) {
+            int i = 2 * k;
+            int j = bitReverse[k];
+            re[j] = i < n ? frame[i] * window[i] : 0f;
+            im[j] = i + 1 < n ? frame[i + 1] * window[i + 1] : 0f;
+        }
+        
+        transform();
+        
+        // Split the half-size complex spectrum into the spectrum of the real frame
+        power[0] = (re[0] + im[0]) * (re[0] + im[0]);
+        power[half] = (re[0] - im[0]) * (re[0] - im[0]);
+        for (int k = 1; k < half; k++) {
+            float zr = re[k];
+            float zi = im[k];
+            float cr = re[half - k];
+            float ci = -im[half - k];
+            
+            float evenRe = 0.5f * (zr + cr);
+            float evenIm = 0.5f * (zi + ci);
+            float oddRe = 0.5f * (zi - ci);
+            float oddIm = -0.5f * (zr - cr);
+            
+            // X[k] = even + e^(-2*pi*i*k/size) * odd
+            float wr = cos[k];
+            float wi = -sin[k];
+            float xr = evenRe + wr * oddRe - wi * oddIm;
+            float xi = evenIm + wr * oddIm + wi * oddRe;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+    
+    // Hann window over the first n samples with the 16-bit to [-1, 1] normalization folded in
+    private void buildWindow(int n) {
+        for (int i = 0; i < n; i++) {
+            double hann = n > 1 ? 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (n - 1)) : 1;
+            window[i] = (float) hann * PcmScale.SAMPLE_SCALE;
+        }
+        windowLength = n;
+    }
+    
+    private void transform() {
+        // Iterative decimation-in-time butterflies over bit-reversed input
+        for (int span = 1; span < half; span <<= 1) {
+            int stride = half / (span << 1); // step through the size/2 table in units of 2*pi/half
+            for (int k = 0; k < span; k++) {
+                int t = 2 * k * stride;
+                float wr = cos[t];
+                float wi = -sin[t];
+                for (int i = k; i < half; i += span << 1) {
+                    int j = i + span;
+                    float tr = wr * re[j] - wi * im[j];
+                    float ti = wr * im[j] + wi * re[j];
+                    re[j] = re[i] - tr;
+                    im[j] = im[i] - ti;
+                    re[i] += tr;
+                    im[i] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.whistlecounter.detector.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Sum of squares and zero crossings of a stream of analysis windows, computed
+ * only when asked for and kept per block of one hop.
+ *
+ * <p>Blocks are keyed by their sample-clock end, so when windows overlap, a
+ * block is summed once and reused by every later window that still contains it.
+ * Each window then costs one new block instead of all of its samples. Without
+ * overlap each window is one block and costs the same as a plain pass. The
+ * sums are exact integers, so reusing them never drifts. A statistic that was
+ * not asked for on some windows has its missing blocks filled in from the
+ * current window when it is next asked for.
+ */
+public final class RollingFrameStats {
+    
+    private static final long NONE = Long.MIN_VALUE;
+    
+    private int blockSize = 0;
+    private long[] energyKey = new long[0]; // Sample-clock end of the block in each slot
+    private long[] energy = new long[0];
+    private long[] crossingKey = new long[0];
+    private int[] crossings = new int[0]; // Sign changes between samples inside the block
+    
+    private short[] window;
+    private long startSample;
+    private long lastEndSample = NONE;
+    private int head; // Samples before the first whole block, summed directly
+    private int blocks;
+    
+    /**
+     * Moves on to the next window. Nothing is computed until a statistic is asked for.
+     *
+     * @param hopLength samples of new audio since the previous window
+     * @param endSample sample-clock position just past the window's last sample
+     */
+    public void next(short[] window, int length, int hopLength, long endSample) {
+        if (endSample <= lastEndSample) {
+            clear(); // The clock started again, so the keys no longer name the same audio
+        }
+        
+        // A whole-window hop only restarts the stream; keep the block size of the overlap
+        int size = hopLength < length ? hopLength : (blockSize > 0 && blockSize <= length ? blockSize : length);
+        if (size != blockSize) {
+            blockSize = size;
+            clear();
+        }
+        this.window = window;
+        this.startSample = endSample - length;
+        this.blocks = length / blockSize;
+        this.head = length - blocks * blockSize;
+        if (energyKey.length < blocks + 1) {
+            energyKey = new long[blocks + 1];
+            energy = new long[blocks + 1];
+            crossingKey = new long[blocks + 1];
+            crossings = new int[blocks + 1];
+            clear();
+        }
+        lastEndSample = endSample;
+    }
+    
+    // Forgets every block, as after the sample clock restarts
+    public void clear() {
+        Arrays.fill(energyKey, NONE);
+        Arrays.fill(crossingKey, NONE);
+        lastEndSample = NONE;
+    }
+    
+    /**
+     * Sum of the squared raw samples of the current window.
+     */
+    public long sumOfSquares() {
+        // Products of two samples fit in an int, so only the running sum needs a long
+        long sum = sumOfSquares(window, 0, head);
+        for (int b = 0; b < blocks; b++) {
+            int start = head + b * blockSize;
+            long key = startSample + start + blockSize;
+            int slot = slot(key);
+            if (energyKey[slot] != key) {
+                energy[slot] = sumOfSquares(window, start, start + blockSize);
+                energyKey[slot] = key;
+            }
+            sum += energy[slot];
+        }
+        return sum;
+    }
+    
+    /**
+     * Sign changes between consecutive samples of the current window.
+     */
+    public int zeroCrossings() {
+        int count = crossings(window, 0, head);
+        for (int b = 0; b < blocks; b++) {
+            int start = head + b * blockSize;
+            long key = startSample + start + blockSize;
+            int slot = slot(key);
+            if (crossingKey[slot] != key) {
+                crossings[slot] = crossings(window, start, start + blockSize);
+                crossingKey[slot] = key;
+            }
+            count += crossings[slot];
+            if (start > 0) {
+                count += (window[start - 1] * window[start]) >>> 31; // The pair across the block boundary
+            }
+        }
+        return count;
+    }
+    
+    private int slot(long key) {
+        long slot = key / blockSize % energyKey.length;
+        return (int) (slot < 0 ? slot + energyKey.length : slot);
+    }
+    
+    private static long sumOfSquares(short[] samples, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            int sample = samples[i];
+            sum += sample * sample;
+        }
+        return sum;
+    }
+    
+    // A negative product of neighbours is a strict sign change, so the loop needs no branches
+    private static int crossings(short[] samples, int from, int to) {
+        if (to - from < 2) {
+            return 0;
+        }
+        int count = 0;
+        int previous = samples[from];
+        for (int i = from + 1; i < to; i++) {
+            int sample = samples[i];
+            count += (previous * sample) >>> 31;
+            previous = sample;
+        }
+        return count;
+    }
+}
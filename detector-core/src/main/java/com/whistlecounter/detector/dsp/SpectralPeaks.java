@@ -0,0 +1,76 @@
+package com.whistlecounter.detector.dsp;
+
+/**
+ * The strongest spectral peaks of a frame, strongest first. Storage for a fixed
+ * number of peaks is allocated up front, so filling it never allocates.
+ */
+public final class SpectralPeaks {
+    
+    private final double[] frequenciesHz;
+    private final double[] shares;
+    private int count = 0;
+    
+    public SpectralPeaks(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.frequenciesHz = new double[capacity];
+        this.shares = new double[capacity];
+    }
+    
+    public int getCapacity() {
+        return shares.length;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public double getFrequencyHz(int peak) {
+        return frequenciesHz[peak];
+    }
+    
+    // Fraction of the analyzed band's power that the peak carries, 0..1
+    public double getShare(int peak) {
+        return shares[peak];
+    }
+    
+    public void clear() {
+        count = 0;
+    }
+    
+    /**
+     * Adds a peak if it is among the strongest offered since the last
+     * {@link #clear()}, dropping the weakest when full.
+     */
+    public void offer(double frequencyHz, double share) {
+        int position = count;
+        while (position > 0 && shares[position - 1] < share) {
+            position--;
+        }
+        if (position == shares.length) {
+            return;
+        }
+        int end = Math.min(count, shares.length - 1);
+        System.arraycopy(frequenciesHz, position, frequenciesHz, position + 1, end - position);
+        System.arraycopy(shares, position, shares, position + 1, end - position);
+        frequenciesHz[position] = frequencyHz;
+        shares[position] = share;
+        count = end + 1;
+    }
+    
+    /**
+     * Offset of the true peak from the middle of three adjacent bins, in bins,
+     * from a parabola through their log powers. Zero when any of them is empty.
+     */
+    public static double interpolate(double below, double peak, double above) {
+        if (below <= 0 || peak <= 0 || above <= 0) {
+            return 0;
+        }
+        double a = Math.log(below);
+        double b = Math.log(peak);
+        double c = Math.log(above);
+        double curvature = a - 2 * b + c;
+        return curvature < 0 ? Math.max(-0.5, Math.min(0.5, 0.5 * (a - c) / curvature)) : 0;
+    }
+}
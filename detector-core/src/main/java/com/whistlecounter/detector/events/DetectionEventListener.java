@@ -0,0 +1,34 @@
+package com.whistlecounter.detector.events;
+
+import com.whistlecounter.detector.sources.SourceCount;
+
+import java.util.List;
+
+/**
+ * Receives coalesced detection events from an {@link EventStream} subscription.
+ * Callbacks run on whatever thread the subscription's dispatcher delivers on.
+ * Intermediate values may be skipped: each callback carries the latest state,
+ * not every change.
+ */
+public interface DetectionEventListener {
+    
+    // The most recent confirmed whistle: when it began and when it was confirmed
+    default void onWhistleOnset(long onsetMs, long detectedMs) {
+    }
+    
+    // The most recent whistle ended, either after silence or by timing out
+    default void onWhistleOffset(long timestampMs, boolean timedOut) {
+    }
+    
+    // The session's whistle count; it goes down only when the count is reset
+    default void onCountChanged(int count) {
+    }
+    
+    // Whistle counts per cooker, by order of first whistle, when cookers are told apart
+    default void onSourceCountsChanged(List<SourceCount> counts) {
+    }
+    
+    // The latest level meter reading, subject to the subscriber's rate limit; reused after the call returns
+    default void onLevel(LevelReading reading) {
+    }
+}
@@ -0,0 +1,278 @@
+package com.whistlecounter.detector.events;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.sources.SourceCount;
+
+/**
+ * Typed detection events published by the detection engine and delivered to
+ * any number of subscribers without locks.
+ *
+ * <p>Each subscription keeps only the latest value of each event type plus a
+ * bitmask of types that changed since its last delivery. Publishing stores the
+ * value and sets the bit; only the publish that turns an empty mask non-empty
+ * asks the subscription's {@link Dispatcher} for a delivery, so however fast
+ * frames arrive a subscriber has at most one delivery outstanding, and a
+ * dispatcher that delivers once per display frame yields at most one UI update
+ * per frame. Level readings are additionally rate limited per subscriber: a
+ * reading that arrives too soon waits for one delayed delivery at the end of
+ * the interval. Readings are recycled rather than allocated per frame.
+ */
+public final class EventStream {
+    
+    /**
+     * Schedules {@link Subscription#deliver()} on the subscriber's thread. Called
+     * from publishing threads, at most once per outstanding delivery.
+     */
+    public interface Dispatcher {
+        void schedule(Subscription subscription);
+        
+        // Like schedule, no sooner than delayMs from now; called from deliver() on the subscriber's thread
+        void scheduleDelayed(Subscription subscription, long delayMs);
+    }
+    
+    private static final int ONSET = 1;
+    private static final int OFFSET = 1 << 1;
+    private static final int COUNT = 1 << 2;
+    private static final int LEVEL = 1 << 3;
+    private static final int SOURCES = 1 << 4;
+    
+    // Replaced as a whole on every change, so publishers iterate it without allocating
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    
+    /**
+     * @param levelIntervalMs minimum time between level readings delivered to this
+     *                        subscriber; 0 delivers the latest reading every time
+     */
+    public synchronized Subscription subscribe(DetectionEventListener listener, Dispatcher dispatcher, 
+                                               long levelIntervalMs) {
+        Subscription subscription = new Subscription(listener, dispatcher, levelIntervalMs);
+        Subscription[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        grown[grown.length - 1] = subscription;
+        subscriptions = grown;
+        return subscription;
+    }
+    
+    private synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] shrunk = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                subscriptions = shrunk;
+                return;
+            }
+        }
+    }
+    
+    public boolean hasSubscribers() {
+        return subscriptions.length > 0;
+    }
+    
+    public void publishOnset(long onsetMs, long detectedMs) {
+        if (subscriptions.length == 0) return;
+        Edge edge = new Edge(onsetMs, detectedMs, false);
+        for (Subscription subscription : subscriptions) {
+            subscription.onset = edge;
+            subscription.markPending(ONSET);
+        }
+    }
+    
+    public void publishOffset(long timestampMs, boolean timedOut) {
+        if (subscriptions.length == 0) return;
+        Edge edge = new Edge(timestampMs, timestampMs, timedOut);
+        for (Subscription subscription : subscriptions) {
+            subscription.offset = edge;
+            subscription.markPending(OFFSET);
+        }
+    }
+    
+    public void publishCount(int count) {
+        for (Subscription subscription : subscriptions) {
+            subscription.count = count;
+            subscription.markPending(COUNT);
+        }
+    }
+    
+    // The list must not change after it is published
+    public void publishSourceCounts(List<SourceCount> counts) {
+        for (Subscription subscription : subscriptions) {
+            subscription.sources = counts;
+            subscription.markPending(SOURCES);
+        }
+    }
+    
+    // Copies the frame into each subscription's recycled readings, allocating nothing; one publishing thread only
+    public void publishLevel(FrameFeatures features, boolean whistleInProgress) {
+        for (Subscription subscription : subscriptions) {
+            subscription.levels.publish(features, whistleInProgress);
+            subscription.markPending(LEVEL);
+        }
+    }
+    
+    // A whistle onset or offset; for offsets both times are the offset time
+    private static final class Edge {
+        
+        final long timeMs;
+        final long detectedMs;
+        final boolean timedOut;
+        
+        Edge(long timeMs, long detectedMs, boolean timedOut) {
+            this.timeMs = timeMs;
+            this.detectedMs = detectedMs;
+            this.timedOut = timedOut;
+        }
+    }
+    
+    /**
+     * Triple buffer of readings between one publisher and one subscriber. The
+     * publisher fills its own reading and swaps it into the middle; the
+     * subscriber swaps the middle out only when it holds a newer reading. Neither
+     * side waits or allocates, and the reading each side holds is its own.
+     */
+    private static final class LevelBuffer {
+        
+        private static final int FRESH = 4; // The middle reading was published after the subscriber last took one
+        private static final int INDEX = 3;
+        
+        private final LevelReading[] readings = {new LevelReading(), new LevelReading(), new LevelReading()};
+        private final AtomicInteger middle = new AtomicInteger(1);
+        private int back = 0; // Publisher's
+        private int front = 2; // Subscriber's
+        
+        void publish(FrameFeatures features, boolean whistleInProgress) {
+            readings[back].set(features, whistleInProgress);
+            back = middle.getAndSet(back | FRESH) & INDEX;
+        }
+        
+        // The latest reading, or null if none was published since the last call
+        LevelReading take() {
+            if ((middle.get() & FRESH) == 0) {
+                return null;
+            }
+            front = middle.getAndSet(front) & INDEX;
+            return readings[front];
+        }
+    }
+    
+    public final class Subscription {
+        
+        private final DetectionEventListener listener;
+        private final Dispatcher dispatcher;
+        private final long levelIntervalNanos;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile Edge onset;
+        private volatile Edge offset;
+        private volatile int count;
+        private volatile List<SourceCount> sources;
+        private final LevelBuffer levels = new LevelBuffer();
+        private volatile boolean closed = false;
+        
+        // Touched only by the delivering thread
+        private long lastLevelNanos;
+        private boolean levelDeferred = false; // A delayed delivery will hand over the latest reading
+        private long deliveries = 0;
+        
+        private final AtomicInteger coalesced = new AtomicInteger();
+        
+        private Subscription(DetectionEventListener listener, Dispatcher dispatcher, long levelIntervalMs) {
+            this.listener = listener;
+            this.dispatcher = dispatcher;
+            this.levelIntervalNanos = TimeUnit.MILLISECONDS.toNanos(levelIntervalMs);
+            this.lastLevelNanos = System.nanoTime() - levelIntervalNanos;
+        }
+        
+        private void markPending(int type) {
+            if (closed) return;
+            int previous;
+            do {
+                previous = pending.get(); // A CAS loop, since getAndUpdate's lambda would allocate per frame
+            } while (!pending.compareAndSet(previous, previous | type));
+            if (previous == 0) {
+                dispatcher.schedule(this);
+            } else if ((previous & type) != 0) {
+                coalesced.incrementAndGet();
+            }
+        }
+        
+        /**
+         * Hands every event type that changed since the last delivery to the
+         * listener. Called by the dispatcher on the subscriber's thread.
+         */
+        public void deliver() {
+            int bits = pending.getAndSet(0);
+            if (closed) return;
+            if (levelDeferred && System.nanoTime() - lastLevelNanos >= levelIntervalNanos) {
+                levelDeferred = false;
+                bits |= LEVEL;
+            }
+            if (bits == 0) return;
+            deliveries++;
+            
+            // Onset and offset go out in the order they happened
+            Edge onsetEdge = (bits & ONSET) != 0 ? onset : null;
+            Edge offsetEdge = (bits & OFFSET) != 0 ? offset : null;
+            if (offsetEdge != null && onsetEdge != null && offsetEdge.timeMs < onsetEdge.detectedMs) {
+                deliverOffset(offsetEdge);
+                offsetEdge = null;
+            }
+            if (onsetEdge != null) {
+                listener.onWhistleOnset(onsetEdge.timeMs, onsetEdge.detectedMs);
+            }
+            if (offsetEdge != null) {
+                deliverOffset(offsetEdge);
+            }
+            if ((bits & COUNT) != 0) {
+                listener.onCountChanged(count);
+            }
+            if ((bits & SOURCES) != 0) {
+                listener.onSourceCountsChanged(sources);
+            }
+            
+            if ((bits & LEVEL) != 0) {
+                long now = System.nanoTime();
+                long waitNanos = lastLevelNanos + levelIntervalNanos - now;
+                if (waitNanos > 0) {
+                    // Too soon for this subscriber: one delayed delivery takes whatever is latest by then
+                    if (!levelDeferred) {
+                        levelDeferred = true;
+                        dispatcher.scheduleDelayed(this, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+                    }
+                } else {
+                    LevelReading reading = levels.take();
+                    if (reading != null) {
+                        lastLevelNanos = now;
+                        listener.onLevel(reading);
+                    }
+                }
+            }
+        }
+        
+        private void deliverOffset(Edge edge) {
+            listener.onWhistleOffset(edge.timeMs, edge.timedOut);
+        }
+        
+        // Stops deliveries, including one that is already scheduled
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+        
+        public boolean isClosed() {
+            return closed;
+        }
+        
+        public long getDeliveries() {
+            return deliveries;
+        }
+        
+        // Events overwritten by a newer value of the same type before they were delivered
+        public int getCoalesced() {
+            return coalesced.get();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.whistlecounter.detector.events;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+/**
+ * Snapshot of one analyzed frame for level meters and status displays. Unlike
+ * {@link FrameFeatures} it may be handed across threads. Each subscription
+ * recycles a few readings, so one is only valid during the listener callback
+ * it is passed to.
+ */
+public final class LevelReading {
+    
+    public long timestampMs;
+    public double powerDb; // Mean power per sample, dBFS
+    public double noiseFloorDb; // Broadband noise floor, dBFS
+    public double highFreqRatio;
+    public double zeroCrossingRate;
+    public boolean whistleLike;
+    public long sustainedMs;
+    public boolean whistleInProgress;
+    
+    LevelReading() {
+    }
+    
+    void set(FrameFeatures features, boolean whistleInProgress) {
+        this.timestampMs = features.timestampMs;
+        this.powerDb = features.powerDb;
+        this.noiseFloorDb = features.noiseFloorDb;
+        this.highFreqRatio = features.highFreqRatio;
+        this.zeroCrossingRate = features.zeroCrossingRate;
+        this.whistleLike = features.whistleLike;
+        this.sustainedMs = features.sustainedMs;
+        this.whistleInProgress = whistleInProgress;
+    }
+    
+    public double getAboveFloorDb() {
+        return powerDb - noiseFloorDb;
+    }
+}
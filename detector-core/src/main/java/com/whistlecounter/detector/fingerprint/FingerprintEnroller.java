@@ -0,0 +1,176 @@
+package com.whistlecounter.detector.fingerprint;
+
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.SpectralFeatureExtractor;
+import com.whistlecounter.detector.WhistleDetector;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+
+/**
+ * Learns a cooker's {@link WhistleFingerprint} from a few of its whistles.
+ *
+ * <p>Frames go through a detector of its own that uses the generic band-ratio
+ * rules, so enrollment finds whistles whatever fingerprints are already in use.
+ * The spectral peaks of every whistle-like frame inside a confirmed whistle
+ * are accumulated into a fine frequency histogram; once enough whistles have
+ * ended, its strongest clusters become the fingerprint's partials. Feed it the
+ * same frames as the main detector, from one thread.
+ */
+public final class FingerprintEnroller {
+    
+    public static final int DEFAULT_WHISTLES = 3;
+    
+    private static final double HISTOGRAM_BIN_HZ = 10;
+    private static final int PEAKS_PER_FRAME = 8;
+    private static final double PEAK_MIN_SHARE = 0.05; // Peaks weaker than this are noise, not partials
+    private static final double PARTIAL_MIN_WEIGHT = 0.1; // Relative to the strongest partial
+    
+    private final WhistleDetector detector;
+    private final SpectralFeatureExtractor extractor;
+    private final FrameFeatures features = new FrameFeatures();
+    private final SpectralPeaks peaks = new SpectralPeaks(PEAKS_PER_FRAME);
+    private final double[] histogram; // Summed peak shares per HISTOGRAM_BIN_HZ
+    private final int mergeBins;
+    private final int whistlesNeeded;
+    private int whistlesHeard = 0;
+    private boolean complete = false;
+    private boolean frameWhistleLike = false;
+    private long framesUsed = 0;
+    
+    public FingerprintEnroller(DetectorConfig config, int sampleRate, int maxFrameLength, int whistlesNeeded) {
+        DetectorConfig generic = config.toBuilder()
+                .setAnalysisMode(AnalysisMode.SPECTRAL)
+                .setMultiSourceEnabled(false)
+                .build();
+        this.detector = new WhistleDetector(generic, sampleRate, maxFrameLength);
+        this.extractor = new SpectralFeatureExtractor(sampleRate, maxFrameLength, 
+                config.getLowBandMaxHz(), config.getMidBandMaxHz());
+        this.histogram = new double[(int) (sampleRate / 2.0 / HISTOGRAM_BIN_HZ) + 1];
+        this.mergeBins = Math.max(1, (int) Math.round(config.getSourceToleranceHz() / HISTOGRAM_BIN_HZ));
+        this.whistlesNeeded = whistlesNeeded;
+        detector.setListener(new WhistleListener() {
+            @Override
+            public void onWhistleStarted(long timestampMs) {
+                whistlesHeard++;
+            }
+            
+            @Override
+            public void onWhistleEnded(long timestampMs) {
+                complete |= whistlesHeard >= FingerprintEnroller.this.whistlesNeeded;
+            }
+            
+            @Override
+            public void onWhistleTimedOut(long timestampMs) {
+                complete |= whistlesHeard >= FingerprintEnroller.this.whistlesNeeded;
+            }
+            
+            @Override
+            public void onFrameAnalyzed(FrameFeatures analyzed) {
+                frameWhistleLike = analyzed.whistleLike;
+            }
+        });
+    }
+    
+    public int getWhistlesHeard() {
+        return whistlesHeard;
+    }
+    
+    public int getWhistlesNeeded() {
+        return whistlesNeeded;
+    }
+    
+    // Enough whistles have been heard and the last one has ended
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    /**
+     * Analyzes one window, as {@link WhistleDetector#process(short[], int, int, long)}.
+     */
+    public void process(short[] window, int length, int hopLength, long endSample) {
+        if (complete || length <= 0) {
+            return;
+        }
+        frameWhistleLike = false;
+        detector.process(window, length, hopLength, endSample);
+        if (!frameWhistleLike || !detector.isWhistleInProgress()) {
+            return;
+        }
+        
+        features.totalEnergy = 0;
+        extractor.extract(window, length, features);
+        extractor.findPeaks(PEAK_MIN_SHARE, peaks);
+        for (int p = 0; p < peaks.getCount(); p++) {
+            int bin = (int) Math.round(peaks.getFrequencyHz(p) / HISTOGRAM_BIN_HZ);
+            if (bin < histogram.length) {
+                histogram[bin] += peaks.getShare(p);
+            }
+        }
+        framesUsed++;
+    }
+    
+    /**
+     * The fingerprint learned so far: up to {@link WhistleFingerprint#MAX_PARTIALS}
+     * histogram clusters, strongest first, each at its weighted mean frequency.
+     *
+     * @return the fingerprint, or null if no whistle has been heard yet
+     */
+    public WhistleFingerprint build() {
+        if (framesUsed == 0) {
+            return null;
+        }
+        double[] remaining = histogram.clone();
+        float[] frequenciesHz = new float[WhistleFingerprint.MAX_PARTIALS];
+        float[] weights = new float[WhistleFingerprint.MAX_PARTIALS];
+        int partials = 0;
+        double total = 0;
+        while (partials < WhistleFingerprint.MAX_PARTIALS) {
+            // Cluster with the most weight within the merge distance of its centre
+            int center = -1;
+            double best = 0;
+            for (int bin = 0; bin < remaining.length; bin++) {
+                if (remaining[bin] > 0) {
+                    double sum = clusterSum(remaining, bin);
+                    if (sum > best) {
+                        best = sum;
+                        center = bin;
+                    }
+                }
+            }
+            if (center < 0 || (partials > 0 && best < PARTIAL_MIN_WEIGHT * weights[0])) {
+                break;
+            }
+            
+            double weightedHz = 0;
+            int from = Math.max(0, center - mergeBins);
+            int to = Math.min(remaining.length - 1, center + mergeBins);
+            for (int bin = from; bin <= to; bin++) {
+                weightedHz += remaining[bin] * bin * HISTOGRAM_BIN_HZ;
+                remaining[bin] = 0;
+            }
+            frequenciesHz[partials] = (float) (weightedHz / best);
+            weights[partials] = (float) best;
+            total += best;
+            partials++;
+        }
+        
+        float[] partialHz = new float[partials];
+        float[] partialWeights = new float[partials];
+        for (int p = 0; p < partials; p++) {
+            partialHz[p] = frequenciesHz[p];
+            partialWeights[p] = (float) (weights[p] / total);
+        }
+        return new WhistleFingerprint(partialHz, partialWeights);
+    }
+    
+    private double clusterSum(double[] values, int center) {
+        double sum = 0;
+        int to = Math.min(values.length - 1, center + mergeBins);
+        for (int bin = Math.max(0, center - mergeBins); bin <= to; bin++) {
+            sum += values[bin];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,129 @@
+package com.whistlecounter.detector.fingerprint;
+
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.dsp.GoertzelBank;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Template match of a frame against a small set of enrolled fingerprints.
+ *
+ * <p>One Goertzel probe sits on every enrolled partial, so a frame costs a few
+ * probes per cooker instead of a spectrum of the whole band. A fingerprint
+ * matches when its partials together carry enough of the frame's power and
+ * their powers are in roughly the enrolled proportions. Built once per set of
+ * fingerprints; instances are not thread-safe.
+ */
+public final class FingerprintMatcher {
+    
+    private final List<WhistleFingerprint> fingerprints;
+    private final GoertzelBank bank;
+    private final int blockSize;
+    private final int[] firstProbe; // Per fingerprint, into the bank's probes
+    private final double[] energies;
+    private final double[] shares; // Per fingerprint, for the last frame
+    private final boolean[] matched;
+    private final double minShare;
+    private final double minSimilarity;
+    
+    public FingerprintMatcher(List<WhistleFingerprint> fingerprints, int sampleRate, DetectorConfig config) {
+        if (fingerprints.isEmpty()) {
+            throw new IllegalArgumentException("No fingerprints to match");
+        }
+        this.fingerprints = Collections.unmodifiableList(new ArrayList<>(fingerprints));
+        this.blockSize = config.getFingerprintBlockSize();
+        this.minShare = config.getFingerprintMinShare();
+        this.minSimilarity = config.getFingerprintMinSimilarity();
+        
+        int probes = 0;
+        firstProbe = new int[fingerprints.size() + 1];
+        for (int f = 0; f < fingerprints.size(); f++) {
+            firstProbe[f] = probes;
+            probes += fingerprints.get(f).getPartialCount();
+        }
+        firstProbe[fingerprints.size()] = probes;
+        double[] frequenciesHz = new double[probes];
+        for (int f = 0; f < fingerprints.size(); f++) {
+            WhistleFingerprint fingerprint = fingerprints.get(f);
+            for (int p = 0; p < fingerprint.getPartialCount(); p++) {
+                frequenciesHz[firstProbe[f] + p] = fingerprint.getFrequencyHz(p);
+            }
+        }
+        this.bank = new GoertzelBank(sampleRate, blockSize, frequenciesHz);
+        this.energies = new double[probes];
+        this.shares = new double[fingerprints.size()];
+        this.matched = new boolean[fingerprints.size()];
+    }
+    
+    public List<WhistleFingerprint> getFingerprints() {
+        return fingerprints;
+    }
+    
+    public int getProbeCount() {
+        return energies.length;
+    }
+    
+    /**
+     * Matches one frame against every fingerprint.
+     *
+     * @param totalEnergy sum of the frame's squared normalized samples
+     * @return index of the best matching fingerprint, or -1 if none matched
+     */
+    public int match(short[] frame, int length, double totalEnergy) {
+        int blocks = length / blockSize;
+        double coveredEnergy = totalEnergy * blocks * blockSize / length; // The probes skip a trailing partial block
+        if (blocks == 0 || coveredEnergy <= 0) {
+            Arrays.fill(shares, 0);
+            Arrays.fill(matched, false);
+            return -1;
+        }
+        bank.energies(frame, length, energies);
+        
+        int best = -1;
+        for (int f = 0; f < shares.length; f++) {
+            WhistleFingerprint fingerprint = fingerprints.get(f);
+            double energy = 0;
+            double dot = 0;
+            double norm = 0;
+            double weightNorm = 0;
+            for (int p = 0; p < fingerprint.getPartialCount(); p++) {
+                double partialEnergy = energies[firstProbe[f] + p];
+                double weight = fingerprint.getWeight(p);
+                energy += partialEnergy;
+                dot += partialEnergy * weight;
+                norm += partialEnergy * partialEnergy;
+                weightNorm += weight * weight;
+            }
+            double similarity = norm > 0 && weightNorm > 0 ? dot / Math.sqrt(norm * weightNorm) : 0;
+            shares[f] = Math.min(1, energy / coveredEnergy);
+            matched[f] = shares[f] >= minShare && similarity >= minSimilarity;
+            if (matched[f] && (best < 0 || shares[f] > shares[best])) {
+                best = f;
+            }
+        }
+        return best;
+    }
+    
+    // Share of the last frame's power carried by the fingerprint's partials, 0..1
+    public double getShare(int fingerprint) {
+        return shares[fingerprint];
+    }
+    
+    public boolean isMatched(int fingerprint) {
+        return matched[fingerprint];
+    }
+    
+    // The dominant partial of each fingerprint matched in the last frame, for the source tracker
+    public void findPeaks(SpectralPeaks out) {
+        out.clear();
+        for (int f = 0; f < matched.length; f++) {
+            if (matched[f]) {
+                out.offer(fingerprints.get(f).getDominantHz(), shares[f]);
+            }
+        }
+    }
+}
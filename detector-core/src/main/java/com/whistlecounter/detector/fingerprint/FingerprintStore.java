@@ -0,0 +1,93 @@
+package com.whistlecounter.detector.fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes enrolled fingerprints. The whole set is a few dozen bytes
+ * per cooker, so it is rewritten as a unit: saves go to a temporary file that
+ * then replaces the old one, and an interrupted save leaves the previous set.
+ */
+public final class FingerprintStore {
+    
+    public static final int MAX_FINGERPRINTS = 8; // Matching cost grows with each one
+    
+    private static final int MAGIC = 0x57465052; // "WFPR"
+    private static final int VERSION = 1;
+    
+    private FingerprintStore() {
+    }
+    
+    /**
+     * @return the saved fingerprints, or an empty list if none were saved
+     * @throws IOException if the file cannot be read or is not a fingerprint file
+     */
+    public static List<WhistleFingerprint> load(File file) throws IOException {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " fingerprint file: " + file);
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_FINGERPRINTS) {
+                throw new IOException("Bad fingerprint count " + count + " in " + file);
+            }
+            List<WhistleFingerprint> fingerprints = new ArrayList<>(count);
+            for (int f = 0; f < count; f++) {
+                int partials = in.readInt();
+                if (partials < 1 || partials > WhistleFingerprint.MAX_PARTIALS) {
+                    throw new IOException("Bad partial count " + partials + " in " + file);
+                }
+                float[] frequenciesHz = new float[partials];
+                float[] weights = new float[partials];
+                for (int p = 0; p < partials; p++) {
+                    frequenciesHz[p] = in.readFloat();
+                    weights[p] = in.readFloat();
+                }
+                try {
+                    fingerprints.add(new WhistleFingerprint(frequenciesHz, weights));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Corrupt fingerprint in " + file, e);
+                }
+            }
+            return fingerprints;
+        }
+    }
+    
+    public static void save(File file, List<WhistleFingerprint> fingerprints) throws IOException {
+        if (fingerprints.size() > MAX_FINGERPRINTS) {
+            throw new IllegalArgumentException("At most " + MAX_FINGERPRINTS + " fingerprints");
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fingerprints.size());
+            for (WhistleFingerprint fingerprint : fingerprints) {
+                out.writeInt(fingerprint.getPartialCount());
+                for (int p = 0; p < fingerprint.getPartialCount(); p++) {
+                    out.writeFloat((float) fingerprint.getFrequencyHz(p));
+                    out.writeFloat((float) fingerprint.getWeight(p));
+                }
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
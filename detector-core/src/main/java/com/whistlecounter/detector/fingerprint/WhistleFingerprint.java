@@ -0,0 +1,45 @@
+package com.whistlecounter.detector.fingerprint;
+
+/**
+ * Compact spectral signature of one cooker's whistle: the frequencies of its
+ * strongest partials and the share of their combined power each one carries.
+ * Immutable.
+ */
+public final class WhistleFingerprint {
+    
+    public static final int MAX_PARTIALS = 4;
+    
+    private final float[] frequenciesHz; // Strongest partial first
+    private final float[] weights; // Sum to one
+    
+    public WhistleFingerprint(float[] frequenciesHz, float[] weights) {
+        if (frequenciesHz.length == 0 || frequenciesHz.length > MAX_PARTIALS 
+                || frequenciesHz.length != weights.length) {
+            throw new IllegalArgumentException("A fingerprint needs 1 to " + MAX_PARTIALS + " weighted partials");
+        }
+        for (int i = 0; i < frequenciesHz.length; i++) {
+            if (!(frequenciesHz[i] > 0) || !(weights[i] >= 0)) {
+                throw new IllegalArgumentException("Invalid partial: " + frequenciesHz[i] + " Hz, weight " + weights[i]);
+            }
+        }
+        this.frequenciesHz = frequenciesHz.clone();
+        this.weights = weights.clone();
+    }
+    
+    public int getPartialCount() {
+        return frequenciesHz.length;
+    }
+    
+    public double getFrequencyHz(int partial) {
+        return frequenciesHz[partial];
+    }
+    
+    public double getWeight(int partial) {
+        return weights[partial];
+    }
+    
+    // Frequency of the strongest partial, which identifies the cooker
+    public double getDominantHz() {
+        return frequenciesHz[0];
+    }
+}
@@ -0,0 +1,180 @@
+package com.whistlecounter.detector.session;
+
+import java.util.Arrays;
+
+/**
+ * Decides when a long session needs the microphone, from the rhythm of the
+ * whistles heard so far.
+ *
+ * <p>After the first few whistles a cooker settles into a fairly regular
+ * interval. Once the recent intervals agree, the next whistle is expected one
+ * median interval after the last. Until shortly before that time the scheduler
+ * duty-cycles: short listen windows with the microphone released in between.
+ * Sleeps are kept shorter than the shortest whistle heard minus the time it
+ * takes to confirm one, so a whistle that starts during a sleep is still
+ * confirmed in the next window. It asks for continuous listening near the
+ * expected time and once it is overdue, until the rhythm is known, and for a
+ * while after any sound got past the energy gate.
+ *
+ * <p>All times are on one monotonic clock chosen by the caller. Methods are
+ * synchronized: events arrive from the audio thread, decisions are taken on
+ * another.
+ */
+public final class ListenScheduler {
+    
+    public static final long LISTEN_WINDOW_MS = 1500; // Long enough to confirm a whistle already under way
+    public static final long MIN_SLEEP_MS = 1000; // Shorter sleeps save too little to pay for restarting capture
+    public static final long MAX_SLEEP_MS = 5000;
+    public static final long SLEEP_MARGIN_MS = 500; // Capture restart and onset slack taken off each sleep
+    public static final long ACTIVITY_HOLD_MS = 5000; // Continuous listening after sound was heard
+    public static final long MIN_GUARD_MS = 15000; // Continuous listening before the expected whistle, at least
+    public static final double GUARD_SHARE = 0.2; // ... or this share of the interval, if longer
+    public static final int HISTORY = 5; // Most recent intervals the prediction uses
+    public static final int MIN_INTERVALS = 2; // Intervals needed before timing is trusted
+    public static final double MAX_SPREAD_RATIO = 0.25; // Median absolute deviation over median; above this timing is irregular
+    
+    private static final long NONE = Long.MIN_VALUE;
+    
+    private final long onsetMs;
+    private final long[] intervals = new long[HISTORY];
+    private final long[] sorted = new long[HISTORY];
+    private int intervalCount = 0;
+    private int nextInterval = 0;
+    private long lastWhistleMs = NONE;
+    private long shortestWhistleMs = Long.MAX_VALUE;
+    private long lastActivityMs = NONE;
+    private long windowStartMs = NONE; // Start of the current duty-cycle period
+    private boolean listening = true;
+    private long nextDecisionMs = NONE;
+    
+    /**
+     * @param onsetMs sustained sound needed to confirm a whistle, see
+     *                {@code DetectorConfig.getWhistleOnsetMs()}
+     */
+    public ListenScheduler(long onsetMs) {
+        this.onsetMs = onsetMs;
+    }
+    
+    public synchronized void reset() {
+        intervalCount = 0;
+        nextInterval = 0;
+        lastWhistleMs = NONE;
+        shortestWhistleMs = Long.MAX_VALUE;
+        lastActivityMs = NONE;
+        windowStartMs = NONE;
+        listening = true;
+        nextDecisionMs = NONE;
+    }
+    
+    // A whistle was confirmed
+    public synchronized void onWhistle(long nowMs) {
+        if (lastWhistleMs != NONE && nowMs > lastWhistleMs) {
+            intervals[nextInterval] = nowMs - lastWhistleMs;
+            nextInterval = (nextInterval + 1) % HISTORY;
+            intervalCount = Math.min(intervalCount + 1, HISTORY);
+        }
+        lastWhistleMs = nowMs;
+        lastActivityMs = nowMs;
+    }
+    
+    // A whistle ended after sounding for durationMs
+    public synchronized void onWhistleEnded(long durationMs) {
+        if (durationMs > 0) {
+            shortestWhistleMs = Math.min(shortestWhistleMs, durationMs);
+        }
+    }
+    
+    // Sound got past the energy gate, so something may be starting
+    public synchronized void onActivity(long nowMs) {
+        lastActivityMs = nowMs;
+    }
+    
+    // Median of the recent intervals, or 0 while too few are known
+    public synchronized long getIntervalMs() {
+        return intervalCount >= MIN_INTERVALS ? median(intervalCount) : 0;
+    }
+    
+    /**
+     * When the next whistle is expected, or {@link Long#MIN_VALUE} while the
+     * timing is unknown or too irregular to predict.
+     */
+    public synchronized long getExpectedMs() {
+        long interval = getIntervalMs();
+        if (interval <= 0 || getSpreadMs(interval) > MAX_SPREAD_RATIO * interval) {
+            return NONE;
+        }
+        return lastWhistleMs + interval;
+    }
+    
+    // Longest safe sleep between listen windows, or 0 if duty cycling would risk missing a whistle
+    public synchronized long getSleepMs() {
+        if (shortestWhistleMs == Long.MAX_VALUE) {
+            return 0;
+        }
+        long sleep = Math.min(MAX_SLEEP_MS, shortestWhistleMs - onsetMs - SLEEP_MARGIN_MS);
+        return sleep >= MIN_SLEEP_MS ? sleep : 0;
+    }
+    
+    /**
+     * Decides whether the microphone should be on at {@code nowMs}. The decision
+     * holds until {@link #getNextDecisionMs()}, or until an event arrives.
+     */
+    public synchronized boolean update(long nowMs) {
+        long expected = getExpectedMs();
+        long sleep = getSleepMs();
+        if (expected == NONE || sleep == 0) {
+            // Nothing to go on yet: listen continuously, and look again once there may be
+            return listenContinuously(nowMs + ACTIVITY_HOLD_MS);
+        }
+        
+        long interval = getIntervalMs();
+        long guardStart = expected - Math.max(MIN_GUARD_MS, (long) (GUARD_SHARE * interval));
+        if (nowMs >= guardStart) {
+            // Close to the expected whistle, or overdue: stay on until it comes
+            return listenContinuously(nowMs + ACTIVITY_HOLD_MS);
+        }
+        if (lastActivityMs != NONE && nowMs - lastActivityMs < ACTIVITY_HOLD_MS) {
+            return listenContinuously(lastActivityMs + ACTIVITY_HOLD_MS);
+        }
+        
+        // Duty cycle: a listen window, then a sleep that never runs into the guard period
+        if (windowStartMs == NONE || nowMs >= windowStartMs + LISTEN_WINDOW_MS + sleep) {
+            windowStartMs = nowMs;
+        }
+        long windowEndMs = windowStartMs + LISTEN_WINDOW_MS;
+        listening = nowMs < windowEndMs;
+        nextDecisionMs = listening ? windowEndMs : Math.min(windowEndMs + sleep, guardStart);
+        return listening;
+    }
+    
+    public synchronized boolean isListening() {
+        return listening;
+    }
+    
+    // When the last decision should be revisited
+    public synchronized long getNextDecisionMs() {
+        return nextDecisionMs;
+    }
+    
+    private boolean listenContinuously(long untilMs) {
+        windowStartMs = NONE;
+        listening = true;
+        nextDecisionMs = untilMs;
+        return true;
+    }
+    
+    private long median(int count) {
+        System.arraycopy(intervals, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return sorted[count / 2];
+    }
+    
+    // Median absolute deviation of the recent intervals from their median
+    private long getSpreadMs(long median) {
+        for (int i = 0; i < intervalCount; i++) {
+            sorted[i] = Math.abs(intervals[i] - median);
+        }
+        Arrays.sort(sorted, 0, intervalCount);
+        return sorted[intervalCount / 2];
+    }
+}
@@ -0,0 +1,92 @@
+package com.whistlecounter.detector.session;
+
+import com.whistlecounter.detector.DetectorConfig;
+
+/**
+ * Decides which sample rate capture should run at in multi-rate mode.
+ *
+ * <p>Most of a session is spent waiting, so capture monitors at a low rate that
+ * still holds the whistle band. A whistle-like frame heard there is only a
+ * candidate: capture switches to full rate, and only the full-rate detector
+ * confirms and counts whistles. Once it has heard nothing whistle-like for
+ * {@link #IDLE_HOLD_MS}, capture drops back to monitoring. The hold counts from
+ * the switch too, so every candidate gets a fair chance to be confirmed, and
+ * from the end of a whistle, which is still heard at full rate.
+ *
+ * <p>All times are on one monotonic clock chosen by the caller. Methods are
+ * synchronized: frames arrive on the audio thread, while capture is restarted
+ * from another.
+ */
+public final class RateSwitcher {
+    
+    public static final long IDLE_HOLD_MS = 3000; // Quiet at full rate before monitoring again
+    private static final double MONITOR_MID_BAND_SHARE = 0.8; // Highest mid band edge, as a share of the monitor's Nyquist frequency
+    
+    private boolean fullRate = true;
+    private long lastActivityMs;
+    
+    /**
+     * Starts over at full rate, as at the start of a session, so the full-rate
+     * detector learns the noise floor before the first switch.
+     */
+    public synchronized void reset(long nowMs) {
+        fullRate = true;
+        lastActivityMs = nowMs;
+    }
+    
+    public synchronized boolean isFullRate() {
+        return fullRate;
+    }
+    
+    /**
+     * A frame was analyzed while monitoring.
+     *
+     * @return true if capture should switch to full rate now
+     */
+    public synchronized boolean onMonitorFrame(boolean whistleLike, long nowMs) {
+        if (fullRate || !whistleLike) {
+            return false;
+        }
+        fullRate = true;
+        lastActivityMs = nowMs;
+        return true;
+    }
+    
+    /**
+     * A frame was analyzed at full rate.
+     *
+     * @param busy the frame was whistle-like, or a whistle or a run towards one is under way
+     * @return true if capture should drop back to the monitor rate now
+     */
+    public synchronized boolean onFullRateFrame(boolean busy, long nowMs) {
+        if (!fullRate) {
+            return false;
+        }
+        if (busy) {
+            lastActivityMs = nowMs;
+            return false;
+        }
+        if (nowMs - lastActivityMs < IDLE_HOLD_MS) {
+            return false;
+        }
+        fullRate = false;
+        return true;
+    }
+    
+    /**
+     * The configuration for the monitor's own detector at {@code monitorRate}.
+     * Band edges move below its Nyquist frequency if they have to. The monitor
+     * only finds candidates: it tracks no sources and has no cooldown, so a
+     * candidate just after a switch back is never held off.
+     */
+    public static DetectorConfig monitorConfig(DetectorConfig config, int monitorRate) {
+        double midBandMaxHz = Math.min(config.getMidBandMaxHz(), MONITOR_MID_BAND_SHARE * monitorRate / 2);
+        double lowBandMaxHz = Math.min(config.getLowBandMaxHz(), midBandMaxHz / 2);
+        return config.toBuilder()
+                .setLowBandMaxHz(lowBandMaxHz)
+                .setMidBandMaxHz(midBandMaxHz)
+                .setWhistleCooldownMs(0)
+                .setMultiSourceEnabled(false)
+                .build();
+    }
+}
@@ -0,0 +1,159 @@
+package com.whistlecounter.detector.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Live session state in a tiny memory-mapped file, so it survives the process
+ * being killed.
+ *
+ * <p>Saving is a handful of stores into the mapped page with no system call;
+ * the kernel owns the page, so what was stored is still there when the process
+ * restarts, even though it reaches the disk only when the kernel writes it back.
+ * The file holds two slots and an index naming the current one. Each save
+ * fills the other slot and then flips the index, so a process killed mid-save
+ * leaves the previous state intact instead of a torn mix of both.
+ */
+public final class SessionCheckpoint implements Closeable {
+    
+    private static final int MAGIC = 0x57434B50; // "WCKP"
+    private static final int VERSION = 2;
+    private static final int ACTIVE_OFFSET = 8; // After magic and version
+    private static final int SLOT_OFFSET = 16;
+    private static final int SLOT_SIZE = 40;
+    private static final int FILE_SIZE = SLOT_OFFSET + 2 * SLOT_SIZE;
+    
+    // Slot layout
+    private static final int COUNT = 0; // i32
+    private static final int FLAGS = 4; // i32
+    private static final int LAST_WHISTLE_MS = 8; // i64, wall clock
+    private static final int NOISE_FLOOR_DB = 16; // f64
+    private static final int SAVED_AT_MS = 24; // i64, wall clock
+    private static final int TARGET_COUNT = 32; // i32
+    private static final int SESSION_START_COUNT = 36; // i32, zero in files written before it was added
+    
+    private static final int FLAG_DETECTING = 1;
+    private static final int FLAG_BACKGROUND = 1 << 1;
+    private static final int FLAG_WHISTLE_IN_PROGRESS = 1 << 2;
+    
+    /**
+     * One saved state. Times are wall-clock ms since the epoch, since the sample
+     * clock does not survive a restart.
+     */
+    public static final class State {
+        
+        public final int count;
+        public final boolean detecting; // Capture was running
+        public final boolean backgroundMode;
+        public final boolean whistleInProgress;
+        public final long lastWhistleMs; // Last confirmed whistle, or 0 for none
+        public final double noiseFloorDb; // NaN if the floor was not yet known
+        public final long savedAtMs;
+        public final int targetCount; // Whistles after which the session stops, or 0 for none
+        public final int sessionStartCount; // The count when the session started; the target counts from here
+        
+        public State(int count, boolean detecting, boolean backgroundMode, boolean whistleInProgress, 
+                     long lastWhistleMs, double noiseFloorDb, long savedAtMs, int targetCount, 
+                     int sessionStartCount) {
+            this.count = count;
+            this.detecting = detecting;
+            this.backgroundMode = backgroundMode;
+            this.whistleInProgress = whistleInProgress;
+            this.lastWhistleMs = lastWhistleMs;
+            this.noiseFloorDb = noiseFloorDb;
+            this.savedAtMs = savedAtMs;
+            this.targetCount = targetCount;
+            this.sessionStartCount = sessionStartCount;
+        }
+    }
+    
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer map;
+    private final State saved;
+    
+    private SessionCheckpoint(RandomAccessFile raf, MappedByteBuffer map, State saved) {
+        this.raf = raf;
+        this.map = map;
+        this.saved = saved;
+    }
+    
+    /**
+     * Maps the checkpoint file, creating it if needed. A file that is not a
+     * checkpoint of this version is started afresh.
+     */
+    public static SessionCheckpoint open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            boolean valid = raf.length() == FILE_SIZE;
+            raf.setLength(FILE_SIZE);
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            
+            State saved = null;
+            if (valid && map.getInt(0) == MAGIC && map.getInt(4) == VERSION) {
+                saved = readSlot(map, map.getInt(ACTIVE_OFFSET) & 1);
+            } else {
+                for (int i = 0; i < FILE_SIZE; i++) {
+                    map.put(i, (byte) 0);
+                }
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(ACTIVE_OFFSET, 0);
+                map.force();
+            }
+            return new SessionCheckpoint(raf, map, saved);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+    
+    // The state found when the checkpoint was opened, or null if there was none
+    public State getRestored() {
+        return saved;
+    }
+    
+    /**
+     * Stores the state. Safe to call from any thread; the audio thread may call
+     * it on every state change.
+     */
+    public synchronized void save(int count, boolean detecting, boolean backgroundMode, boolean whistleInProgress, 
+                                  long lastWhistleMs, double noiseFloorDb, int targetCount, int sessionStartCount) {
+        int next = (map.getInt(ACTIVE_OFFSET) & 1) ^ 1;
+        int base = SLOT_OFFSET + next * SLOT_SIZE;
+        int flags = (detecting ? FLAG_DETECTING : 0) 
+                | (backgroundMode ? FLAG_BACKGROUND : 0) 
+                | (whistleInProgress ? FLAG_WHISTLE_IN_PROGRESS : 0);
+        map.putInt(base + COUNT, count);
+        map.putInt(base + FLAGS, flags);
+        map.putLong(base + LAST_WHISTLE_MS, lastWhistleMs);
+        map.putDouble(base + NOISE_FLOOR_DB, noiseFloorDb);
+        map.putLong(base + SAVED_AT_MS, System.currentTimeMillis());
+        map.putInt(base + TARGET_COUNT, targetCount);
+        map.putInt(base + SESSION_START_COUNT, sessionStartCount);
+        map.putInt(ACTIVE_OFFSET, next); // Publishes the slot
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        raf.close();
+    }
+    
+    private static State readSlot(MappedByteBuffer map, int slot) {
+        int base = SLOT_OFFSET + slot * SLOT_SIZE;
+        int flags = map.getInt(base + FLAGS);
+        return new State(map.getInt(base + COUNT), 
+                (flags & FLAG_DETECTING) != 0, 
+                (flags & FLAG_BACKGROUND) != 0, 
+                (flags & FLAG_WHISTLE_IN_PROGRESS) != 0, 
+                map.getLong(base + LAST_WHISTLE_MS), 
+                map.getDouble(base + NOISE_FLOOR_DB), 
+                map.getLong(base + SAVED_AT_MS), 
+                map.getInt(base + TARGET_COUNT), 
+                map.getInt(base + SESSION_START_COUNT));
+    }
+}
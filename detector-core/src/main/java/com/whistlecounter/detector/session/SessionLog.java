@@ -0,0 +1,292 @@
+package com.whistlecounter.detector.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of whistle and session events in a compact binary file.
+ *
+ * <p>The file is a 16-byte header followed by fixed-size {@link WhistleRecord}s
+ * in the order they happened. {@link #append} only queues a record, so it is
+ * safe to call from the audio thread; a writer thread gathers whatever arrives
+ * within a short window into one write and one sync. Every record carries the
+ * count after it, so restoring the count after a restart reads a single record,
+ * and fixed-size records let time-range queries binary search the file instead
+ * of scanning it. A record torn by a crash mid-write is dropped on open.
+ */
+public final class SessionLog implements Closeable {
+    
+    private static final int MAGIC = 0x574C4F47; // "WLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // Magic, version, record size, reserved
+    private static final int TIMESTAMP_OFFSET = 8; // Of the timestamp within a record
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_BATCH = 64;
+    private static final long BATCH_WINDOW_MS = 250; // Let events close together share a write
+    private static final long POLL_TIMEOUT_MS = 500; // Re-check the closed flag at least this often
+    
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final ArrayBlockingQueue<WhistleRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(MAX_BATCH * WhistleRecord.SIZE);
+    private final List<WhistleRecord> batch = new ArrayList<>(MAX_BATCH);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile long recordCount;
+    private volatile boolean closed = false;
+    private volatile IOException error;
+    
+    private SessionLog(File file, RandomAccessFile raf, long recordCount) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.recordCount = recordCount;
+        this.writer = new Thread(this::writeLoop, "WhistleSessionLog");
+        writer.setDaemon(true);
+    }
+    
+    /**
+     * Opens the log, creating it if needed, and starts its writer thread.
+     *
+     * @throws IOException if the file cannot be opened or is not a session log
+     */
+    public static SessionLog open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() < HEADER_SIZE) {
+                header.putInt(MAGIC).putInt(VERSION).putInt(WhistleRecord.SIZE).putInt(0);
+                flip(header);
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                channel.force(true);
+            } else {
+                readFully(channel, header, 0);
+                flip(header);
+                if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != WhistleRecord.SIZE) {
+                    throw new IOException("Not a version " + VERSION + " session log: " + file);
+                }
+            }
+            
+            // Drop a partial record left by a crash mid-write
+            long records = (channel.size() - HEADER_SIZE) / WhistleRecord.SIZE;
+            if (channel.size() != HEADER_SIZE + records * WhistleRecord.SIZE) {
+                channel.truncate(HEADER_SIZE + records * WhistleRecord.SIZE);
+            }
+            
+            SessionLog log = new SessionLog(file, raf, records);
+            log.writer.start();
+            return log;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Queues a record for writing without blocking. Returns false if the log is
+     * closed or the queue is full, in which case the record is counted as dropped.
+     */
+    public boolean append(WhistleRecord record) {
+        if (closed || !queue.offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+    
+    // Records on disk; queued records are not included until the writer has synced them
+    public long getRecordCount() {
+        return recordCount;
+    }
+    
+    public long getDropped() {
+        return dropped.get();
+    }
+    
+    // The write error that stopped the writer, if any
+    public IOException getError() {
+        return error;
+    }
+    
+    // Null for a record of a kind this version does not know
+    public WhistleRecord read(long index) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(WhistleRecord.SIZE);
+        readFully(channel, buffer, position(index));
+        flip(buffer);
+        return WhistleRecord.readFrom(buffer);
+    }
+    
+    // The most recent record on disk of a known kind, or null if there is none
+    public WhistleRecord readLast() throws IOException {
+        for (long index = recordCount - 1; index >= 0; index--) {
+            WhistleRecord record = read(index);
+            if (record != null) {
+                return record;
+            }
+        }
+        return null;
+    }
+    
+    // The whistle count after the most recent record on disk
+    public int readLastCount() throws IOException {
+        WhistleRecord last = readLast();
+        return last != null ? last.count : 0;
+    }
+    
+    /**
+     * Records with {@code fromMs <= timestampMs < toMs}, oldest first. Records are
+     * in the order they were written, so this assumes the wall clock did not step
+     * backwards in between.
+     */
+    public List<WhistleRecord> query(long fromMs, long toMs) throws IOException {
+        long records = recordCount;
+        long first = lowerBound(fromMs, records);
+        long end = lowerBound(toMs, records);
+        List<WhistleRecord> result = new ArrayList<>((int) Math.min(Math.max(end - first, 0), 1 << 16));
+        if (end <= first) {
+            return result;
+        }
+        
+        // Read the range in large chunks rather than a record at a time
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_BATCH * 16 * WhistleRecord.SIZE);
+        for (long index = first; index < end; ) {
+            int n = (int) Math.min(end - index, buffer.capacity() / WhistleRecord.SIZE);
+            ((Buffer) buffer).clear();
+            ((Buffer) buffer).limit(n * WhistleRecord.SIZE);
+            readFully(channel, buffer, position(index));
+            flip(buffer);
+            for (int i = 0; i < n; i++) {
+                WhistleRecord record = WhistleRecord.readFrom(buffer);
+                if (record != null) {
+                    result.add(record);
+                }
+            }
+            index += n;
+        }
+        return result;
+    }
+    
+    /**
+     * Stops accepting records, waits up to {@code timeoutMs} for the queued ones to
+     * be written and closes the file.
+     */
+    public void close(long timeoutMs) throws IOException {
+        closed = true;
+        try {
+            writer.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        raf.close();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        close(2 * POLL_TIMEOUT_MS);
+    }
+    
+    // First record whose timestamp is at least timeMs
+    private long lowerBound(long timeMs, long records) throws IOException {
+        ByteBuffer stamp = ByteBuffer.allocate(Long.BYTES);
+        long low = 0;
+        long high = records;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            ((Buffer) stamp).clear();
+            readFully(channel, stamp, position(mid) + TIMESTAMP_OFFSET);
+            if (stamp.getLong(0) < timeMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void writeLoop() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                WhistleRecord record = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                batch.add(record);
+                
+                // Wait briefly for more, unless we are closing
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+                while (batch.size() < MAX_BATCH && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    record = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (record == null) break;
+                    batch.add(record);
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+                writeBatch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            error = e;
+            closed = true;
+        }
+    }
+    
+    private void writeBatch() throws IOException {
+        ((Buffer) writeBuffer).clear();
+        for (WhistleRecord record : batch) {
+            record.writeTo(writeBuffer);
+        }
+        flip(writeBuffer);
+        long records = recordCount;
+        writeFully(channel, writeBuffer, position(records));
+        channel.force(false);
+        recordCount = records + batch.size();
+        batch.clear();
+    }
+    
+    // Through Buffer: older Android releases lack ByteBuffer's covariant overrides
+    private static void flip(ByteBuffer buffer) {
+        ((Buffer) buffer).flip();
+    }
+    
+    private static long position(long index) {
+        return HEADER_SIZE + index * WhistleRecord.SIZE;
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of session log");
+            }
+            position += n;
+        }
+    }
+}
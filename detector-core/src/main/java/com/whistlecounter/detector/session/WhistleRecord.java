@@ -0,0 +1,78 @@
+package com.whistlecounter.detector.session;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One entry of the {@link SessionLog}: a fixed-size, immutable event stamped
+ * with wall-clock time and the whistle count after it.
+ */
+public final class WhistleRecord {
+    
+    public enum Kind {
+        SESSION_START, // Capture started
+        SESSION_END, // Capture stopped
+        WHISTLE, // A whistle was confirmed and counted
+        WHISTLE_END, // The whistle in progress ended; carries its final duration and peak
+        RESET // The count was reset to zero
+    }
+    
+    static final int SIZE = 24; // Bytes per record on disk
+    private static final int FLAG_TIMED_OUT = 1;
+    
+    public final Kind kind;
+    public final long timestampMs; // Wall-clock time, ms since the epoch
+    public final int count; // Whistle count after this event
+    public final int durationMs; // Whistle duration so far; 0 for session events
+    public final float peakDb; // Peak whistle-band power, dBFS
+    public final float confidence; // 0..1, stored in thousandths
+    public final boolean timedOut; // WHISTLE_END only: ended by the maximum duration
+    
+    public WhistleRecord(Kind kind, long timestampMs, int count, int durationMs, float peakDb, 
+                         float confidence, boolean timedOut) {
+        this.kind = kind;
+        this.timestampMs = timestampMs;
+        this.count = count;
+        this.durationMs = durationMs;
+        this.peakDb = peakDb;
+        this.confidence = confidence;
+        this.timedOut = timedOut;
+    }
+    
+    public static WhistleRecord event(Kind kind, long timestampMs, int count) {
+        return new WhistleRecord(kind, timestampMs, count, 0, 0, 0, false);
+    }
+    
+    // Layout: kind u8, flags u8, confidence u16 (thousandths), duration i32, timestamp i64, peak f32, count i32
+    void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) kind.ordinal());
+        buffer.put((byte) (timedOut ? FLAG_TIMED_OUT : 0));
+        buffer.putShort((short) Math.round(Math.max(0, Math.min(1, confidence)) * 1000));
+        buffer.putInt(durationMs);
+        buffer.putLong(timestampMs);
+        buffer.putFloat(peakDb);
+        buffer.putInt(count);
+    }
+    
+    // Returns null for a record of an unknown kind, which a newer version may have written
+    static WhistleRecord readFrom(ByteBuffer buffer) {
+        int kindCode = buffer.get() & 0xFF;
+        int flags = buffer.get() & 0xFF;
+        float confidence = (buffer.getShort() & 0xFFFF) / 1000f;
+        int durationMs = buffer.getInt();
+        long timestampMs = buffer.getLong();
+        float peakDb = buffer.getFloat();
+        int count = buffer.getInt();
+        Kind[] kinds = Kind.values();
+        if (kindCode >= kinds.length) {
+            return null;
+        }
+        return new WhistleRecord(kinds[kindCode], timestampMs, count, durationMs, peakDb, confidence, 
+                (flags & FLAG_TIMED_OUT) != 0);
+    }
+    
+    @Override
+    public String toString() {
+        return kind + "@" + timestampMs + " count=" + count + " duration=" + durationMs + "ms peak=" 
+                + peakDb + "dBFS confidence=" + confidence + (timedOut ? " timed out" : "");
+    }
+}
@@ -0,0 +1,21 @@
+package com.whistlecounter.detector.sources;
+
+/**
+ * Immutable whistle count of one source, for handing to other threads.
+ */
+public final class SourceCount {
+    
+    public final int sourceId;
+    public final double frequencyHz;
+    public final int count;
+    
+    public SourceCount(int sourceId, double frequencyHz, int count) {
+        this.sourceId = sourceId;
+        this.frequencyHz = frequencyHz;
+        this.count = count;
+    }
+    
+    public static SourceCount of(WhistleSource source) {
+        return new SourceCount(source.getId(), source.getFrequencyHz(), source.getCount());
+    }
+}
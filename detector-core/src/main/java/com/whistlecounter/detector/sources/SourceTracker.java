@@ -0,0 +1,265 @@
+package com.whistlecounter.detector.sources;
+
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts whistles per source when several cookers whistle at once or in quick
+ * succession, which the detector's single whistle state would merge into one
+ * or hide behind its cooldown.
+ *
+ * <p>Each frame's spectral peaks are clustered by frequency: a peak within the
+ * configured tolerance of a known source belongs to it, otherwise it starts a
+ * new source. Every source runs the detector's onset, end, cooldown and
+ * maximum duration rules on its own, except that a whistle whose sound began
+ * together with one confirmed in the same frame is taken to be a second
+ * partial of that cooker's whistle rather than another cooker, and is not
+ * counted. Sources are kept sorted by frequency so a
+ * peak finds its source by binary search, and only sources that are currently
+ * running or whistling are revisited, and only once the earliest of their
+ * deadlines has passed. Per-frame cost is therefore logarithmic in the number
+ * of sources rather than linear. Not thread-safe; driven by the detector.
+ */
+public final class SourceTracker {
+    
+    private static final double FREQUENCY_SMOOTHING = 0.1; // Share of each new peak folded into its source's frequency
+    private static final int MAX_HARMONIC = 3; // Peaks at up to this multiple of a stronger peak are its overtones
+    
+    private final DetectorConfig config;
+    private final ArrayList<WhistleSource> sources = new ArrayList<>(); // By frequency
+    private final ArrayList<WhistleSource> active = new ArrayList<>();
+    private final List<WhistleSource> sourcesView = Collections.unmodifiableList(sources);
+    private long nextDeadline = Long.MAX_VALUE;
+    private int nextId = 1;
+    private WhistleListener listener;
+    
+    public SourceTracker(DetectorConfig config) {
+        this.config = config;
+    }
+    
+    public void setListener(WhistleListener listener) {
+        this.listener = listener;
+    }
+    
+    // Known sources by increasing frequency; a live view, for the detector's thread only
+    public List<WhistleSource> getSources() {
+        return sourcesView;
+    }
+    
+    // Some source is running towards an onset or whistling, so the frames matter
+    public boolean isActive() {
+        return !active.isEmpty();
+    }
+    
+    public void reset() {
+        sources.clear();
+        active.clear();
+        nextDeadline = Long.MAX_VALUE;
+        nextId = 1;
+    }
+    
+    /**
+     * Assigns the peaks of one analyzed frame to sources.
+     *
+     * @param peaks   the frame's peaks, strongest first
+     * @param timeMs  sample-clock time at the end of the frame
+     * @param frameMs duration of new audio in the frame
+     */
+    public void update(SpectralPeaks peaks, long timeMs, long frameMs) {
+        advance(timeMs);
+        double tolerance = config.getSourceToleranceHz();
+        for (int p = 0; p < peaks.getCount(); p++) {
+            double frequencyHz = peaks.getFrequencyHz(p);
+            if (isOvertone(peaks, p, tolerance)) {
+                continue;
+            }
+            
+            int index = nearest(frequencyHz);
+            WhistleSource source = index >= 0 ? sources.get(index) : null;
+            if (source == null || Math.abs(source.frequencyHz - frequencyHz) > tolerance) {
+                source = add(frequencyHz);
+                if (source == null) {
+                    continue; // Full of sources that are all in use
+                }
+            } else if (source.lastHeardMs == timeMs) {
+                continue; // A weaker peak of a source already heard in this frame
+            } else {
+                source.frequencyHz += FREQUENCY_SMOOTHING * (frequencyHz - source.frequencyHz);
+                resort(index);
+            }
+            hear(source, timeMs, frameMs);
+        }
+    }
+    
+    /**
+     * Ends runs and whistles that have gone quiet by {@code timeMs}. Call for
+     * frames that are not analyzed; {@link #update} does so itself. Does no work
+     * until the earliest deadline among active sources has passed.
+     */
+    public void advance(long timeMs) {
+        if (timeMs < nextDeadline) {
+            return;
+        }
+        nextDeadline = Long.MAX_VALUE;
+        for (int i = active.size() - 1; i >= 0; i--) {
+            WhistleSource source = active.get(i);
+            expire(source, timeMs);
+            if (source.whistleInProgress || source.sustainedSince != WhistleSource.NONE) {
+                nextDeadline = Math.min(nextDeadline, deadline(source));
+            } else {
+                source.active = false;
+                active.remove(i);
+            }
+        }
+    }
+    
+    private void hear(WhistleSource source, long timeMs, long frameMs) {
+        source.lastHeardMs = timeMs;
+        if (!source.whistleInProgress && timeMs - source.lastWhistleMs < config.getWhistleCooldownMs()) {
+            return; // Like the detector, a source ignores itself during its cooldown
+        }
+        if (source.sustainedSince == WhistleSource.NONE) {
+            source.sustainedSince = timeMs - frameMs;
+        }
+        if (!source.whistleInProgress && timeMs - source.sustainedSince >= config.getWhistleOnsetMs()) {
+            source.whistleInProgress = true;
+            source.whistleStartMs = timeMs;
+            source.lastWhistleMs = timeMs;
+            source.partial = isPartial(source, timeMs, frameMs);
+            if (!source.partial) {
+                source.count++;
+                if (listener != null) {
+                    listener.onSourceWhistleStarted(source, timeMs);
+                }
+            }
+        }
+        if (!source.active) {
+            source.active = true;
+            active.add(source);
+        }
+        nextDeadline = Math.min(nextDeadline, deadline(source));
+    }
+    
+    private void expire(WhistleSource source, long timeMs) {
+        if (source.whistleInProgress) {
+            boolean timedOut = timeMs - source.whistleStartMs > config.getWhistleMaxDurationMs();
+            if (timedOut || timeMs - source.lastHeardMs >= config.getWhistleEndMs()) {
+                source.whistleInProgress = false;
+                source.sustainedSince = WhistleSource.NONE;
+                if (!source.partial && listener != null) {
+                    listener.onSourceWhistleEnded(source, timeMs);
+                }
+            }
+        } else if (source.sustainedSince != WhistleSource.NONE 
+                && timeMs - source.lastHeardMs >= config.getMaxInterruptionMs()) {
+            source.sustainedSince = WhistleSource.NONE;
+        }
+    }
+    
+    // When the source next needs checking if it is not heard again
+    private long deadline(WhistleSource source) {
+        if (source.whistleInProgress) {
+            return Math.min(source.lastHeardMs + config.getWhistleEndMs(), 
+                    source.whistleStartMs + config.getWhistleMaxDurationMs() + 1);
+        }
+        return source.lastHeardMs + config.getMaxInterruptionMs();
+    }
+    
+    // Two cookers hardly ever start within a frame of each other, but the partials of
+    // one whistle always do. The first partial to be confirmed counts the whistle, and
+    // keeps doing so for later whistles even when another partial is confirmed first.
+    private boolean isPartial(WhistleSource source, long timeMs, long frameMs) {
+        for (int i = 0; i < active.size(); i++) {
+            WhistleSource other = active.get(i);
+            if (other == source || other.partial || other.sustainedSince == WhistleSource.NONE
+                    || Math.abs(other.sustainedSince - source.sustainedSince) > frameMs) {
+                continue;
+            }
+            boolean justConfirmed = other.whistleInProgress && timeMs - other.whistleStartMs <= frameMs;
+            if (justConfirmed || (source.leader == other && !other.whistleInProgress)) {
+                source.leader = other;
+                if (other.leader == source) {
+                    other.leader = null;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // A weaker peak near a multiple of a stronger one is the same whistle's overtone
+    private static boolean isOvertone(SpectralPeaks peaks, int peak, double tolerance) {
+        double frequencyHz = peaks.getFrequencyHz(peak);
+        for (int stronger = 0; stronger < peak; stronger++) {
+            double fundamentalHz = peaks.getFrequencyHz(stronger);
+            for (int harmonic = 2; harmonic <= MAX_HARMONIC; harmonic++) {
+                if (Math.abs(frequencyHz - harmonic * fundamentalHz) <= harmonic * tolerance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    // Index of the source closest in frequency, or -1 if there are none
+    private int nearest(double frequencyHz) {
+        int low = 0;
+        int high = sources.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (sources.get(middle).frequencyHz < frequencyHz) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // low is the first source at or above the frequency, high the last below it
+        if (low >= sources.size()) {
+            return high;
+        }
+        if (high < 0) {
+            return low;
+        }
+        return frequencyHz - sources.get(high).frequencyHz <= sources.get(low).frequencyHz - frequencyHz ? high : low;
+    }
+    
+    // Makes room by forgetting the longest-silent source that never whistled
+    private WhistleSource add(double frequencyHz) {
+        if (sources.size() >= config.getMaxSources()) {
+            int oldest = -1;
+            for (int i = 0; i < sources.size(); i++) {
+                WhistleSource source = sources.get(i);
+                if (!source.active && source.count == 0 
+                        && (oldest < 0 || source.lastHeardMs < sources.get(oldest).lastHeardMs)) {
+                    oldest = i;
+                }
+            }
+            if (oldest < 0) {
+                return null;
+            }
+            sources.remove(oldest);
+        }
+        WhistleSource source = new WhistleSource(nextId++, frequencyHz, -config.getWhistleCooldownMs());
+        int index = 0;
+        while (index < sources.size() && sources.get(index).frequencyHz < frequencyHz) {
+            index++;
+        }
+        sources.add(index, source);
+        return source;
+    }
+    
+    // Smoothing moves a source by a fraction of the tolerance, so one swap at most restores the order
+    private void resort(int index) {
+        WhistleSource source = sources.get(index);
+        if (index > 0 && sources.get(index - 1).frequencyHz > source.frequencyHz) {
+            Collections.swap(sources, index - 1, index);
+        } else if (index < sources.size() - 1 && sources.get(index + 1).frequencyHz < source.frequencyHz) {
+            Collections.swap(sources, index, index + 1);
+        }
+    }
+}
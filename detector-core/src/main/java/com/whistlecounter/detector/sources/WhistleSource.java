@@ -0,0 +1,49 @@
+package com.whistlecounter.detector.sources;
+
+/**
+ * One whistle source, such as a single pressure cooker, recognized by the
+ * frequency of its whistle. Owned and updated by a {@link SourceTracker} on the
+ * detector's thread; read it from there or copy what you need.
+ */
+public final class WhistleSource {
+    
+    static final long NONE = Long.MIN_VALUE;
+    
+    private final int id;
+    double frequencyHz;
+    int count = 0;
+    
+    // The same hysteresis as the detector's, in sample-clock milliseconds
+    long sustainedSince = NONE;
+    long lastHeardMs = NONE;
+    long whistleStartMs = 0;
+    long lastWhistleMs;
+    boolean whistleInProgress = false;
+    boolean partial = false; // The whistle in progress is another source's, heard at a second frequency
+    WhistleSource leader; // The source this one was last a partial of
+    boolean active = false; // Listed as running or whistling, so silence has to be checked
+    
+    WhistleSource(int id, double frequencyHz, long lastWhistleMs) {
+        this.id = id;
+        this.frequencyHz = frequencyHz;
+        this.lastWhistleMs = lastWhistleMs;
+    }
+    
+    // Stable for the life of the tracker; sources are numbered in the order they were first heard
+    public int getId() {
+        return id;
+    }
+    
+    // Smoothed frequency of the source's peak
+    public double getFrequencyHz() {
+        return frequencyHz;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public boolean isWhistleInProgress() {
+        return whistleInProgress;
+    }
+}
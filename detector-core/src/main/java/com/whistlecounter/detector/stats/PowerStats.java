@@ -0,0 +1,240 @@
+package com.whistlecounter.detector.stats;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for what a detection session costs in power: how long the wake lock
+ * and the microphone are held, how long capture blocks in reads, how much CPU
+ * the DSP takes per frame and how many frames the low-power paths skip.
+ *
+ * <p>Per-frame counters are atomics so the audio threads never wait; the
+ * interval trackers (wake lock, microphone) are touched a few times a minute
+ * and are synchronized. Times are {@link System#nanoTime()} values passed in by
+ * the caller, so it can reuse a timestamp it already took. {@link #snapshot} gives totals since creation, {@link #rolling} the change
+ * over roughly the last minute.
+ */
+public final class PowerStats {
+    
+    public static final long ROLLING_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    
+    private final long createdNanos;
+    private final Interval wakeLock = new Interval();
+    private final Interval microphone = new Interval();
+    private long wakeLockAcquires = 0;
+    private long wakeLockRenewals = 0;
+    private long wakeLockReleases = 0;
+    
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong framesClassified = new AtomicLong();
+    private final AtomicLong dspCpuNanos = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong notificationUpdates = new AtomicLong();
+    
+    // Totals sampled every few seconds while someone asks for rolling figures
+    private final ArrayDeque<Snapshot> samples = new ArrayDeque<>();
+    
+    public PowerStats(long nowNanos) {
+        this.createdNanos = nowNanos;
+    }
+    
+    /**
+     * A span of time something is held for, which may end by itself at a
+     * deadline (like a wake lock acquired with a timeout).
+     */
+    private static final class Interval {
+        
+        long heldNanos = 0;
+        long since = Long.MIN_VALUE; // Start of the open span, or MIN_VALUE if not held
+        long until = Long.MAX_VALUE; // When the open span ends by itself
+        
+        void start(long nowNanos, long timeoutNanos) {
+            stop(nowNanos);
+            since = nowNanos;
+            until = timeoutNanos > 0 ? nowNanos + timeoutNanos : Long.MAX_VALUE;
+        }
+        
+        void stop(long nowNanos) {
+            heldNanos = total(nowNanos);
+            since = Long.MIN_VALUE;
+        }
+        
+        long total(long nowNanos) {
+            if (since == Long.MIN_VALUE) {
+                return heldNanos;
+            }
+            return heldNanos + Math.max(0, Math.min(nowNanos, until) - since);
+        }
+    }
+    
+    public synchronized void onWakeLockAcquired(long nowNanos, long timeoutNanos) {
+        wakeLockAcquires++;
+        wakeLock.start(nowNanos, timeoutNanos);
+    }
+    
+    // A release and re-acquire that extends the timeout
+    public synchronized void onWakeLockRenewed(long nowNanos, long timeoutNanos) {
+        wakeLockRenewals++;
+        wakeLock.start(nowNanos, timeoutNanos);
+    }
+    
+    public synchronized void onWakeLockReleased(long nowNanos) {
+        wakeLockReleases++;
+        wakeLock.stop(nowNanos);
+    }
+    
+    public synchronized void onMicrophoneOpened(long nowNanos) {
+        microphone.start(nowNanos, 0);
+    }
+    
+    public synchronized void onMicrophoneClosed(long nowNanos) {
+        microphone.stop(nowNanos);
+    }
+    
+    // Capture thread: one blocking read from the audio driver
+    public void recordRead(long nanos) {
+        reads.incrementAndGet();
+        readNanos.addAndGet(nanos);
+    }
+    
+    /**
+     * Analysis thread: one frame through the detector.
+     *
+     * @param cpuNanos   thread CPU time the frame took
+     * @param classified whether it reached the classifier rather than being
+     *                   skipped by the cooldown or the energy gate
+     */
+    public void recordFrame(long cpuNanos, boolean classified) {
+        frames.incrementAndGet();
+        if (classified) {
+            framesClassified.incrementAndGet();
+        }
+        if (cpuNanos > 0) {
+            dspCpuNanos.addAndGet(cpuNanos);
+        }
+    }
+    
+    // Frames the capture ring dropped because analysis fell behind
+    public void recordDropped(long count) {
+        framesDropped.addAndGet(count);
+    }
+    
+    public void recordNotificationUpdate() {
+        notificationUpdates.incrementAndGet();
+    }
+    
+    // Totals since these stats were created
+    public synchronized Snapshot snapshot(long nowNanos) {
+        return new Snapshot(nowNanos - createdNanos, wakeLock.total(nowNanos), wakeLockAcquires, wakeLockRenewals, 
+                wakeLockReleases, microphone.total(nowNanos), reads.get(), readNanos.get(), frames.get(), 
+                framesClassified.get(), dspCpuNanos.get(), framesDropped.get(), notificationUpdates.get());
+    }
+    
+    /**
+     * Change over about the last {@link #ROLLING_WINDOW_NANOS}, or since creation
+     * if that is shorter. Sampling happens on demand, so call this periodically
+     * (a debug screen refreshing once a second does) for the window to be exact.
+     */
+    public synchronized Snapshot rolling(long nowNanos) {
+        Snapshot now = snapshot(nowNanos);
+        Snapshot newest = samples.peekLast();
+        if (newest == null || now.periodNanos - newest.periodNanos >= SAMPLE_INTERVAL_NANOS) {
+            samples.addLast(now);
+        }
+        while (samples.size() > 1 && now.periodNanos - samples.peekFirst().periodNanos > ROLLING_WINDOW_NANOS) {
+            samples.removeFirst();
+        }
+        Snapshot oldest = samples.peekFirst();
+        // Sampling only starts when first asked, so until then the window is everything so far
+        return oldest == now || now.periodNanos < ROLLING_WINDOW_NANOS ? now : now.minus(oldest);
+    }
+    
+    /**
+     * Immutable counter values over some period: totals, or the difference
+     * between two snapshots.
+     */
+    public static final class Snapshot {
+        
+        public final long periodNanos;
+        public final long wakeLockHeldNanos;
+        public final long wakeLockAcquires;
+        public final long wakeLockRenewals;
+        public final long wakeLockReleases;
+        public final long microphoneOnNanos;
+        public final long reads;
+        public final long readNanos;
+        public final long frames;
+        public final long framesClassified;
+        public final long dspCpuNanos;
+        public final long framesDropped;
+        public final long notificationUpdates;
+        
+        Snapshot(long periodNanos, long wakeLockHeldNanos, long wakeLockAcquires, long wakeLockRenewals, 
+                 long wakeLockReleases, long microphoneOnNanos, long reads, long readNanos, long frames, 
+                 long framesClassified, long dspCpuNanos, long framesDropped, long notificationUpdates) {
+            this.periodNanos = periodNanos;
+            this.wakeLockHeldNanos = wakeLockHeldNanos;
+            this.wakeLockAcquires = wakeLockAcquires;
+            this.wakeLockRenewals = wakeLockRenewals;
+            this.wakeLockReleases = wakeLockReleases;
+            this.microphoneOnNanos = microphoneOnNanos;
+            this.reads = reads;
+            this.readNanos = readNanos;
+            this.frames = frames;
+            this.framesClassified = framesClassified;
+            this.dspCpuNanos = dspCpuNanos;
+            this.framesDropped = framesDropped;
+            this.notificationUpdates = notificationUpdates;
+        }
+        
+        Snapshot minus(Snapshot earlier) {
+            return new Snapshot(periodNanos - earlier.periodNanos, 
+                    wakeLockHeldNanos - earlier.wakeLockHeldNanos, 
+                    wakeLockAcquires - earlier.wakeLockAcquires, 
+                    wakeLockRenewals - earlier.wakeLockRenewals, 
+                    wakeLockReleases - earlier.wakeLockReleases, 
+                    microphoneOnNanos - earlier.microphoneOnNanos, 
+                    reads - earlier.reads, 
+                    readNanos - earlier.readNanos, 
+                    frames - earlier.frames, 
+                    framesClassified - earlier.framesClassified, 
+                    dspCpuNanos - earlier.dspCpuNanos, 
+                    framesDropped - earlier.framesDropped, 
+                    notificationUpdates - earlier.notificationUpdates);
+        }
+        
+        // Shares of the period, 0..1
+        public double getWakeLockShare() {
+            return share(wakeLockHeldNanos, periodNanos);
+        }
+        
+        public double getMicrophoneShare() {
+            return share(microphoneOnNanos, periodNanos);
+        }
+        
+        // CPU the DSP used, as a share of one core over the time the microphone was on
+        public double getDspCpuShare() {
+            return share(dspCpuNanos, microphoneOnNanos);
+        }
+        
+        public long getFramesSkipped() {
+            return frames - framesClassified;
+        }
+        
+        public double getMeanDspMicros() {
+            return frames > 0 ? dspCpuNanos / 1000.0 / frames : 0;
+        }
+        
+        public double getMeanReadMillis() {
+            return reads > 0 ? readNanos / 1e6 / reads : 0;
+        }
+        
+        private static double share(long part, long whole) {
+            return whole > 0 ? (double) part / whole : 0;
+        }
+    }
+}
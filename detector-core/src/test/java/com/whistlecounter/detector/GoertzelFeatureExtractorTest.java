@@ -0,0 +1,37 @@
+package com.whistlecounter.detector;
+
+import static org.junit.Assert.assertEquals;
+
+import com.whistlecounter.detector.dsp.PcmScale;
+
+import org.junit.Test;
+
+public class GoertzelFeatureExtractorTest {
+    
+    private static final int SAMPLE_RATE = 22050;
+    private static final int BLOCK = 32;
+    
+    @Test
+    public void partialBlockDoesNotDiluteTheRatios() {
+        GoertzelFeatureExtractor extractor = new GoertzelFeatureExtractor(SAMPLE_RATE, BLOCK, 2750, 5500, 8000);
+        
+        // Ten cycles per block: all of a whole block's energy lands on one high-band probe
+        double toneHz = 10.0 * SAMPLE_RATE / BLOCK;
+        for (int length : new int[] {BLOCK * 3, BLOCK * 3 + 17, BLOCK + 31}) {
+            short[] frame = new short[length];
+            double energy = 0;
+            for (int i = 0; i < length; i++) {
+                frame[i] = (short) Math.round(10000 * Math.sin(2 * Math.PI * toneHz * i / SAMPLE_RATE));
+                energy += (double) frame[i] * frame[i];
+            }
+            FrameFeatures features = new FrameFeatures();
+            features.totalEnergy = energy * PcmScale.ENERGY_SCALE;
+            
+            extractor.extract(frame, length, features);
+            
+            assertEquals("Length " + length, 1, features.highFreqRatio, 1e-3);
+            assertEquals("Length " + length, 0, features.midFreqRatio, 1e-3);
+            assertEquals("Length " + length, 0, features.lowFreqRatio, 1e-3);
+        }
+    }
+}
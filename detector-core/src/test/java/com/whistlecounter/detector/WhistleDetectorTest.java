@@ -0,0 +1,106 @@
+package com.whistlecounter.detector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.whistlecounter.detector.sources.WhistleSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WhistleDetectorTest {
+    
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME = 1024;
+    
+    private final List<Long> timedOut = new ArrayList<>();
+    private final List<Long> ended = new ArrayList<>();
+    
+    @Test
+    public void restoredWhistleTimesOutFromItsConfirmation() {
+        DetectorConfig config = DetectorConfig.defaults();
+        WhistleDetector detector = newDetector(config);
+        
+        // Confirmed 200 ms short of the maximum duration before the restart
+        detector.restore(true, config.getWhistleMaxDurationMs() - 200, Double.NaN);
+        feedSilence(detector, 1000);
+        
+        assertEquals(1, timedOut.size());
+        assertTrue(timedOut.get(0) > 200 && timedOut.get(0) < 200 + 2 * frameMs());
+        assertTrue(ended.isEmpty());
+        assertFalse(detector.isWhistleInProgress());
+    }
+    
+    @Test
+    public void restoredWhistleEndsAfterSilence() {
+        DetectorConfig config = DetectorConfig.defaults();
+        WhistleDetector detector = newDetector(config);
+        
+        detector.restore(true, 0, Double.NaN);
+        feedSilence(detector, 1000);
+        
+        assertTrue(timedOut.isEmpty());
+        assertEquals(1, ended.size());
+        assertTrue(ended.get(0) >= config.getWhistleEndMs());
+    }
+    
+    @Test
+    public void steadyToneIsNotCountedAsASource() {
+        DetectorConfig config = DetectorConfig.defaults().toBuilder()
+                .setMultiSourceEnabled(true)
+                .build();
+        WhistleDetector detector = newDetector(config);
+        
+        // A 4 kHz beep: loud and above the low band, but with no high-band power
+        feedSilence(detector, 1000);
+        feedTone(detector, 4000, 3000);
+        
+        assertFalse(detector.isWhistleInProgress());
+        for (WhistleSource source : detector.getSources()) {
+            assertEquals(0, source.getCount());
+        }
+    }
+    
+    private WhistleDetector newDetector(DetectorConfig config) {
+        WhistleDetector detector = new WhistleDetector(config, SAMPLE_RATE, FRAME);
+        detector.setListener(new WhistleListener() {
+            @Override
+            public void onWhistleTimedOut(long timestampMs) {
+                timedOut.add(timestampMs);
+            }
+            
+            @Override
+            public void onWhistleEnded(long timestampMs) {
+                ended.add(timestampMs);
+            }
+        });
+        return detector;
+    }
+    
+    private static void feedSilence(WhistleDetector detector, long durationMs) {
+        short[] frame = new short[FRAME];
+        long samples = durationMs * SAMPLE_RATE / 1000;
+        for (long end = FRAME; end <= samples; end += FRAME) {
+            detector.process(frame, FRAME, end);
+        }
+    }
+    
+    private static void feedTone(WhistleDetector detector, double frequencyHz, long durationMs) {
+        short[] frame = new short[FRAME];
+        long samples = durationMs * SAMPLE_RATE / 1000;
+        for (long end = FRAME; end <= samples; end += FRAME) {
+            for (int i = 0; i < FRAME; i++) {
+                double phase = 2 * Math.PI * frequencyHz * (end - FRAME + i) / SAMPLE_RATE;
+                frame[i] = (short) (8000 * Math.sin(phase));
+            }
+            detector.process(frame, FRAME, end);
+        }
+    }
+    
+    private static long frameMs() {
+        return FRAME * 1000L / SAMPLE_RATE;
+    }
+}
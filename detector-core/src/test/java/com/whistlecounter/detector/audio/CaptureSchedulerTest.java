@@ -0,0 +1,122 @@
+package com.whistlecounter.detector.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CaptureSchedulerTest {
+    
+    @Test
+    public void framesAreFullHopsAcrossShortReads() {
+        FakeAudioSource source = new FakeAudioSource(1000, 7, false);
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        Recorder recorder = new Recorder();
+        
+        scheduler.run(recorder);
+        
+        assertEquals(10, recorder.lengths.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(100, (int) recorder.lengths.get(i));
+            assertEquals(i * 100, recorder.firstSamples.get(i).intValue());
+        }
+    }
+    
+    @Test
+    public void endSampleFollowsStartSample() {
+        FakeAudioSource source = new FakeAudioSource(250, 64, false);
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        scheduler.setStartSample(5000);
+        Recorder recorder = new Recorder();
+        
+        scheduler.run(recorder);
+        
+        // The source ends mid-hop, so the last frame is short
+        assertEquals(List.of(100, 100, 50), recorder.lengths);
+        assertEquals(List.of(5100L, 5200L, 5250L), recorder.endSamples);
+    }
+    
+    @Test
+    public void stopUnblocksPendingRead() throws InterruptedException {
+        FakeAudioSource source = new FakeAudioSource(150, 150, true);
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        Recorder recorder = new Recorder();
+        Thread capture = new Thread(() -> scheduler.run(recorder));
+        capture.start();
+        
+        assertTrue(source.blocked.await(1, TimeUnit.SECONDS));
+        scheduler.stop();
+        capture.join(1000);
+        
+        assertFalse(capture.isAlive());
+        assertFalse(scheduler.isRunning());
+        // The hop cut short by stop() is still delivered
+        assertEquals(List.of(100, 50), recorder.lengths);
+    }
+    
+    @Test
+    public void startFailureStopsSourceAndRethrows() {
+        FakeAudioSource source = new FakeAudioSource(1000, 100, false);
+        source.failStart = true;
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        Recorder recorder = new Recorder();
+        
+        try {
+            scheduler.run(recorder);
+            fail("Start failure was swallowed");
+        } catch (IllegalStateException expected) {
+            // The pipeline reports it
+        }
+        
+        assertFalse(scheduler.isRunning());
+        assertTrue(source.isStopped());
+        assertTrue(recorder.lengths.isEmpty());
+    }
+    
+    @Test
+    public void emptyReadsAreRetried() {
+        FakeAudioSource source = new FakeAudioSource(300, 64, false);
+        source.emptyReadsBetween = 3;
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        Recorder recorder = new Recorder();
+        
+        scheduler.run(recorder);
+        
+        assertEquals(List.of(100, 100, 100), recorder.lengths);
+    }
+    
+    @Test
+    public void sourceReturningNothingEnds() {
+        FakeAudioSource source = new FakeAudioSource(250, 100, false);
+        source.emptyWhenDone = true;
+        CaptureScheduler scheduler = new CaptureScheduler(source, 100);
+        Recorder recorder = new Recorder();
+        
+        scheduler.run(recorder);
+        
+        // The hop it stalled in is delivered, and it gave up instead of spinning
+        assertEquals(List.of(100, 100, 50), recorder.lengths);
+        assertTrue(source.reads < 100);
+        assertFalse(scheduler.isRunning());
+    }
+    
+    static final class Recorder implements CaptureScheduler.FrameConsumer {
+        
+        final List<Integer> lengths = new ArrayList<>();
+        final List<Long> endSamples = new ArrayList<>();
+        final List<Short> firstSamples = new ArrayList<>();
+        
+        @Override
+        public void onFrame(short[] frame, int length, long endSample) {
+            lengths.add(length);
+            endSamples.add(endSample);
+            firstSamples.add(frame[0]);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.whistlecounter.detector.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class DetectionPipelineTest {
+    
+    private final CountDownLatch lost = new CountDownLatch(1);
+    private final AtomicReference<RuntimeException> cause = new AtomicReference<>();
+    private final AtomicInteger samples = new AtomicInteger();
+    
+    @Test
+    public void startFailureIsReported() throws InterruptedException {
+        FakeAudioSource source = new FakeAudioSource(1000, 100, false);
+        source.failStart = true;
+        DetectionPipeline pipeline = newPipeline(source);
+        
+        pipeline.start((frame, length, endSample) -> samples.addAndGet(length));
+        
+        assertTrue(lost.await(1, TimeUnit.SECONDS));
+        assertTrue(cause.get() instanceof IllegalStateException);
+        pipeline.stop(1000);
+        assertEquals(0, samples.get());
+    }
+    
+    @Test
+    public void sourceEndIsReportedWithoutCause() throws InterruptedException {
+        DetectionPipeline pipeline = newPipeline(new FakeAudioSource(250, 64, false));
+        
+        pipeline.start((frame, length, endSample) -> samples.addAndGet(length));
+        
+        assertTrue(lost.await(1, TimeUnit.SECONDS));
+        assertNull(cause.get());
+        pipeline.stop(1000);
+        assertEquals(250, samples.get());
+    }
+    
+    @Test
+    public void stopIsNotReported() throws InterruptedException {
+        FakeAudioSource source = new FakeAudioSource(150, 150, true);
+        DetectionPipeline pipeline = newPipeline(source);
+        
+        pipeline.start((frame, length, endSample) -> samples.addAndGet(length));
+        assertTrue(source.blocked.await(1, TimeUnit.SECONDS));
+        pipeline.stop(1000);
+        
+        assertFalse(pipeline.isRunning());
+        assertEquals(1, lost.getCount());
+    }
+    
+    private DetectionPipeline newPipeline(AudioSource source) {
+        DetectionPipeline pipeline = new DetectionPipeline(source, 100, 8, PcmRingBuffer.OverrunPolicy.DROP_OLDEST);
+        pipeline.setCaptureListener(e -> {
+            cause.set(e);
+            lost.countDown();
+        });
+        return pipeline;
+    }
+}
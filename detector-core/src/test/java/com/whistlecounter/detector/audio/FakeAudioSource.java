@@ -0,0 +1,89 @@
+package com.whistlecounter.detector.audio;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Delivers a ramp of {@code total} samples at most {@code chunk} per read,
+ * then either ends or blocks like a microphone until stopped. It can also
+ * return nothing from some reads, as a misbehaving driver does.
+ */
+final class FakeAudioSource implements AudioSource {
+    
+    static final int SAMPLE_RATE = 44100;
+    
+    final CountDownLatch blocked = new CountDownLatch(1); // Counted down when a read starts waiting
+    boolean failStart;
+    int emptyReadsBetween; // Reads returning 0 before each one that delivers samples
+    boolean emptyWhenDone; // Once the ramp is delivered, reads return 0 instead of ending
+    int reads;
+    private int emptyLeft;
+    private final int total;
+    private final int chunk;
+    private final boolean blockWhenEmpty;
+    private int position = 0;
+    private boolean stopped = false;
+    
+    FakeAudioSource(int total, int chunk, boolean blockWhenEmpty) {
+        this.total = total;
+        this.chunk = chunk;
+        this.blockWhenEmpty = blockWhenEmpty;
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+    
+    @Override
+    public void start() {
+        if (failStart) {
+            throw new IllegalStateException("Microphone in use");
+        }
+    }
+    
+    @Override
+    public synchronized int read(short[] buffer, int offset, int length) {
+        if (position >= total && blockWhenEmpty) {
+            blocked.countDown();
+            while (!stopped) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+        reads++;
+        if (!stopped && position >= total && emptyWhenDone) {
+            return 0;
+        }
+        if (stopped || position >= total) {
+            return -1;
+        }
+        if (emptyLeft > 0) {
+            emptyLeft--;
+            return 0;
+        }
+        emptyLeft = emptyReadsBetween;
+        int count = Math.min(Math.min(length, chunk), total - position);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = (short) position++;
+        }
+        return count;
+    }
+    
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+    
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+    
+    @Override
+    public void release() {
+    }
+}
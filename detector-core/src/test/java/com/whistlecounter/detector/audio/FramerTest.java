@@ -0,0 +1,51 @@
+package com.whistlecounter.detector.audio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FramerTest {
+    
+    private final List<Integer> hops = new ArrayList<>();
+    private final List<Long> ends = new ArrayList<>();
+    private final Framer framer = new Framer(200, 100, (window, length, hopLength, endSample) -> {
+        hops.add(hopLength);
+        ends.add(endSample);
+    });
+    
+    @Test
+    public void overlappingWindowsFollowTheStream() {
+        for (long end = 100; end <= 400; end += 100) {
+            framer.onFrame(new short[100], 100, end);
+        }
+        
+        assertEquals(List.of(200, 100, 100), hops);
+        assertEquals(List.of(200L, 300L, 400L), ends);
+        assertEquals(0, framer.getGaps());
+    }
+    
+    @Test
+    public void droppedFrameIsCountedAsGap() {
+        framer.onFrame(new short[100], 100, 100);
+        framer.onFrame(new short[100], 100, 300); // 100..200 was dropped
+        framer.onFrame(new short[100], 100, 400);
+        
+        assertEquals(1, framer.getGaps());
+        assertEquals(List.of(400L), ends);
+        assertEquals(List.of(200), hops);
+    }
+    
+    @Test
+    public void resumeAfterResetIsNotAGap() {
+        framer.onFrame(new short[100], 100, 100);
+        framer.reset();
+        framer.onFrame(new short[100], 100, 5100);
+        framer.onFrame(new short[100], 100, 5200);
+        
+        assertEquals(0, framer.getGaps());
+        assertEquals(List.of(5200L), ends);
+    }
+}
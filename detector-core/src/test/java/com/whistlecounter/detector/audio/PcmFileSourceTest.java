@@ -0,0 +1,140 @@
+package com.whistlecounter.detector.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PcmFileSourceTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void headerWithExtraChunksIsParsed() throws IOException {
+        // An 18-byte fmt chunk and an odd-sized LIST chunk with its pad byte before the data
+        ByteBuffer wav = header();
+        fmt(wav, 1, 1, 16000, 16, 2);
+        wav.putInt(0x5453494C /* LIST */).putInt(3).put(new byte[4]);
+        data(wav, 6).putShort((short) 1).putShort((short) -2).putShort((short) 3);
+        File file = write("extra.wav", wav);
+        
+        PcmFileSource source = PcmFileSource.open(file, 22050);
+        
+        assertEquals(16000, source.getSampleRate());
+        assertEquals(1, source.getChannels());
+        short[] samples = new short[8];
+        assertEquals(3, source.read(samples, 0, samples.length));
+        assertEquals(1, samples[0]);
+        assertEquals(-2, samples[1]);
+        assertEquals(3, samples[2]);
+        assertEquals(-1, source.read(samples, 0, samples.length));
+        source.release();
+    }
+    
+    @Test
+    public void stereoIsMixedToMono() throws IOException {
+        ByteBuffer wav = header();
+        fmt(wav, 1, 2, 44100, 16, 0);
+        data(wav, 8).putShort((short) 1000).putShort((short) 3000).putShort((short) -100).putShort((short) 100);
+        
+        PcmFileSource source = PcmFileSource.openWav(write("stereo.wav", wav));
+        
+        assertEquals(2, source.getChannels());
+        short[] samples = new short[4];
+        assertEquals(2, source.read(samples, 0, samples.length));
+        assertEquals(2000, samples[0]);
+        assertEquals(0, samples[1]);
+        source.release();
+    }
+    
+    @Test
+    public void eightBitIsRejected() throws IOException {
+        ByteBuffer wav = header();
+        fmt(wav, 1, 1, 8000, 8, 0);
+        data(wav, 2).put((byte) 1).put((byte) 2);
+        File file = write("byte.wav", wav);
+        
+        try {
+            PcmFileSource.openWav(file).release();
+            fail("8-bit file was accepted");
+        } catch (IOException expected) {
+            // Only 16-bit PCM is read
+        }
+    }
+    
+    @Test
+    public void unfinishedRecordingEndsAtEndOfFile() throws IOException {
+        // A data size never filled in, and a last sample cut in half
+        ByteBuffer wav = header();
+        fmt(wav, 1, 1, 22050, 16, 0);
+        data(wav, 0);
+        for (int i = 0; i < 5; i++) {
+            wav.putShort((short) i);
+        }
+        wav.put((byte) 7);
+        
+        PcmFileSource source = PcmFileSource.openWav(write("unfinished.wav", wav));
+        
+        short[] samples = new short[3];
+        assertEquals(3, source.read(samples, 0, samples.length));
+        assertEquals(2, source.read(samples, 0, samples.length));
+        assertEquals(4, samples[1]);
+        assertEquals(-1, source.read(samples, 0, samples.length));
+        assertEquals(-1, source.read(samples, 0, samples.length));
+        assertNull(source.getError());
+        source.release();
+    }
+    
+    @Test
+    public void stopEndsTheStream() throws IOException {
+        ByteBuffer wav = ByteBuffer.allocate(200).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 100; i++) {
+            wav.putShort((short) i);
+        }
+        
+        PcmFileSource source = PcmFileSource.open(write("raw.pcm", wav), 8000);
+        
+        assertEquals(8000, source.getSampleRate());
+        short[] samples = new short[60];
+        assertEquals(60, source.read(samples, 0, samples.length));
+        source.stop();
+        assertEquals(-1, source.read(samples, 0, samples.length));
+        source.release();
+    }
+    
+    // RIFF and WAVE, with room for the chunks of a short test file
+    private static ByteBuffer header() {
+        ByteBuffer wav = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        return wav.putInt(0x46464952 /* RIFF */).putInt(0).putInt(0x45564157 /* WAVE */);
+    }
+    
+    private static void fmt(ByteBuffer wav, int format, int channels, int sampleRate, int bits, int extension) {
+        wav.putInt(0x20746d66 /* fmt  */).putInt(16 + extension);
+        wav.putShort((short) format).putShort((short) channels).putInt(sampleRate);
+        wav.putInt(sampleRate * channels * bits / 8).putShort((short) (channels * bits / 8)).putShort((short) bits);
+        wav.put(new byte[extension]);
+    }
+    
+    private static ByteBuffer data(ByteBuffer wav, int size) {
+        return wav.putInt(0x61746164 /* data */).putInt(size);
+    }
+    
+    private File write(String name, ByteBuffer bytes) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.array(), 0, bytes.position());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,55 @@
+package com.whistlecounter.detector.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PcmRingBufferTest {
+    
+    @Test
+    public void dropOldestEvictsWhenFull() {
+        PcmRingBuffer ring = new PcmRingBuffer(2, 4, PcmRingBuffer.OverrunPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 3; i++) {
+            ring.offer(new short[] {(short) i}, 1, i);
+        }
+        PcmFrame frame = new PcmFrame(4);
+        
+        assertTrue(ring.take(frame, 0));
+        assertEquals(2, frame.endSample);
+        assertEquals(1, ring.getOverruns());
+    }
+    
+    @Test
+    public void offerWakesParkedConsumer() throws InterruptedException {
+        int frames = 2000;
+        PcmRingBuffer ring = new PcmRingBuffer(4, 1, PcmRingBuffer.OverrunPolicy.DROP_OLDEST);
+        long[] slowest = new long[1];
+        Thread consumer = new Thread(() -> {
+            PcmFrame frame = new PcmFrame(1);
+            for (int taken = 0; taken < frames; ) {
+                long start = System.nanoTime();
+                if (ring.take(frame, TimeUnit.SECONDS.toNanos(5))) {
+                    taken++;
+                }
+                slowest[0] = Math.max(slowest[0], System.nanoTime() - start);
+            }
+        });
+        consumer.start();
+        
+        // One frame at a time, so the consumer parks for nearly every one
+        short[] sample = new short[1];
+        for (int i = 0; i < frames; i++) {
+            ring.offer(sample, 1, i);
+            while (ring.size() > 0 && consumer.isAlive()) {
+                Thread.onSpinWait();
+            }
+        }
+        consumer.join(10000);
+        
+        // A lost wakeup would leave the consumer parked for the whole timeout
+        assertTrue(slowest[0] < TimeUnit.SECONDS.toNanos(1));
+    }
+}
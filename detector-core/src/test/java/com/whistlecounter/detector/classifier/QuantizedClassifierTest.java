@@ -0,0 +1,88 @@
+package com.whistlecounter.detector.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantizedClassifierTest {
+    
+    private static final int N = QuantizedModel.FEATURE_COUNT;
+    
+    @Test
+    public void logisticScoreMatchesFloatModel() {
+        checkAgainstFloat(0);
+    }
+    
+    @Test
+    public void mlpScoreMatchesFloatModel() {
+        checkAgainstFloat(8);
+    }
+    
+    // The float model the int8 weights stand for, run once with the classifier's rounding and once without
+    private static void checkAgainstFloat(int hiddenCount) {
+        Random random = new Random(42 + hiddenCount);
+        QuantizedModel model = QuantizedModelTest.randomModel(random, hiddenCount);
+        QuantizedClassifier classifier = new QuantizedClassifier(model);
+        float[] vector = new float[N];
+        double[] exact = new double[N];
+        double[] rounded = new double[N];
+        
+        for (int trial = 0; trial < 1000; trial++) {
+            // Within 3 deviations of the mean, so no input clips
+            for (int i = 0; i < N; i++) {
+                float deviations = (float) Math.max(-3, Math.min(3, random.nextGaussian()));
+                vector[i] = model.inputMean[i] + deviations / model.inputInvStd[i];
+                exact[i] = (vector[i] - model.inputMean[i]) * model.inputInvStd[i];
+                rounded[i] = Math.round((float) exact[i] * QuantizedModel.INPUT_STEPS) / QuantizedModel.INPUT_STEPS;
+            }
+            float score = classifier.score(vector);
+            
+            // Integer arithmetic loses nothing beyond the rounding of inputs and activations
+            assertEquals("Trial " + trial, floatScore(model, rounded, true), score, 1e-4);
+            
+            // Each rounded input or activation is off by at most half a step, which bounds the error
+            double halfStep = 0.5 / QuantizedModel.INPUT_STEPS;
+            double tolerance = 0;
+            if (hiddenCount == 0) {
+                for (int i = 0; i < N; i++) {
+                    tolerance += Math.abs(model.outputWeights[i]) * model.outputScale * halfStep;
+                }
+            } else {
+                for (int j = 0; j < hiddenCount; j++) {
+                    double activationError = 0.5 / model.hiddenSteps;
+                    for (int i = 0; i < N; i++) {
+                        activationError += Math.abs(model.hiddenWeights[j * N + i]) * model.hiddenScale * halfStep;
+                    }
+                    tolerance += Math.abs(model.outputWeights[j]) * model.outputScale * activationError;
+                }
+            }
+            assertEquals("Trial " + trial, floatScore(model, exact, false), score, tolerance + 1e-4);
+        }
+    }
+    
+    private static double floatScore(QuantizedModel model, double[] inputs, boolean roundActivations) {
+        double logit = model.outputBias;
+        if (model.hiddenCount == 0) {
+            for (int i = 0; i < N; i++) {
+                logit += model.outputWeights[i] * model.outputScale * inputs[i];
+            }
+            return logit;
+        }
+        for (int j = 0; j < model.hiddenCount; j++) {
+            double activation = model.hiddenBias[j];
+            for (int i = 0; i < N; i++) {
+                activation += model.hiddenWeights[j * N + i] * model.hiddenScale * inputs[i];
+            }
+            activation = Math.max(0, activation);
+            assertTrue("Activation clips", activation * model.hiddenSteps < 127);
+            if (roundActivations) {
+                activation = Math.round(activation * model.hiddenSteps) / model.hiddenSteps;
+            }
+            logit += model.outputWeights[j] * model.outputScale * activation;
+        }
+        return logit;
+    }
+}
@@ -0,0 +1,105 @@
+package com.whistlecounter.detector.classifier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuantizedModelTest {
+    
+    private static final int N = QuantizedModel.FEATURE_COUNT;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void savedModelReadsBackIdentical() throws IOException {
+        for (int hiddenCount : new int[] {0, 8}) {
+            QuantizedModel model = randomModel(new Random(hiddenCount), hiddenCount);
+            File file = new File(folder.getRoot(), "model" + hiddenCount + ".bin");
+            
+            model.save(file);
+            QuantizedModel read = QuantizedModel.load(file);
+            
+            assertEquals(model.hiddenCount, read.hiddenCount);
+            assertArrayEquals(model.inputMean, read.inputMean, 0);
+            assertArrayEquals(model.inputInvStd, read.inputInvStd, 0);
+            assertArrayEquals(model.hiddenWeights, read.hiddenWeights);
+            assertEquals(model.hiddenScale, read.hiddenScale, 0);
+            assertArrayEquals(model.hiddenBias, read.hiddenBias, 0);
+            assertEquals(model.hiddenSteps, read.hiddenSteps, 0);
+            assertArrayEquals(model.outputWeights, read.outputWeights);
+            assertEquals(model.outputScale, read.outputScale, 0);
+            assertEquals(model.outputBias, read.outputBias, 0);
+            assertEquals(model.threshold, read.threshold, 0);
+        }
+    }
+    
+    @Test
+    public void wrongShapesAreRejected() {
+        float[] stats = new float[N];
+        assertRejected(() -> new QuantizedModel(new float[N - 1], stats, 0, new byte[0], 1, new float[0], 0,
+                new byte[N], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, new float[N + 1], 0, new byte[0], 1, new float[0], 0,
+                new byte[N], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, stats, -1, new byte[0], 1, new float[0], 0,
+                new byte[N], 1, 0, 0));
+        int tooMany = QuantizedModel.MAX_HIDDEN + 1;
+        assertRejected(() -> new QuantizedModel(stats, stats, tooMany, new byte[tooMany * N], 1, new float[tooMany], 1,
+                new byte[tooMany], 1, 0, 0));
+        
+        // Weights, biases and output weights that do not match the hidden units
+        assertRejected(() -> new QuantizedModel(stats, stats, 4, new byte[3 * N], 1, new float[4], 1,
+                new byte[4], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, stats, 4, new byte[4 * N], 1, new float[3], 1,
+                new byte[4], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, stats, 4, new byte[4 * N], 1, new float[4], 1,
+                new byte[N], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, stats, 0, new byte[0], 1, new float[0], 0,
+                new byte[4], 1, 0, 0));
+        assertRejected(() -> new QuantizedModel(stats, stats, 4, new byte[4 * N], 1, new float[4], 0,
+                new byte[4], 1, 0, 0));
+    }
+    
+    // Random weights at the scales the trainer produces
+    static QuantizedModel randomModel(Random random, int hiddenCount) {
+        float[] mean = new float[N];
+        float[] invStd = new float[N];
+        for (int i = 0; i < N; i++) {
+            mean[i] = (float) random.nextGaussian();
+            invStd[i] = 0.5f + random.nextFloat();
+        }
+        byte[] hiddenWeights = randomBytes(random, hiddenCount * N);
+        float[] hiddenBias = new float[hiddenCount];
+        for (int j = 0; j < hiddenCount; j++) {
+            hiddenBias[j] = (float) random.nextGaussian();
+        }
+        byte[] outputWeights = randomBytes(random, hiddenCount > 0 ? hiddenCount : N);
+        return new QuantizedModel(mean, invStd, hiddenCount, hiddenWeights, 0.01f, hiddenBias, 
+                hiddenCount > 0 ? 4 : 0, outputWeights, 0.02f, -0.5f, 0.25f);
+    }
+    
+    private static byte[] randomBytes(Random random, int count) {
+        byte[] values = new byte[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (byte) (random.nextInt(255) - 127);
+        }
+        return values;
+    }
+    
+    private static void assertRejected(Runnable construct) {
+        try {
+            construct.run();
+            fail("Model of the wrong shape was accepted");
+        } catch (IllegalArgumentException expected) {
+            // The constructor checks every array against the hidden unit count
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.whistlecounter.detector.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GoertzelBankTest {
+    
+    private static final int SAMPLE_RATE = 22050;
+    private static final int BLOCK = 32;
+    
+    @Test
+    public void probesOnTheBinGridMatchDftBins() {
+        // Probes on every bin but DC and Nyquist, in groups of four, two and one
+        double[] probes = new double[BLOCK / 2 - 1];
+        for (int k = 1; k < BLOCK / 2; k++) {
+            probes[k - 1] = k * (double) SAMPLE_RATE / BLOCK;
+        }
+        GoertzelBank bank = new GoertzelBank(SAMPLE_RATE, BLOCK, probes);
+        short[] frame = noise(BLOCK * 20 + 7, 1);
+        double[] energies = new double[probes.length];
+        
+        bank.energies(frame, frame.length, energies);
+        
+        // The trailing 7 samples are left out, as documented
+        for (int k = 1; k < BLOCK / 2; k++) {
+            double expected = dftEnergy(frame, BLOCK * 20, k);
+            assertEquals("Bin " + k, expected, energies[k - 1], expected * 1e-9);
+        }
+    }
+    
+    @Test
+    public void probesPartitionTheBlockEnergy() {
+        double[] probes = new double[BLOCK / 2 - 1];
+        for (int k = 1; k < BLOCK / 2; k++) {
+            probes[k - 1] = k * (double) SAMPLE_RATE / BLOCK;
+        }
+        GoertzelBank bank = new GoertzelBank(SAMPLE_RATE, BLOCK, probes);
+        short[] frame = noise(BLOCK * 20, 2);
+        double[] energies = new double[probes.length];
+        
+        bank.energies(frame, frame.length, energies);
+        
+        // Parseval: with the DC and Nyquist bins, which count once, the bins hold all of the energy
+        double sum = dftEnergy(frame, frame.length, 0) / 2 + dftEnergy(frame, frame.length, BLOCK / 2) / 2;
+        for (double energy : energies) {
+            sum += energy;
+        }
+        double total = 0;
+        for (short sample : frame) {
+            total += (double) sample * sample;
+        }
+        assertEquals(total * PcmScale.ENERGY_SCALE, sum, total * PcmScale.ENERGY_SCALE * 1e-9);
+    }
+    
+    // Energy of DFT bin k summed over the whole blocks in the first length samples, scaled as the bank scales it
+    private static double dftEnergy(short[] frame, int length, int k) {
+        double energy = 0;
+        for (int start = 0; start + BLOCK <= length; start += BLOCK) {
+            double re = 0;
+            double im = 0;
+            for (int n = 0; n < BLOCK; n++) {
+                double angle = 2 * Math.PI * k * n / BLOCK;
+                re += frame[start + n] * Math.cos(angle);
+                im -= frame[start + n] * Math.sin(angle);
+            }
+            energy += re * re + im * im;
+        }
+        return energy * 2.0 / BLOCK * PcmScale.ENERGY_SCALE;
+    }
+    
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] frame = new short[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = (short) (random.nextGaussian() * 5000);
+        }
+        return frame;
+    }
+}
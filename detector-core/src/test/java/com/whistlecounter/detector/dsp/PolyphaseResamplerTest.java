@@ -0,0 +1,79 @@
+package com.whistlecounter.detector.dsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+    
+    private static final int INPUT_RATE = 22050;
+    private static final int OUTPUT_RATE = 16000;
+    
+    @Test
+    public void oneSecondInGivesOneSecondOut() {
+        PolyphaseResampler resampler = new PolyphaseResampler(INPUT_RATE, OUTPUT_RATE);
+        short[] in = tone(INPUT_RATE, 1000);
+        
+        assertEquals(OUTPUT_RATE, resample(resampler, in, 1000, 333, 4096, 7).length);
+    }
+    
+    @Test
+    public void chunksJoinWithoutASeam() {
+        short[] in = tone(INPUT_RATE, 1000);
+        short[] whole = resample(new PolyphaseResampler(INPUT_RATE, OUTPUT_RATE), in, in.length);
+        
+        // Chunk sizes that put every boundary at a different phase
+        short[] chunked = resample(new PolyphaseResampler(INPUT_RATE, OUTPUT_RATE), in, 1000, 333, 4096, 7);
+        
+        assertArrayEquals(whole, chunked);
+    }
+    
+    @Test
+    public void toneAboveTheNewNyquistIsRemoved() {
+        short[] passed = resample(new PolyphaseResampler(INPUT_RATE, OUTPUT_RATE), tone(INPUT_RATE, 3000), 4096);
+        short[] stopped = resample(new PolyphaseResampler(INPUT_RATE, OUTPUT_RATE), tone(INPUT_RATE, 9000), 4096);
+        
+        // Past the filter's start-up, a 9 kHz tone is over 60 dB down on one in the passband
+        double passedRms = rms(passed, 100);
+        assertEquals(10000 / Math.sqrt(2), passedRms, 200);
+        assertTrue(rms(stopped, 100) < passedRms / 1000);
+    }
+    
+    // Feeds the input in chunks of the given sizes, repeating the last
+    private static short[] resample(PolyphaseResampler resampler, short[] in, int... chunks) {
+        short[] out = new short[resampler.maxOutput(in.length)];
+        short[] chunk = new short[in.length];
+        short[] converted = new short[out.length];
+        int read = 0;
+        int written = 0;
+        for (int c = 0; read < in.length; c = Math.min(c + 1, chunks.length - 1)) {
+            int length = Math.min(chunks[c], in.length - read);
+            System.arraycopy(in, read, chunk, 0, length);
+            int n = resampler.process(chunk, length, converted);
+            System.arraycopy(converted, 0, out, written, n);
+            read += length;
+            written += n;
+        }
+        return Arrays.copyOf(out, written);
+    }
+    
+    private static short[] tone(int length, double hz) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(10000 * Math.sin(2 * Math.PI * hz * i / INPUT_RATE));
+        }
+        return samples;
+    }
+    
+    private static double rms(short[] samples, int from) {
+        double sum = 0;
+        for (int i = from; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (samples.length - from));
+    }
+}
@@ -0,0 +1,73 @@
+package com.whistlecounter.detector.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RealFftTest {
+    
+    private static final int SAMPLE_RATE = 44100;
+    
+    @Test
+    public void toneLandsInItsBin() {
+        RealFft fft = new RealFft(1024);
+        float[] power = new float[fft.getBinCount()];
+        
+        fft.powerSpectrum(tone(1024, 100.0 * SAMPLE_RATE / 1024), 1024, power);
+        
+        assertEquals(100, strongestBin(power));
+    }
+    
+    @Test
+    public void paddedFrameIsTaperedToZero() {
+        // A 3584-sample frame padded to 4096, as for an 80 ms buffer at 44.1 kHz
+        int length = 3584;
+        RealFft fft = new RealFft(RealFft.sizeFor(length));
+        float[] power = new float[fft.getBinCount()];
+        
+        fft.powerSpectrum(tone(length, 3000), length, power);
+        
+        // A window cut off mid-taper leaks like a rectangular one, about -40 dB this far out
+        int peak = strongestBin(power);
+        for (int k = 0; k < power.length; k++) {
+            if (Math.abs(k - peak) > 40) {
+                assertTrue("Leakage at bin " + k, power[k] < 1e-7 * power[peak]);
+            }
+        }
+    }
+    
+    @Test
+    public void windowFollowsFrameLength() {
+        RealFft fft = new RealFft(4096);
+        float[] padded = new float[fft.getBinCount()];
+        float[] reused = new float[fft.getBinCount()];
+        short[] frame = tone(4096, 3000);
+        
+        fft.powerSpectrum(frame, 2048, padded);
+        fft.powerSpectrum(frame, 4096, reused);
+        fft.powerSpectrum(frame, 2048, reused);
+        
+        for (int k = 0; k < padded.length; k++) {
+            assertEquals(padded[k], reused[k], 0);
+        }
+    }
+    
+    private static short[] tone(int length, double hz) {
+        short[] frame = new short[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = (short) Math.round(10000 * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return frame;
+    }
+    
+    private static int strongestBin(float[] power) {
+        int best = 0;
+        for (int k = 1; k < power.length; k++) {
+            if (power[k] > power[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,70 @@
+package com.whistlecounter.detector.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RollingFrameStatsTest {
+    
+    private static final int WINDOW = 1024;
+    
+    @Test
+    public void hopDividingTheWindowMatchesDirectSums() {
+        checkAgainstDirect(256);
+    }
+    
+    @Test
+    public void hopNotDividingTheWindowMatchesDirectSums() {
+        // 3 blocks of 300 and a head of 124 samples
+        checkAgainstDirect(300);
+    }
+    
+    @Test
+    public void wholeWindowHopMatchesDirectSums() {
+        checkAgainstDirect(WINDOW);
+    }
+    
+    private static void checkAgainstDirect(int hop) {
+        Random random = new Random(hop);
+        short[] stream = new short[WINDOW + 200 * hop];
+        for (int i = 0; i < stream.length; i++) {
+            // Runs of one sign and some exact zeros, so not every pair is a crossing
+            stream[i] = (short) (random.nextInt(8) == 0 ? 0 : random.nextInt(20000) - 6000);
+        }
+        
+        RollingFrameStats stats = new RollingFrameStats();
+        short[] window = new short[WINDOW];
+        for (int end = WINDOW; end <= stream.length; end += hop) {
+            System.arraycopy(stream, end - WINDOW, window, 0, WINDOW);
+            stats.next(window, WINDOW, hop, end);
+            
+            // Skip each statistic on some windows, so missing blocks get filled in later
+            if (random.nextInt(4) != 0) {
+                assertEquals("Energy at " + end, directSumOfSquares(window), stats.sumOfSquares());
+            }
+            if (random.nextInt(4) != 0) {
+                assertEquals("Crossings at " + end, directZeroCrossings(window), stats.zeroCrossings());
+            }
+        }
+    }
+    
+    private static long directSumOfSquares(short[] window) {
+        long sum = 0;
+        for (short sample : window) {
+            sum += (long) sample * sample;
+        }
+        return sum;
+    }
+    
+    private static int directZeroCrossings(short[] window) {
+        int count = 0;
+        for (int i = 1; i < window.length; i++) {
+            if ((window[i - 1] < 0 && window[i] > 0) || (window[i - 1] > 0 && window[i] < 0)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,97 @@
+package com.whistlecounter.detector.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.whistlecounter.detector.FrameFeatures;
+
+public class EventStreamTest {
+    
+    private final EventStream stream = new EventStream();
+    private final FrameFeatures features = new FrameFeatures();
+    private final List<Long> levels = new ArrayList<>();
+    private final IdentityHashMap<LevelReading, Boolean> readings = new IdentityHashMap<>();
+    private int scheduled = 0;
+    private final List<Long> delays = new ArrayList<>();
+    
+    private final EventStream.Dispatcher dispatcher = new EventStream.Dispatcher() {
+        @Override
+        public void schedule(EventStream.Subscription subscription) {
+            scheduled++;
+        }
+        
+        @Override
+        public void scheduleDelayed(EventStream.Subscription subscription, long delayMs) {
+            delays.add(delayMs);
+        }
+    };
+    
+    private final DetectionEventListener listener = new DetectionEventListener() {
+        @Override
+        public void onLevel(LevelReading reading) {
+            levels.add(reading.timestampMs);
+            readings.put(reading, true);
+        }
+    };
+    
+    @Test
+    public void rateLimitedLevelWaitsForOneDelayedDelivery() throws InterruptedException {
+        EventStream.Subscription subscription = stream.subscribe(listener, dispatcher, 50);
+        publishLevel(1);
+        subscription.deliver();
+        assertEquals(List.of(1L), levels);
+        
+        // Too soon: every delivery in the interval leaves the reading for the one delayed delivery
+        for (long t = 2; t <= 5; t++) {
+            publishLevel(t);
+            subscription.deliver();
+        }
+        assertEquals(List.of(1L), levels);
+        assertEquals(1, delays.size());
+        assertTrue(delays.get(0) > 0 && delays.get(0) <= 51);
+        assertEquals(5, scheduled);
+        
+        Thread.sleep(delays.get(0));
+        subscription.deliver();
+        assertEquals(List.of(1L, 5L), levels);
+    }
+    
+    @Test
+    public void levelReadingsAreRecycled() {
+        EventStream.Subscription subscription = stream.subscribe(listener, dispatcher, 0);
+        for (long t = 1; t <= 100; t++) {
+            publishLevel(t);
+            if (t % 3 == 0) {
+                subscription.deliver();
+            }
+        }
+        
+        assertEquals(33, levels.size());
+        assertEquals(99L, (long) levels.get(32));
+        assertTrue(readings.size() <= 3);
+    }
+    
+    @Test
+    public void closedSubscriptionGetsNothing() {
+        EventStream.Subscription subscription = stream.subscribe(listener, dispatcher, 0);
+        subscription.close();
+        
+        publishLevel(1);
+        subscription.deliver();
+        
+        assertTrue(levels.isEmpty());
+        assertEquals(0, scheduled);
+        assertTrue(!stream.hasSubscribers());
+    }
+    
+    private void publishLevel(long timestampMs) {
+        features.timestampMs = timestampMs;
+        stream.publishLevel(features, false);
+    }
+}
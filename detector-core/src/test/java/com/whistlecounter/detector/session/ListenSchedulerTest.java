@@ -0,0 +1,112 @@
+package com.whistlecounter.detector.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ListenSchedulerTest {
+    
+    private static final long ONSET_MS = 600;
+    private static final long INTERVAL_MS = 60000;
+    private static final long WHISTLE_MS = 5000;
+    
+    // The clock the service would pass in, advanced by hand
+    private long now = 0;
+    private final ListenScheduler scheduler = new ListenScheduler(ONSET_MS);
+    
+    @Test
+    public void listensContinuouslyUntilTheRhythmIsKnown() {
+        whistle();
+        now += INTERVAL_MS;
+        
+        assertTrue(scheduler.update(now));
+        assertEquals(now + ListenScheduler.ACTIVITY_HOLD_MS, scheduler.getNextDecisionMs());
+    }
+    
+    @Test
+    public void dutyCyclesBetweenWhistlesAndWakesForTheNext() {
+        long expected = learnRhythm();
+        long sleep = WHISTLE_MS - ONSET_MS - ListenScheduler.SLEEP_MARGIN_MS;
+        assertEquals(sleep, scheduler.getSleepMs());
+        
+        // Past the activity hold: a listen window, then a sleep, then the next window
+        now += ListenScheduler.ACTIVITY_HOLD_MS;
+        long windowStart = now;
+        assertTrue(scheduler.update(now));
+        assertEquals(windowStart + ListenScheduler.LISTEN_WINDOW_MS, scheduler.getNextDecisionMs());
+        now = scheduler.getNextDecisionMs();
+        assertFalse(scheduler.update(now));
+        assertEquals(now + sleep, scheduler.getNextDecisionMs());
+        now += sleep / 2;
+        assertFalse(scheduler.update(now));
+        now = windowStart + ListenScheduler.LISTEN_WINDOW_MS + sleep;
+        assertTrue(scheduler.update(now));
+        
+        // Following the decisions as the service does, the microphone is on before the guard period
+        long guardStart = expected - ListenScheduler.MIN_GUARD_MS;
+        long cycleStart = now;
+        long listenedMs = 0;
+        while (now < guardStart) {
+            boolean listening = scheduler.update(now);
+            long next = scheduler.getNextDecisionMs();
+            assertTrue(next <= guardStart || listening);
+            if (listening) {
+                listenedMs += Math.min(next, guardStart) - now;
+            }
+            now = next;
+        }
+        assertTrue(listenedMs < (guardStart - cycleStart) / 2);
+        
+        // From the guard period until the whistle, and when it is overdue, it stays on
+        assertEquals(guardStart, now);
+        assertTrue(scheduler.update(now));
+        now = expected + 10000;
+        assertTrue(scheduler.update(now));
+    }
+    
+    @Test
+    public void staysAwakeWhileAWhistleIsTracked() {
+        learnRhythm();
+        now += ListenScheduler.ACTIVITY_HOLD_MS;
+        assertTrue(scheduler.update(now));
+        now = scheduler.getNextDecisionMs();
+        assertFalse(scheduler.update(now));
+        
+        // A whistle heard in the next window: every analyzed frame is activity
+        now = scheduler.getNextDecisionMs();
+        assertTrue(scheduler.update(now));
+        for (int frame = 0; frame < 100; frame++) {
+            now += 100;
+            scheduler.onActivity(now);
+            assertTrue(scheduler.update(now));
+        }
+        long lastActivity = now;
+        
+        // It keeps listening for the hold after the last frame, then duty-cycles again
+        now = lastActivity + ListenScheduler.ACTIVITY_HOLD_MS - 1;
+        assertTrue(scheduler.update(now));
+        assertEquals(lastActivity + ListenScheduler.ACTIVITY_HOLD_MS, scheduler.getNextDecisionMs());
+        now = scheduler.getNextDecisionMs();
+        assertTrue(scheduler.update(now));
+        now += ListenScheduler.LISTEN_WINDOW_MS;
+        assertFalse(scheduler.update(now));
+    }
+    
+    // Three whistles a steady interval apart; returns when the next one is expected
+    private long learnRhythm() {
+        for (int i = 0; i < 3; i++) {
+            if (i > 0) {
+                now += INTERVAL_MS;
+            }
+            whistle();
+        }
+        return now + INTERVAL_MS;
+    }
+    
+    private void whistle() {
+        scheduler.onWhistle(now);
+        scheduler.onWhistleEnded(WHISTLE_MS);
+    }
+}
@@ -0,0 +1,60 @@
+package com.whistlecounter.detector.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.whistlecounter.detector.DetectorConfig;
+
+import org.junit.Test;
+
+public class RateSwitcherTest {
+    
+    @Test
+    public void monitorConfigOnlyFindsCandidates() {
+        DetectorConfig config = DetectorConfig.defaults().toBuilder()
+                .setMultiSourceEnabled(true)
+                .build();
+        
+        DetectorConfig monitor = RateSwitcher.monitorConfig(config, 16000);
+        
+        assertFalse(monitor.isMultiSourceEnabled());
+        assertEquals(0, monitor.getWhistleCooldownMs());
+        assertEquals(config.getMidBandMaxHz(), monitor.getMidBandMaxHz(), 0);
+        assertEquals(config.getLowBandMaxHz(), monitor.getLowBandMaxHz(), 0);
+    }
+    
+    @Test
+    public void monitorBandsMoveBelowItsNyquist() {
+        DetectorConfig monitor = RateSwitcher.monitorConfig(DetectorConfig.defaults(), 8000);
+        
+        assertEquals(3200, monitor.getMidBandMaxHz(), 1e-9);
+        assertEquals(1600, monitor.getLowBandMaxHz(), 1e-9);
+    }
+    
+    @Test
+    public void switchesToConfirmAndBackWhenQuiet() {
+        RateSwitcher switcher = new RateSwitcher();
+        switcher.reset(0);
+        assertTrue(switcher.isFullRate());
+        
+        // A session starts at full rate and drops back once the hold has passed
+        assertFalse(switcher.onFullRateFrame(false, 1000));
+        assertTrue(switcher.onFullRateFrame(false, RateSwitcher.IDLE_HOLD_MS));
+        assertFalse(switcher.isFullRate());
+        
+        // Only a whistle-like frame brings full rate back
+        assertFalse(switcher.onMonitorFrame(false, 4000));
+        assertTrue(switcher.onMonitorFrame(true, 5000));
+        assertTrue(switcher.isFullRate());
+        assertFalse(switcher.onMonitorFrame(true, 5100));
+        
+        // The hold counts from the switch, and again from the last busy frame
+        assertFalse(switcher.onFullRateFrame(false, 7000));
+        assertFalse(switcher.onFullRateFrame(true, 7500));
+        assertFalse(switcher.onFullRateFrame(false, 7500 + RateSwitcher.IDLE_HOLD_MS - 1));
+        assertTrue(switcher.onFullRateFrame(false, 7500 + RateSwitcher.IDLE_HOLD_MS));
+        assertFalse(switcher.isFullRate());
+        assertFalse(switcher.onFullRateFrame(false, 20000));
+    }
+}
@@ -0,0 +1,38 @@
+package com.whistlecounter.detector.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionCheckpointTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void savedStateIsRestoredOnReopen() throws IOException {
+        File file = new File(folder.getRoot(), "session.ckpt");
+        try (SessionCheckpoint checkpoint = SessionCheckpoint.open(file)) {
+            assertNull(checkpoint.getRestored());
+            checkpoint.save(3, true, false, false, 1000L, -40.0, 5, 1);
+            checkpoint.save(7, true, true, true, 2000L, -42.5, 6, 2);
+        }
+        
+        try (SessionCheckpoint checkpoint = SessionCheckpoint.open(file)) {
+            SessionCheckpoint.State state = checkpoint.getRestored();
+            assertEquals(7, state.count);
+            assertTrue(state.detecting && state.backgroundMode && state.whistleInProgress);
+            assertEquals(2000L, state.lastWhistleMs);
+            assertEquals(-42.5, state.noiseFloorDb, 0);
+            assertEquals(6, state.targetCount);
+            assertEquals(2, state.sessionStartCount);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.whistlecounter.detector.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionLogTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void recordsSurviveReopenAcrossBatches() throws IOException {
+        File file = new File(folder.getRoot(), "whistles.wlog");
+        int records = 150; // More than two batches
+        try (SessionLog log = SessionLog.open(file)) {
+            for (int i = 0; i < records; i++) {
+                log.append(new WhistleRecord(WhistleRecord.Kind.WHISTLE, 1000L + i, i + 1, 10 * i, 
+                        -30.5f, 0.75f, i % 2 == 0));
+            }
+        }
+        
+        try (SessionLog log = SessionLog.open(file)) {
+            assertEquals(records, log.getRecordCount());
+            assertEquals(records, log.readLastCount());
+            for (int i = 0; i < records; i++) {
+                WhistleRecord record = log.read(i);
+                assertEquals(WhistleRecord.Kind.WHISTLE, record.kind);
+                assertEquals(1000L + i, record.timestampMs);
+                assertEquals(i + 1, record.count);
+                assertEquals(10 * i, record.durationMs);
+                assertEquals(-30.5f, record.peakDb, 0);
+                assertEquals(0.75f, record.confidence, 0);
+                assertEquals(i % 2 == 0, record.timedOut);
+            }
+            
+            List<WhistleRecord> range = log.query(1064, 1130);
+            assertEquals(66, range.size());
+            assertEquals(1064L, range.get(0).timestampMs);
+        }
+    }
+    
+    @Test
+    public void truncatedRecordIsDroppedOnOpen() throws IOException {
+        File file = new File(folder.getRoot(), "whistles.wlog");
+        try (SessionLog log = SessionLog.open(file)) {
+            log.append(WhistleRecord.event(WhistleRecord.Kind.SESSION_START, 1000, 0));
+            log.append(WhistleRecord.event(WhistleRecord.Kind.WHISTLE, 2000, 1));
+        }
+        
+        // A crash in the middle of writing the next record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[WhistleRecord.SIZE / 2]);
+        }
+        
+        try (SessionLog log = SessionLog.open(file)) {
+            assertEquals(2, log.getRecordCount());
+            assertEquals(1, log.readLastCount());
+            log.append(WhistleRecord.event(WhistleRecord.Kind.WHISTLE, 3000, 2));
+        }
+        
+        try (SessionLog log = SessionLog.open(file)) {
+            assertEquals(3, log.getRecordCount());
+            assertEquals(2, log.readLastCount());
+        }
+    }
+    
+    @Test
+    public void unknownKindsAreSkipped() throws IOException {
+        File file = new File(folder.getRoot(), "whistles.wlog");
+        try (SessionLog log = SessionLog.open(file)) {
+            log.append(WhistleRecord.event(WhistleRecord.Kind.WHISTLE, 1000, 4));
+        }
+        
+        // A record written by a newer version with a kind this one does not know
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] record = new byte[WhistleRecord.SIZE];
+            record[0] = (byte) 200;
+            raf.seek(raf.length());
+            raf.write(record);
+        }
+        
+        try (SessionLog log = SessionLog.open(file)) {
+            assertEquals(2, log.getRecordCount());
+            assertNull(log.read(1));
+            assertEquals(4, log.readLastCount());
+            assertEquals(1, log.query(0, Long.MAX_VALUE).size());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.whistlecounter.detector.sources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.dsp.SpectralPeaks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SourceTrackerTest {
+    
+    private static final long FRAME_MS = 100;
+    
+    private final SourceTracker tracker = new SourceTracker(DetectorConfig.defaults());
+    private final SpectralPeaks peaks = new SpectralPeaks(4);
+    private final List<Long> ended = new ArrayList<>();
+    
+    public SourceTrackerTest() {
+        tracker.setListener(new WhistleListener() {
+            @Override
+            public void onSourceWhistleEnded(WhistleSource source, long timestampMs) {
+                ended.add(timestampMs);
+            }
+        });
+    }
+    
+    @Test
+    public void interleavedCookersAreCountedApart() {
+        // The second cooker starts while the first is whistling, and each whistles twice
+        feed(0, 1000, 6000);
+        feed(1000, 2000, 6000, 7200);
+        feed(2000, 3000, 7200);
+        quiet(3000, 5000);
+        feed(5000, 6000, 6000);
+        feed(6000, 6500, 6000, 7200);
+        feed(6500, 7500, 7200);
+        quiet(7500, 10000);
+        
+        List<WhistleSource> sources = tracker.getSources();
+        assertEquals(2, sources.size());
+        assertEquals(6000, sources.get(0).getFrequencyHz(), 1);
+        assertEquals(2, sources.get(0).getCount());
+        assertEquals(7200, sources.get(1).getFrequencyHz(), 1);
+        assertEquals(2, sources.get(1).getCount());
+        assertEquals(4, ended.size());
+    }
+    
+    @Test
+    public void driftWithinToleranceStaysOneSource() {
+        // 5 Hz per frame, 300 Hz in all: twice the tolerance, but never that far from the smoothed pitch
+        for (int i = 0; i < 60; i++) {
+            feed(i * FRAME_MS, (i + 1) * FRAME_MS, 6000 + 5 * i);
+        }
+        
+        List<WhistleSource> sources = tracker.getSources();
+        assertEquals(1, sources.size());
+        assertEquals(1, sources.get(0).getCount());
+        assertTrue(sources.get(0).getFrequencyHz() > 6200);
+    }
+    
+    @Test
+    public void sourceEndsAfterSilence() {
+        feed(0, 1500, 6000);
+        quiet(1500, 4000);
+        
+        WhistleSource source = tracker.getSources().get(0);
+        assertFalse(source.isWhistleInProgress());
+        assertFalse(tracker.isActive());
+        assertEquals(1, ended.size());
+        long endMs = DetectorConfig.defaults().getWhistleEndMs();
+        assertTrue(ended.get(0) >= 1500 + endMs && ended.get(0) <= 1500 + endMs + FRAME_MS);
+        
+        // Heard again after its cooldown, the same source counts a second whistle
+        feed(4000, 5000, 6000);
+        assertEquals(1, tracker.getSources().size());
+        assertEquals(2, source.getCount());
+    }
+    
+    // Frames ending after from up to to, each with the given peaks, strongest first
+    private void feed(long fromMs, long toMs, double... frequenciesHz) {
+        for (long t = fromMs + FRAME_MS; t <= toMs; t += FRAME_MS) {
+            peaks.clear();
+            for (int i = 0; i < frequenciesHz.length; i++) {
+                peaks.offer(frequenciesHz[i], 0.5 - 0.1 * i);
+            }
+            tracker.update(peaks, t, FRAME_MS);
+        }
+    }
+    
+    private void quiet(long fromMs, long toMs) {
+        for (long t = fromMs + FRAME_MS; t <= toMs; t += FRAME_MS) {
+            tracker.advance(t);
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.whistlecounter.tools;
+
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.WhistleDetector;
+import com.whistlecounter.detector.audio.CaptureScheduler;
+import com.whistlecounter.detector.audio.Framer;
+import com.whistlecounter.detector.audio.PcmFileSource;
+import com.whistlecounter.detector.classifier.FrameClassifier;
+import com.whistlecounter.detector.classifier.QuantizedClassifier;
+import com.whistlecounter.detector.classifier.QuantizedModel;
+import com.whistlecounter.detector.classifier.RuleClassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Trains the quantized whistle classifier on a corpus of labeled recordings.
+ *
+ * <p>Every recording with a {@code .labels} sidecar (see {@link LabeledRecording})
+ * is replayed with the energy gate open, and each loud frame is kept with its
+ * model inputs: frames inside a labeled whistle are positives, frames clear of
+ * every whistle are negatives, and frames near a label's edges are left out,
+ * since labels are placed by ear. A label with only a start counts as whistle
+ * for {@value #UNMARKED_WHISTLE_MS} ms, and the rest of
+ * {@value #UNMARKED_END_MS} ms after it is left out. Recordings of kettles,
+ * mixer-grinders or television with empty label files supply the negatives
+ * the band rules get wrong.
+ *
+ * <p>The network is trained in floating point with Adam on class-balanced
+ * cross-entropy, then quantized, and its threshold is chosen on the quantized
+ * scores, so the figures printed are those of the model the app runs.
+ *
+ * <pre>
+ * whistle-train [--hidden N] [--epochs N] [--frame SAMPLES] [--hop SAMPLES] [--rate HZ]
+ *               [--mode spectral|goertzel] [--out MODEL] DIR...
+ * </pre>
+ */
+public final class ClassifierTrainer {
+    
+    public static final int DEFAULT_HIDDEN = 8;
+    public static final int DEFAULT_EPOCHS = 100;
+    
+    static final long EDGE_MS = 500; // Left out on both sides of a label's start and end
+    static final long UNMARKED_WHISTLE_MS = 2000;
+    static final long UNMARKED_END_MS = 10000;
+    
+    private static final int BATCH_SIZE = 256;
+    private static final double LEARNING_RATE = 0.005;
+    private static final double L2 = 1e-4;
+    private static final double MAX_DEVIATIONS = 127 / QuantizedModel.INPUT_STEPS; // Where quantized inputs clip
+    
+    private final DetectorConfig config;
+    private final int frameSize;
+    private final int hopSize;
+    private final int rawSampleRate;
+    private final List<float[]> vectors = new ArrayList<>();
+    private final List<Boolean> whistles = new ArrayList<>();
+    
+    public ClassifierTrainer(DetectorConfig config, int frameSize, int hopSize, int rawSampleRate) {
+        // Every loud frame, not just those the gate lets through, so the model sees all kinds of background
+        this.config = config.toBuilder().setEnergyGateEnabled(false).build();
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.rawSampleRate = rawSampleRate;
+    }
+    
+    public int getFrameCount() {
+        return vectors.size();
+    }
+    
+    public int getWhistleFrameCount() {
+        int count = 0;
+        for (boolean whistle : whistles) {
+            count += whistle ? 1 : 0;
+        }
+        return count;
+    }
+    
+    /**
+     * Replays one recording and keeps the frames its labels decide.
+     *
+     * @return the number of frames kept
+     */
+    public int addRecording(LabeledRecording recording) throws IOException {
+        PcmFileSource source = PcmFileSource.open(recording.getFile(), rawSampleRate);
+        try {
+            int before = vectors.size();
+            WhistleDetector detector = new WhistleDetector(config, source.getSampleRate(), frameSize);
+            detector.setClassifier(new FrameClassifier() {
+                @Override
+                public boolean needsBandLevels() {
+                    return true;
+                }
+                
+                @Override
+                public boolean isWhistle(FrameFeatures features) {
+                    int label = labelAt(recording, features.timestampMs);
+                    if (label >= 0) {
+                        float[] vector = new float[QuantizedModel.FEATURE_COUNT];
+                        QuantizedModel.featureVector(features, vector);
+                        vectors.add(vector);
+                        whistles.add(label == 1);
+                    }
+                    return RuleClassifier.INSTANCE.isWhistle(features);
+                }
+            });
+            Framer framer = new Framer(frameSize, hopSize, detector::process);
+            new CaptureScheduler(source, hopSize).run(framer::onFrame);
+            if (source.getError() != null) {
+                throw source.getError();
+            }
+            return vectors.size() - before;
+        } finally {
+            source.release();
+        }
+    }
+    
+    // 1 inside a labeled whistle, 0 clear of all of them, -1 near a label's edges
+    static int labelAt(LabeledRecording recording, long timeMs) {
+        long[] onsetsMs = recording.getOnsetsMs();
+        long[] endsMs = recording.getEndsMs();
+        int label = 0;
+        for (int i = 0; i < onsetsMs.length; i++) {
+            long start = onsetsMs[i];
+            long end = endsMs[i] >= 0 ? endsMs[i] : start + UNMARKED_WHISTLE_MS;
+            long excludedUntil = endsMs[i] >= 0 ? end + EDGE_MS : start + UNMARKED_END_MS;
+            if (timeMs >= start + EDGE_MS && timeMs <= end - EDGE_MS) {
+                return 1;
+            }
+            if (timeMs > start - EDGE_MS && timeMs < excludedUntil) {
+                label = -1;
+            }
+        }
+        return label;
+    }
+    
+    /**
+     * Trains on every frame added so far.
+     *
+     * @param hiddenCount hidden units, or 0 for logistic regression
+     * @return the quantized model, with its threshold set for the best frame F1
+     */
+    public QuantizedModel train(int hiddenCount, int epochs, long seed) {
+        int n = vectors.size();
+        int positives = getWhistleFrameCount();
+        if (positives == 0 || positives == n) {
+            throw new IllegalStateException("Training needs both whistle and non-whistle frames");
+        }
+        int d = QuantizedModel.FEATURE_COUNT;
+        
+        // Standardize each input over the training set, clipped where the quantized inputs clip
+        float[] mean = new float[d];
+        float[] invStd = new float[d];
+        for (int i = 0; i < d; i++) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (float[] vector : vectors) {
+                sum += vector[i];
+                sumOfSquares += vector[i] * vector[i];
+            }
+            double m = sum / n;
+            double std = Math.sqrt(Math.max(0, sumOfSquares / n - m * m));
+            mean[i] = (float) m;
+            invStd[i] = (float) (1 / Math.max(std, 1e-3));
+        }
+        double[][] x = new double[n][d];
+        double[] y = new double[n];
+        for (int s = 0; s < n; s++) {
+            for (int i = 0; i < d; i++) {
+                double value = (vectors.get(s)[i] - mean[i]) * invStd[i];
+                x[s][i] = Math.max(-MAX_DEVIATIONS, Math.min(MAX_DEVIATIONS, value));
+            }
+            y[s] = whistles.get(s) ? 1 : 0;
+        }
+        
+        Network network = new Network(d, hiddenCount, new Random(seed));
+        // Both classes weigh the same in total, however rare whistles are in the corpus
+        double positiveWeight = n / (2.0 * positives);
+        double negativeWeight = n / (2.0 * (n - positives));
+        Random shuffle = new Random(seed + 1);
+        int[] order = new int[n];
+        for (int s = 0; s < n; s++) {
+            order[s] = s;
+        }
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int s = n - 1; s > 0; s--) {
+                int other = shuffle.nextInt(s + 1);
+                int swap = order[s];
+                order[s] = order[other];
+                order[other] = swap;
+            }
+            for (int start = 0; start < n; start += BATCH_SIZE) {
+                int end = Math.min(n, start + BATCH_SIZE);
+                network.clearGradient();
+                for (int b = start; b < end; b++) {
+                    int s = order[b];
+                    double weight = y[s] > 0 ? positiveWeight : negativeWeight;
+                    network.accumulate(x[s], y[s], weight / (end - start));
+                }
+                network.step();
+            }
+        }
+        
+        QuantizedModel model = network.quantize(mean, invStd, x);
+        return model.withThreshold(bestThreshold(model));
+    }
+    
+    // Threshold on the quantized logits that maximizes frame-level F1
+    private float bestThreshold(QuantizedModel model) {
+        QuantizedClassifier classifier = new QuantizedClassifier(model);
+        int n = vectors.size();
+        float[] scores = new float[n];
+        Integer[] order = new Integer[n];
+        for (int s = 0; s < n; s++) {
+            scores[s] = classifier.score(vectors.get(s));
+            order[s] = s;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(s -> -scores[s]));
+        int positives = getWhistleFrameCount();
+        int truePositives = 0;
+        double bestF1 = -1;
+        float best = scores[order[0]];
+        for (int rank = 0; rank < n; rank++) {
+            truePositives += whistles.get(order[rank]) ? 1 : 0;
+            // Only between distinct scores, since a threshold cannot split a tie
+            if (rank + 1 < n && scores[order[rank + 1]] == scores[order[rank]]) {
+                continue;
+            }
+            int falsePositives = rank + 1 - truePositives;
+            double f1 = 2.0 * truePositives / (2.0 * truePositives + falsePositives + positives - truePositives);
+            if (f1 > bestF1) {
+                bestF1 = f1;
+                best = scores[order[rank]];
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Frame-level counts of the model on every frame added so far:
+     * {true positives, false positives, false negatives}.
+     */
+    public int[] score(QuantizedModel model) {
+        QuantizedClassifier classifier = new QuantizedClassifier(model);
+        int[] counts = new int[3];
+        for (int s = 0; s < vectors.size(); s++) {
+            boolean predicted = classifier.score(vectors.get(s)) >= model.getThreshold();
+            boolean whistle = whistles.get(s);
+            if (predicted && whistle) {
+                counts[0]++;
+            } else if (predicted) {
+                counts[1]++;
+            } else if (whistle) {
+                counts[2]++;
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Floating-point training copy of the network: an optional ReLU hidden layer
+     * and one logit output, with Adam moments for every parameter.
+     */
+    private static final class Network {
+        private static final double BETA1 = 0.9;
+        private static final double BETA2 = 0.999;
+        
+        private final int inputs;
+        private final int hidden;
+        private final double[] params; // Hidden weights and biases, then output weights and bias
+        private final double[] gradient;
+        private final double[] moment1;
+        private final double[] moment2;
+        private final double[] activation;
+        private int steps = 0;
+        
+        Network(int inputs, int hidden, Random random) {
+            this.inputs = inputs;
+            this.hidden = hidden;
+            int outputInputs = hidden > 0 ? hidden : inputs;
+            this.params = new double[hidden * inputs + hidden + outputInputs + 1];
+            this.gradient = new double[params.length];
+            this.moment1 = new double[params.length];
+            this.moment2 = new double[params.length];
+            this.activation = new double[hidden];
+            double hiddenInit = Math.sqrt(2.0 / inputs);
+            for (int k = 0; k < hidden * inputs; k++) {
+                params[k] = random.nextGaussian() * hiddenInit;
+            }
+            double outputInit = Math.sqrt(1.0 / outputInputs);
+            for (int k = 0; k < outputInputs; k++) {
+                params[outputOffset() + k] = random.nextGaussian() * outputInit;
+            }
+        }
+        
+        private int outputOffset() {
+            return hidden * inputs + hidden;
+        }
+        
+        private int outputInputs() {
+            return hidden > 0 ? hidden : inputs;
+        }
+        
+        double logit(double[] x) {
+            double[] outputIn = x;
+            if (hidden > 0) {
+                for (int j = 0; j < hidden; j++) {
+                    double sum = params[hidden * inputs + j];
+                    for (int i = 0; i < inputs; i++) {
+                        sum += params[j * inputs + i] * x[i];
+                    }
+                    activation[j] = Math.max(0, sum);
+                }
+                outputIn = activation;
+            }
+            int offset = outputOffset();
+            double z = params[offset + outputInputs()];
+            for (int k = 0; k < outputInputs(); k++) {
+                z += params[offset + k] * outputIn[k];
+            }
+            return z;
+        }
+        
+        void clearGradient() {
+            Arrays.fill(gradient, 0);
+        }
+        
+        // Adds the gradient of the weighted cross-entropy of one sample
+        void accumulate(double[] x, double y, double weight) {
+            double p = 1 / (1 + Math.exp(-logit(x)));
+            double dz = weight * (p - y);
+            int offset = outputOffset();
+            double[] outputIn = hidden > 0 ? activation : x;
+            for (int k = 0; k < outputInputs(); k++) {
+                gradient[offset + k] += dz * outputIn[k];
+            }
+            gradient[offset + outputInputs()] += dz;
+            for (int j = 0; j < hidden; j++) {
+                if (activation[j] <= 0) {
+                    continue;
+                }
+                double dh = dz * params[offset + j];
+                for (int i = 0; i < inputs; i++) {
+                    gradient[j * inputs + i] += dh * x[i];
+                }
+                gradient[hidden * inputs + j] += dh;
+            }
+        }
+        
+        void step() {
+            steps++;
+            double correction1 = 1 - Math.pow(BETA1, steps);
+            double correction2 = 1 - Math.pow(BETA2, steps);
+            for (int k = 0; k < params.length; k++) {
+                double g = gradient[k] + L2 * params[k];
+                moment1[k] = BETA1 * moment1[k] + (1 - BETA1) * g;
+                moment2[k] = BETA2 * moment2[k] + (1 - BETA2) * g * g;
+                params[k] -= LEARNING_RATE * (moment1[k] / correction1) / (Math.sqrt(moment2[k] / correction2) + 1e-8);
+            }
+        }
+        
+        // Symmetric int8 weights with one scale per layer; hidden activations are
+        // quantized over the largest one seen on the training set
+        QuantizedModel quantize(float[] mean, float[] invStd, double[][] x) {
+            int offset = outputOffset();
+            double hiddenScale = scaleOf(params, 0, hidden * inputs);
+            double outputScale = scaleOf(params, offset, outputInputs());
+            byte[] hiddenWeights = quantize(params, 0, hidden * inputs, hiddenScale);
+            byte[] outputWeights = quantize(params, offset, outputInputs(), outputScale);
+            float[] hiddenBias = new float[hidden];
+            for (int j = 0; j < hidden; j++) {
+                hiddenBias[j] = (float) params[hidden * inputs + j];
+            }
+            double maxActivation = 0;
+            for (double[] sample : x) {
+                logit(sample);
+                for (int j = 0; j < hidden; j++) {
+                    maxActivation = Math.max(maxActivation, activation[j]);
+                }
+            }
+            float hiddenSteps = (float) (127 / Math.max(maxActivation, 1e-6));
+            return new QuantizedModel(mean, invStd, hidden, hiddenWeights, (float) hiddenScale, hiddenBias,
+                    hiddenSteps, outputWeights, (float) outputScale, (float) params[offset + outputInputs()], 0);
+        }
+        
+        private static double scaleOf(double[] values, int offset, int count) {
+            double max = 0;
+            for (int k = offset; k < offset + count; k++) {
+                max = Math.max(max, Math.abs(values[k]));
+            }
+            return max > 0 ? max / 127 : 1;
+        }
+        
+        private static byte[] quantize(double[] values, int offset, int count, double scale) {
+            byte[] quantized = new byte[count];
+            for (int k = 0; k < count; k++) {
+                quantized[k] = (byte) Math.max(-127, Math.min(127, Math.round(values[offset + k] / scale)));
+            }
+            return quantized;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        File out = new File("classifier.bin");
+        int hiddenCount = DEFAULT_HIDDEN;
+        int epochs = DEFAULT_EPOCHS;
+        int frameSize = ReplayHarness.DEFAULT_FRAME_SIZE;
+        int hopSize = 0;
+        int rawSampleRate = ReplayHarness.DEFAULT_RAW_SAMPLE_RATE;
+        DetectorConfig.Builder config = DetectorConfig.defaults().toBuilder();
+        List<File> inputs = new ArrayList<>();
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--hidden":
+                        hiddenCount = Integer.parseInt(args[++i]);
+                        break;
+                    case "--epochs":
+                        epochs = Integer.parseInt(args[++i]);
+                        break;
+                    case "--frame":
+                        frameSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--hop":
+                        hopSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rawSampleRate = Integer.parseInt(args[++i]);
+                        break;
+                    case "--mode":
+                        config.setAnalysisMode(AnalysisMode.valueOf(args[++i].toUpperCase()));
+                        break;
+                    case "--out":
+                        out = new File(args[++i]);
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                }
+            }
+        } catch (RuntimeException e) {
+            inputs.clear(); // Missing or malformed option value
+        }
+        if (inputs.isEmpty() || hiddenCount < 0 || hiddenCount > QuantizedModel.MAX_HIDDEN || epochs < 1) {
+            System.err.println("Usage: whistle-train [--hidden N] [--epochs N] [--frame SAMPLES] [--hop SAMPLES] "
+                    + "[--rate HZ] [--mode spectral|goertzel] [--out MODEL] DIR...");
+            System.exit(2);
+        }
+        
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            ReplayHarness.collectRecordings(input, files);
+        }
+        ClassifierTrainer trainer = new ClassifierTrainer(config.build(), frameSize, hopSize > 0 ? hopSize : frameSize,
+                rawSampleRate);
+        for (File file : files) {
+            LabeledRecording recording = LabeledRecording.load(file);
+            if (recording == null) {
+                System.err.println("Skipping unlabeled " + file.getPath());
+                continue;
+            }
+            try {
+                trainer.addRecording(recording);
+            } catch (IOException e) {
+                System.err.println(file.getPath() + ": " + e.getMessage());
+            }
+        }
+        int whistleFrames = trainer.getWhistleFrameCount();
+        System.out.printf("%d frames, %d whistle%n", trainer.getFrameCount(), whistleFrames);
+        if (whistleFrames == 0 || whistleFrames == trainer.getFrameCount()) {
+            System.err.println("Training needs both whistle and non-whistle frames");
+            System.exit(1);
+        }
+        
+        QuantizedModel model = trainer.train(hiddenCount, epochs, 1);
+        int[] counts = trainer.score(model);
+        double precision = counts[0] + counts[1] > 0 ? (double) counts[0] / (counts[0] + counts[1]) : 0;
+        double recall = (double) counts[0] / whistleFrames;
+        System.out.printf("Training frames: precision %.3f, recall %.3f, threshold %.3f%n", precision, recall,
+                model.getThreshold());
+        model.save(out);
+        System.out.println("Wrote " + out.getPath() + "; score whole whistles with whistle-evaluate --classifier");
+    }
+}
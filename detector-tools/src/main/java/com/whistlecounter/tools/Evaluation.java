@@ -0,0 +1,318 @@
+package com.whistlecounter.tools;
+
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.classifier.QuantizedModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Scores detector configurations against a corpus of labeled recordings.
+ *
+ * <p>Every combination of the given parameter values is replayed over every
+ * recording that has a {@code .labels} sidecar (see {@link LabeledRecording}),
+ * and each configuration is reported with precision, recall, onset latency and
+ * the detector CPU time per hour of audio. Configurations and recordings are
+ * split into fork-join tasks, so a large grid uses every core.
+ *
+ * <pre>
+ * whistle-evaluate [--param NAME=V1,V2,...]... [--frame SAMPLES] [--hop SAMPLES] [--rate HZ]
+ *                  [--early-ms MS] [--late-ms MS] [--threads N] [--classifier MODEL] [--out RESULTS.tsv] DIR...
+ * </pre>
+ *
+ * <p>{@code --classifier} scores every configuration with a model written by
+ * {@link ClassifierTrainer} in place of the band rules.
+ */
+public final class Evaluation {
+    
+    public static final long DEFAULT_EARLY_MS = 500; // Labels are placed by ear and can be late
+    public static final long DEFAULT_LATE_MS = 5000;
+    
+    // Grid parameters by name, applied to a builder from their text value
+    private static final Map<String, BiConsumer<DetectorConfig.Builder, String>> PARAMETERS = new LinkedHashMap<>();
+    
+    static {
+        PARAMETERS.put("mode", (b, v) -> b.setAnalysisMode(AnalysisMode.valueOf(v.toUpperCase())));
+        PARAMETERS.put("onsetMs", (b, v) -> b.setWhistleOnsetMs(Long.parseLong(v)));
+        PARAMETERS.put("endMs", (b, v) -> b.setWhistleEndMs(Long.parseLong(v)));
+        PARAMETERS.put("interruptionMs", (b, v) -> b.setMaxInterruptionMs(Long.parseLong(v)));
+        PARAMETERS.put("cooldownMs", (b, v) -> b.setWhistleCooldownMs(Long.parseLong(v)));
+        PARAMETERS.put("minPowerDbfs", (b, v) -> b.setMinPowerDbfs(Double.parseDouble(v)));
+        PARAMETERS.put("loudnessMarginDb", (b, v) -> b.setLoudnessMarginDb(Double.parseDouble(v)));
+        PARAMETERS.put("gate", (b, v) -> b.setEnergyGateEnabled(Boolean.parseBoolean(v)));
+        PARAMETERS.put("gateMarginDb", (b, v) -> b.setGateOpenMarginDb(Double.parseDouble(v)));
+        PARAMETERS.put("gateHangoverMs", (b, v) -> b.setGateHangoverMs(Long.parseLong(v)));
+        PARAMETERS.put("lowBandMaxHz", (b, v) -> b.setLowBandMaxHz(Double.parseDouble(v)));
+        PARAMETERS.put("midBandMaxHz", (b, v) -> b.setMidBandMaxHz(Double.parseDouble(v)));
+    }
+    
+    /** One point of the parameter grid. */
+    public static final class Candidate {
+        public final String description;
+        public final DetectorConfig config;
+        
+        Candidate(String description, DetectorConfig config) {
+            this.description = description;
+            this.config = config;
+        }
+    }
+    
+    private final List<LabeledRecording> corpus;
+    private final int frameSize;
+    private final int hopSize;
+    private final int rawSampleRate;
+    private final long earlyMs;
+    private final long lateMs;
+    private QuantizedModel classifierModel;
+    
+    public Evaluation(List<LabeledRecording> corpus, int frameSize, int hopSize, int rawSampleRate, long earlyMs,
+            long lateMs) {
+        this.corpus = corpus;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.rawSampleRate = rawSampleRate;
+        this.earlyMs = earlyMs;
+        this.lateMs = lateMs;
+    }
+    
+    public void setClassifierModel(QuantizedModel classifierModel) {
+        this.classifierModel = classifierModel;
+    }
+    
+    /**
+     * Scores every candidate on the pool; results are in candidate order.
+     */
+    public List<EvaluationScore> run(List<Candidate> candidates, ForkJoinPool pool) {
+        List<CandidateTask> tasks = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            CandidateTask task = new CandidateTask(candidate.config);
+            pool.execute(task);
+            tasks.add(task);
+        }
+        List<EvaluationScore> scores = new ArrayList<>();
+        for (CandidateTask task : tasks) {
+            scores.add(task.join());
+        }
+        return scores;
+    }
+    
+    private final class CandidateTask extends RecursiveTask<EvaluationScore> {
+        private static final long serialVersionUID = 1L;
+        
+        private final DetectorConfig config;
+        
+        CandidateTask(DetectorConfig config) {
+            this.config = config;
+        }
+        
+        @Override
+        protected EvaluationScore compute() {
+            List<RecordingTask> recordings = new ArrayList<>();
+            for (LabeledRecording recording : corpus) {
+                recordings.add(new RecordingTask(config, recording));
+            }
+            invokeAll(recordings);
+            EvaluationScore score = new EvaluationScore();
+            for (RecordingTask recording : recordings) {
+                score.merge(recording.join());
+            }
+            return score;
+        }
+    }
+    
+    private final class RecordingTask extends RecursiveTask<EvaluationScore> {
+        private static final long serialVersionUID = 1L;
+        
+        private final DetectorConfig config;
+        private final LabeledRecording recording;
+        
+        RecordingTask(DetectorConfig config, LabeledRecording recording) {
+            this.config = config;
+            this.recording = recording;
+        }
+        
+        @Override
+        protected EvaluationScore compute() {
+            EvaluationScore score = new EvaluationScore();
+            try {
+                ReplayHarness harness = new ReplayHarness(config, frameSize, hopSize, rawSampleRate);
+                harness.setClassifierModel(classifierModel);
+                ReplayResult result = harness.replay(recording.getFile());
+                score.add(recording.getOnsetsMs(), result, earlyMs, lateMs);
+            } catch (IOException e) {
+                score.addFailure();
+            }
+            return score;
+        }
+    }
+    
+    /**
+     * Expands {@code name=v1,v2} specs into the cross product of their values.
+     */
+    static List<Candidate> expandGrid(List<String> specs) {
+        List<DetectorConfig.Builder> builders = new ArrayList<>();
+        builders.add(DetectorConfig.defaults().toBuilder());
+        List<String> descriptions = new ArrayList<>();
+        descriptions.add("");
+        
+        for (String spec : specs) {
+            int equals = spec.indexOf('=');
+            String name = equals > 0 ? spec.substring(0, equals) : spec;
+            BiConsumer<DetectorConfig.Builder, String> setter = PARAMETERS.get(name);
+            if (setter == null) {
+                throw new IllegalArgumentException("Unknown parameter in '" + spec + "'");
+            }
+            List<DetectorConfig.Builder> nextBuilders = new ArrayList<>();
+            List<String> nextDescriptions = new ArrayList<>();
+            for (String value : spec.substring(equals + 1).split(",")) {
+                for (int i = 0; i < builders.size(); i++) {
+                    DetectorConfig.Builder builder = builders.get(i).build().toBuilder();
+                    setter.accept(builder, value.trim());
+                    nextBuilders.add(builder);
+                    String prefix = descriptions.get(i);
+                    nextDescriptions.add((prefix.isEmpty() ? "" : prefix + " ") + name + "=" + value.trim());
+                }
+            }
+            builders = nextBuilders;
+            descriptions = nextDescriptions;
+        }
+        
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < builders.size(); i++) {
+            String description = descriptions.get(i).isEmpty() ? "defaults" : descriptions.get(i);
+            candidates.add(new Candidate(description, builders.get(i).build()));
+        }
+        return candidates;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int frameSize = ReplayHarness.DEFAULT_FRAME_SIZE;
+        int hopSize = 0;
+        int rawSampleRate = ReplayHarness.DEFAULT_RAW_SAMPLE_RATE;
+        long earlyMs = DEFAULT_EARLY_MS;
+        long lateMs = DEFAULT_LATE_MS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File out = null;
+        File classifierFile = null;
+        List<String> specs = new ArrayList<>();
+        List<File> inputs = new ArrayList<>();
+        List<Candidate> candidates;
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--param":
+                        specs.add(args[++i]);
+                        break;
+                    case "--frame":
+                        frameSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--hop":
+                        hopSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rawSampleRate = Integer.parseInt(args[++i]);
+                        break;
+                    case "--early-ms":
+                        earlyMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--late-ms":
+                        lateMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--classifier":
+                        classifierFile = new File(args[++i]);
+                        break;
+                    case "--out":
+                        out = new File(args[++i]);
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                }
+            }
+            candidates = expandGrid(specs);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            candidates = null;
+        }
+        if (candidates == null || inputs.isEmpty()) {
+            System.err.println("Usage: whistle-evaluate [--param NAME=V1,V2,...]... [--frame SAMPLES] [--hop SAMPLES] "
+                    + "[--rate HZ] [--early-ms MS] [--late-ms MS] [--threads N] [--classifier MODEL] [--out RESULTS.tsv] DIR...");
+            System.err.println("Parameters: " + PARAMETERS.keySet());
+            System.exit(2);
+        }
+        
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            ReplayHarness.collectRecordings(input, files);
+        }
+        List<LabeledRecording> corpus = new ArrayList<>();
+        for (File file : files) {
+            LabeledRecording recording = LabeledRecording.load(file);
+            if (recording != null) {
+                corpus.add(recording);
+            } else {
+                System.err.println("Skipping unlabeled " + file.getPath());
+            }
+        }
+        if (corpus.isEmpty()) {
+            System.err.println("No labeled recordings found");
+            System.exit(1);
+        }
+        System.out.printf("%d recordings, %d configurations, %d threads%n", corpus.size(), candidates.size(), threads);
+        
+        Evaluation evaluation = new Evaluation(corpus, frameSize, hopSize > 0 ? hopSize : frameSize, rawSampleRate,
+                earlyMs, lateMs);
+        if (classifierFile != null) {
+            evaluation.setClassifierModel(QuantizedModel.load(classifierFile));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long startNanos = System.nanoTime();
+        List<EvaluationScore> scores = evaluation.run(candidates, pool);
+        pool.shutdown();
+        
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < scores.size(); i++) {
+            order.add(i);
+        }
+        // Best F1 first; among equals, the faster and then the cheaper configuration wins
+        order.sort(Comparator.<Integer>comparingDouble(i -> -scores.get(i).getF1())
+                .thenComparingDouble(i -> scores.get(i).getMeanLatencyMs())
+                .thenComparingDouble(i -> scores.get(i).getCpuSecondsPerAudioHour()));
+        
+        PrintWriter table = new PrintWriter(System.out, true);
+        writeTable(table, candidates, scores, order);
+        if (out != null) {
+            try (PrintWriter writer = new PrintWriter(out, "UTF-8")) {
+                writeTable(writer, candidates, scores, order);
+            }
+        }
+        System.out.printf("Done in %.1f s%n", (System.nanoTime() - startNanos) / 1e9);
+    }
+    
+    private static void writeTable(PrintWriter out, List<Candidate> candidates, List<EvaluationScore> scores,
+            List<Integer> order) {
+        out.println("precision\trecall\tf1\thits\tlabels\tdetections\tmean_latency_ms\tp95_latency_ms"
+                + "\tcpu_s_per_audio_hour\taudio_hours\tfailures\tconfig");
+        for (int i : order) {
+            EvaluationScore score = scores.get(i);
+            out.printf("%.3f\t%.3f\t%.3f\t%d\t%d\t%d\t%.0f\t%d\t%.2f\t%.2f\t%d\t%s%n", score.getPrecision(),
+                    score.getRecall(), score.getF1(), score.getHits(), score.getLabels(), score.getDetections(),
+                    score.getMeanLatencyMs(), score.getLatencyPercentileMs(0.95), score.getCpuSecondsPerAudioHour(),
+                    score.getAudioHours(), score.getFailures(), candidates.get(i).description);
+        }
+        out.flush();
+    }
+}
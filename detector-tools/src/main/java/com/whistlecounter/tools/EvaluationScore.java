@@ -0,0 +1,137 @@
+package com.whistlecounter.tools;
+
+import java.util.Arrays;
+
+/**
+ * Detection accuracy and cost of one configuration, accumulated over recordings.
+ *
+ * <p>A detected onset counts as a hit if it falls within the matching window
+ * around a labeled onset that has not been matched yet; every other detection
+ * is a false alarm and every unmatched label a miss. Latency is measured from
+ * the labeled onset to the moment the detector confirmed the whistle.
+ */
+public final class EvaluationScore {
+    
+    private int recordings;
+    private int labels;
+    private int detections;
+    private int hits;
+    private long[] latenciesMs = new long[16];
+    private long audioMs;
+    private long cpuNanos;
+    private int failures;
+    
+    /**
+     * Scores one replay against its labels.
+     *
+     * @param earlyMs how long before a labeled onset a detection may come
+     * @param lateMs  how long after a labeled onset a detection may come
+     */
+    void add(long[] labeledOnsets, ReplayResult result, long earlyMs, long lateMs) {
+        recordings++;
+        labels += labeledOnsets.length;
+        detections += result.getWhistles().size();
+        audioMs += result.getDurationMs();
+        cpuNanos += result.getCpuNanos();
+        
+        boolean[] matched = new boolean[labeledOnsets.length];
+        for (ReplayResult.Whistle whistle : result.getWhistles()) {
+            for (int i = 0; i < labeledOnsets.length; i++) {
+                long offset = whistle.onsetMs - labeledOnsets[i];
+                if (!matched[i] && offset >= -earlyMs && offset <= lateMs) {
+                    matched[i] = true;
+                    addLatency(whistle.detectedMs - labeledOnsets[i]);
+                    break;
+                }
+            }
+        }
+    }
+    
+    void addFailure() {
+        failures++;
+    }
+    
+    void merge(EvaluationScore other) {
+        recordings += other.recordings;
+        labels += other.labels;
+        detections += other.detections;
+        audioMs += other.audioMs;
+        cpuNanos += other.cpuNanos;
+        failures += other.failures;
+        for (int i = 0; i < other.hits; i++) {
+            addLatency(other.latenciesMs[i]);
+        }
+    }
+    
+    private void addLatency(long latencyMs) {
+        if (hits == latenciesMs.length) {
+            latenciesMs = Arrays.copyOf(latenciesMs, hits * 2);
+        }
+        latenciesMs[hits++] = latencyMs;
+    }
+    
+    public int getRecordings() {
+        return recordings;
+    }
+    
+    public int getFailures() {
+        return failures;
+    }
+    
+    public int getLabels() {
+        return labels;
+    }
+    
+    public int getDetections() {
+        return detections;
+    }
+    
+    public int getHits() {
+        return hits;
+    }
+    
+    // With no detections at all there are no false alarms either
+    public double getPrecision() {
+        return detections > 0 ? (double) hits / detections : 1;
+    }
+    
+    public double getRecall() {
+        return labels > 0 ? (double) hits / labels : 1;
+    }
+    
+    public double getF1() {
+        double precision = getPrecision();
+        double recall = getRecall();
+        return precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0;
+    }
+    
+    public double getMeanLatencyMs() {
+        if (hits == 0) {
+            return Double.NaN;
+        }
+        long sum = 0;
+        for (int i = 0; i < hits; i++) {
+            sum += latenciesMs[i];
+        }
+        return (double) sum / hits;
+    }
+    
+    public long getLatencyPercentileMs(double percentile) {
+        if (hits == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latenciesMs, hits);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * hits); // Nearest-rank percentile
+        return sorted[Math.max(0, Math.min(hits, rank) - 1)];
+    }
+    
+    public double getAudioHours() {
+        return audioMs / 3_600_000.0;
+    }
+    
+    // Detector CPU time needed to analyze one hour of audio
+    public double getCpuSecondsPerAudioHour() {
+        return audioMs > 0 ? cpuNanos / 1e9 / getAudioHours() : 0;
+    }
+}
@@ -0,0 +1,88 @@
+package com.whistlecounter.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A recording together with the whistles a person marked in it.
+ *
+ * <p>Labels live in a sidecar file next to the recording with the same base name
+ * and a {@code .labels} extension: one whistle per line as {@code start_ms} or
+ * {@code start_ms end_ms}, with {@code #} starting a comment. An empty label
+ * file marks a recording that contains no whistles at all.
+ */
+public final class LabeledRecording {
+    
+    private final File file;
+    private final long[] onsetsMs;
+    private final long[] endsMs; // -1 where only the start was marked
+    
+    LabeledRecording(File file, long[] onsetsMs, long[] endsMs) {
+        this.file = file;
+        this.onsetsMs = onsetsMs;
+        this.endsMs = endsMs;
+    }
+    
+    public static File labelFileFor(File recording) {
+        String name = recording.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(recording.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".labels");
+    }
+    
+    /**
+     * Loads the labels of a recording, or returns null if it has no label file.
+     */
+    public static LabeledRecording load(File recording) throws IOException {
+        File labels = labelFileFor(recording);
+        if (!labels.isFile()) {
+            return null;
+        }
+        List<long[]> whistles = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(labels))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (content.isEmpty()) {
+                    continue;
+                }
+                String[] fields = content.split("\\s+");
+                try {
+                    long start = Long.parseLong(fields[0]);
+                    long end = fields.length > 1 ? Long.parseLong(fields[1]) : -1;
+                    whistles.add(new long[] {start, end > start ? end : -1});
+                } catch (NumberFormatException e) {
+                    throw new IOException(labels + ":" + lineNumber + ": expected a start time in ms");
+                }
+            }
+        }
+        whistles.sort(Comparator.comparingLong(whistle -> whistle[0]));
+        long[] onsetsMs = new long[whistles.size()];
+        long[] endsMs = new long[whistles.size()];
+        for (int i = 0; i < onsetsMs.length; i++) {
+            onsetsMs[i] = whistles.get(i)[0];
+            endsMs[i] = whistles.get(i)[1];
+        }
+        return new LabeledRecording(recording, onsetsMs, endsMs);
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public long[] getOnsetsMs() {
+        return onsetsMs;
+    }
+    
+    // End of each whistle in onset order, or -1 where the label gives only its start
+    public long[] getEndsMs() {
+        return endsMs;
+    }
+}
@@ -0,0 +1,135 @@
+package com.whistlecounter.tools;
+
+import com.whistlecounter.detector.FrameFeatures;
+import com.whistlecounter.detector.SampleClock;
+import com.whistlecounter.detector.WhistleDetector;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.audio.CaptureScheduler;
+import com.whistlecounter.detector.audio.Framer;
+import com.whistlecounter.detector.classifier.CandidateClassifier;
+import com.whistlecounter.detector.dsp.PolyphaseResampler;
+import com.whistlecounter.detector.session.RateSwitcher;
+
+/**
+ * Replays a recording as multi-rate capture would hear it. While monitoring, a
+ * copy resampled to the monitor rate goes to a monitor detector; only while
+ * {@link RateSwitcher} asks for full rate does the recording itself reach the
+ * full-rate detector. Each switch loses {@link #SWITCH_GAP_MS} of audio, as
+ * reopening the microphone at the other rate does on a device.
+ *
+ * <p>Like the service, capture starts at full rate so the full-rate detector
+ * knows the noise floor before it first hands over, and the monitor starts
+ * afresh from that floor each time, its sample clock at zero.
+ */
+final class MultiRateCapture implements CaptureScheduler.FrameConsumer {
+    
+    static final long SWITCH_GAP_MS = 100;
+    
+    private final WhistleDetector detector;
+    private final int sampleRate;
+    private final Framer framer;
+    private final int monitorRate;
+    private final WhistleDetector monitor;
+    private final Framer monitorFramer;
+    private final PolyphaseResampler resampler;
+    private final RateSwitcher switcher = new RateSwitcher();
+    private short[] resampled = new short[0];
+    private boolean candidate;
+    
+    private long rawEndSample; // End of the recording's frame being handled
+    private long resumeSample = 0; // Audio before this is lost to a switch
+    private boolean monitorRestarts = true;
+    private long monitorStartMs; // Recording time where the monitor's sample clock is zero
+    private long monitorEndSample;
+    private long fullRateSamples;
+    private int switches;
+    
+    MultiRateCapture(WhistleDetector detector, int frameSize, int hopSize, int monitorRate) {
+        this.detector = detector;
+        this.sampleRate = detector.getSampleRate();
+        this.framer = new Framer(frameSize, hopSize, this::onFullRateWindow);
+        this.monitorRate = monitorRate;
+        this.resampler = new PolyphaseResampler(sampleRate, monitorRate);
+        
+        // The service's buffers hold the same time at either rate
+        int monitorFrame = (int) ((long) frameSize * monitorRate / sampleRate);
+        int monitorHop = Math.max(1, (int) ((long) hopSize * monitorRate / sampleRate));
+        this.monitor = new WhistleDetector(RateSwitcher.monitorConfig(detector.getConfig(), monitorRate),
+                monitorRate, monitorFrame);
+        this.monitor.setClassifier(CandidateClassifier.INSTANCE);
+        this.monitor.setListener(new WhistleListener() {
+            @Override
+            public void onFrameAnalyzed(FrameFeatures features) {
+                candidate = features.whistleLike;
+            }
+        });
+        this.monitorFramer = new Framer(monitorFrame, Math.min(monitorHop, monitorFrame), this::onMonitorWindow);
+        switcher.reset(0);
+    }
+    
+    @Override
+    public void onFrame(short[] frame, int length, long endSample) {
+        rawEndSample = endSample;
+        if (endSample - length < resumeSample) {
+            return; // Capture is reopening
+        }
+        if (switcher.isFullRate()) {
+            fullRateSamples += length;
+            framer.onFrame(frame, length, endSample);
+            return;
+        }
+        
+        if (monitorRestarts) {
+            // What the monitor learned before its last candidate is stale by now
+            monitor.reset();
+            monitor.restore(false, 0, detector.getNoiseFloorDb());
+            monitorFramer.reset();
+            resampler.reset();
+            monitorStartMs = SampleClock.millisAt(endSample - length, sampleRate);
+            monitorEndSample = 0;
+            monitorRestarts = false;
+        }
+        if (resampled.length < resampler.maxOutput(length)) {
+            resampled = new short[resampler.maxOutput(length)];
+        }
+        int count = resampler.process(frame, length, resampled);
+        monitorEndSample += count;
+        monitorFramer.onFrame(resampled, count, monitorEndSample);
+    }
+    
+    private void onFullRateWindow(short[] window, int length, int hopLength, long endSample) {
+        detector.process(window, length, hopLength, endSample);
+        boolean busy = detector.isWhistleInProgress() || detector.getSustainedMs() > 0;
+        if (switcher.onFullRateFrame(busy, SampleClock.millisAt(endSample, sampleRate))) {
+            switched();
+            monitorRestarts = true;
+        }
+    }
+    
+    private void onMonitorWindow(short[] window, int length, int hopLength, long endSample) {
+        candidate = false;
+        monitor.process(window, length, hopLength, endSample);
+        if (switcher.onMonitorFrame(candidate, monitorStartMs + SampleClock.millisAt(endSample, monitorRate))) {
+            switched();
+            framer.reset(); // As the service does, so the switch is not counted as a gap
+        }
+    }
+    
+    private void switched() {
+        switches++;
+        resumeSample = rawEndSample + SWITCH_GAP_MS * sampleRate / 1000;
+    }
+    
+    int getMonitorRate() {
+        return monitorRate;
+    }
+    
+    // Audio heard at full rate, in ms
+    long getFullRateMs() {
+        return SampleClock.millisAt(fullRateSamples, sampleRate);
+    }
+    
+    int getSwitches() {
+        return switches;
+    }
+}
@@ -0,0 +1,352 @@
+package com.whistlecounter.tools;
+
+import com.whistlecounter.detector.AnalysisMode;
+import com.whistlecounter.detector.DetectorConfig;
+import com.whistlecounter.detector.SampleClock;
+import com.whistlecounter.detector.WhistleDetector;
+import com.whistlecounter.detector.WhistleListener;
+import com.whistlecounter.detector.audio.CaptureScheduler;
+import com.whistlecounter.detector.audio.Framer;
+import com.whistlecounter.detector.audio.PcmFileSource;
+import com.whistlecounter.detector.classifier.QuantizedClassifier;
+import com.whistlecounter.detector.classifier.QuantizedModel;
+import com.whistlecounter.detector.fingerprint.FingerprintEnroller;
+import com.whistlecounter.detector.fingerprint.FingerprintStore;
+import com.whistlecounter.detector.fingerprint.WhistleFingerprint;
+import com.whistlecounter.detector.sources.SourceCount;
+import com.whistlecounter.detector.sources.WhistleSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs recordings through the detection engine faster than real time and writes
+ * one report of detected whistles per file.
+ *
+ * <p>Frames are cut and stamped by the same {@link CaptureScheduler} the app
+ * uses, so timing comes from the recording's sample clock and results do not
+ * depend on how fast the machine is.
+ *
+ * <pre>
+ * whistle-replay [--out DIR] [--frame SAMPLES] [--hop SAMPLES] [--rate HZ] [--mode spectral|goertzel] [--sources]
+ *                [--classifier MODEL] [--monitor-rate HZ] [--fingerprints FILE | --enroll FILE] FILE_OR_DIR...
+ * </pre>
+ *
+ * <p>{@code --sources} also counts whistles per cooker and lists the counts in
+ * the report header. {@code --classifier} replaces the band rules with a model
+ * written by {@link ClassifierTrainer}. {@code --monitor-rate} replays each recording as
+ * multi-rate capture would hear it, see {@link MultiRateCapture}. {@code --fingerprints} matches the cookers enrolled in a
+ * fingerprint file instead of using the generic rules, and {@code --enroll}
+ * learns one cooker from all the recordings and adds it to such a file.
+ */
+public final class ReplayHarness {
+    
+    public static final int DEFAULT_FRAME_SIZE = 3584; // Service buffer: 2x getMinBufferSize at 22.05 kHz on most devices
+    public static final int DEFAULT_RAW_SAMPLE_RATE = 22050;
+    
+    private final DetectorConfig config;
+    private final int frameSize;
+    private final int hopSize;
+    private final int rawSampleRate;
+    private List<WhistleFingerprint> fingerprints = Collections.emptyList();
+    private QuantizedModel classifierModel;
+    private int monitorRate = 0;
+    
+    /**
+     * @param frameSize analysis window in samples
+     * @param hopSize   samples between windows; less than {@code frameSize} overlaps them
+     */
+    public ReplayHarness(DetectorConfig config, int frameSize, int hopSize, int rawSampleRate) {
+        this.config = config;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.rawSampleRate = rawSampleRate;
+    }
+    
+    // Enrolled cookers for every later replay to match instead of the generic rules
+    public void setFingerprints(List<WhistleFingerprint> fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+    
+    // Model to classify frames with in every later replay, or null for the band rules
+    public void setClassifierModel(QuantizedModel classifierModel) {
+        this.classifierModel = classifierModel;
+    }
+    
+    // Rate to monitor at between candidates in every later replay, or 0 to analyze at the recording's rate throughout
+    public void setMonitorRate(int monitorRate) {
+        this.monitorRate = monitorRate;
+    }
+    
+    /**
+     * Replays one recording through a fresh detector.
+     */
+    public ReplayResult replay(File file) throws IOException {
+        PcmFileSource source = PcmFileSource.open(file, rawSampleRate);
+        try {
+            WhistleDetector detector = new WhistleDetector(config, source.getSampleRate(), frameSize);
+            detector.setFingerprints(fingerprints);
+            if (classifierModel != null) {
+                detector.setClassifier(new QuantizedClassifier(classifierModel));
+            }
+            ReplayResult result = new ReplayResult(file, source.getSampleRate(), frameSize, hopSize);
+            long[] lastSample = {0};
+            long[] whistleOnset = {-1};
+            long[] whistleDetected = {-1};
+            detector.setListener(new WhistleListener() {
+                @Override
+                public void onWhistleStarted(long timestampMs) {
+                    whistleOnset[0] = detector.getWhistleOnsetMs();
+                    whistleDetected[0] = timestampMs;
+                }
+                
+                @Override
+                public void onWhistleEnded(long timestampMs) {
+                    result.addWhistle(whistleOnset[0], whistleDetected[0], timestampMs, ReplayResult.EndReason.ENDED);
+                    whistleOnset[0] = -1;
+                }
+                
+                @Override
+                public void onWhistleTimedOut(long timestampMs) {
+                    result.addWhistle(whistleOnset[0], whistleDetected[0], timestampMs,
+                            ReplayResult.EndReason.TIMED_OUT);
+                    whistleOnset[0] = -1;
+                }
+            });
+            
+            CaptureScheduler.FrameConsumer capture;
+            MultiRateCapture multiRate = null;
+            if (monitorRate > 0) {
+                multiRate = new MultiRateCapture(detector, frameSize, hopSize, monitorRate);
+                capture = multiRate;
+            } else {
+                capture = new Framer(frameSize, hopSize, detector::process);
+            }
+            CaptureScheduler scheduler = new CaptureScheduler(source, hopSize);
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long startCpuNanos = threads.getCurrentThreadCpuTime();
+            long startNanos = System.nanoTime();
+            scheduler.run((frame, length, endSample) -> {
+                capture.onFrame(frame, length, endSample);
+                lastSample[0] = endSample;
+            });
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long cpuNanos = threads.getCurrentThreadCpuTime() - startCpuNanos;
+            
+            long durationMs = SampleClock.millisAt(lastSample[0], source.getSampleRate());
+            if (whistleOnset[0] >= 0) {
+                result.addWhistle(whistleOnset[0], whistleDetected[0], durationMs, ReplayResult.EndReason.END_OF_FILE);
+            }
+            for (WhistleSource whistleSource : detector.getSources()) {
+                if (whistleSource.getCount() > 0) {
+                    result.addSource(SourceCount.of(whistleSource));
+                }
+            }
+            if (multiRate != null) {
+                result.setMultiRate(monitorRate, multiRate.getFullRateMs(), multiRate.getSwitches());
+            }
+            IOException error = source.getError();
+            result.finish(durationMs, elapsedNanos, cpuNanos, detector.getFramesProcessed(),
+                    detector.getFramesClassified(), error != null ? error.getMessage() : null);
+            return result;
+        } finally {
+            source.release();
+        }
+    }
+    
+    /**
+     * Feeds recordings of one cooker to a single enroller, learning from every
+     * whistle they contain.
+     *
+     * @return the fingerprint, or null if no whistle was heard
+     */
+    public WhistleFingerprint enroll(List<File> recordings) throws IOException {
+        FingerprintEnroller enroller = null;
+        for (File file : recordings) {
+            PcmFileSource source = PcmFileSource.open(file, rawSampleRate);
+            try {
+                if (enroller == null) {
+                    enroller = new FingerprintEnroller(config, source.getSampleRate(), frameSize, Integer.MAX_VALUE);
+                }
+                Framer framer = new Framer(frameSize, hopSize, enroller::process);
+                new CaptureScheduler(source, hopSize).run(framer::onFrame);
+            } finally {
+                source.release();
+            }
+        }
+        return enroller != null ? enroller.build() : null;
+    }
+    
+    public static void main(String[] args) {
+        File outDir = new File("replay-reports");
+        int frameSize = DEFAULT_FRAME_SIZE;
+        int hopSize = 0;
+        int rawSampleRate = DEFAULT_RAW_SAMPLE_RATE;
+        DetectorConfig.Builder config = DetectorConfig.defaults().toBuilder();
+        List<File> inputs = new ArrayList<>();
+        File fingerprintFile = null;
+        File classifierFile = null;
+        int monitorRate = 0;
+        boolean enroll = false;
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out":
+                        outDir = new File(args[++i]);
+                        break;
+                    case "--frame":
+                        frameSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--hop":
+                        hopSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rawSampleRate = Integer.parseInt(args[++i]);
+                        break;
+                    case "--mode":
+                        config.setAnalysisMode(AnalysisMode.valueOf(args[++i].toUpperCase()));
+                        break;
+                    case "--sources":
+                        config.setMultiSourceEnabled(true);
+                        break;
+                    case "--classifier":
+                        classifierFile = new File(args[++i]);
+                        break;
+                    case "--monitor-rate":
+                        monitorRate = Integer.parseInt(args[++i]);
+                        break;
+                    case "--fingerprints":
+                        fingerprintFile = new File(args[++i]);
+                        break;
+                    case "--enroll":
+                        fingerprintFile = new File(args[++i]);
+                        enroll = true;
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                }
+            }
+        } catch (RuntimeException e) {
+            inputs.clear(); // Missing or malformed option value
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: whistle-replay [--out DIR] [--frame SAMPLES] [--hop SAMPLES] [--rate HZ] "
+                    + "[--mode spectral|goertzel] [--sources] [--classifier MODEL] [--monitor-rate HZ] "
+                    + "[--fingerprints FILE | --enroll FILE] FILE_OR_DIR...");
+            System.exit(2);
+        }
+        
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            collectRecordings(input, files);
+        }
+        ReplayHarness harness = new ReplayHarness(config.build(), frameSize, hopSize > 0 ? hopSize : frameSize,
+                rawSampleRate);
+        harness.setMonitorRate(monitorRate);
+        if (classifierFile != null) {
+            try {
+                harness.setClassifierModel(QuantizedModel.load(classifierFile));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (fingerprintFile != null) {
+            try {
+                List<WhistleFingerprint> enrolled = new ArrayList<>(FingerprintStore.load(fingerprintFile));
+                if (enroll) {
+                    System.exit(enroll(harness, files, enrolled, fingerprintFile));
+                }
+                harness.setFingerprints(enrolled);
+            } catch (IOException e) {
+                System.err.println(fingerprintFile.getPath() + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            System.err.println("Cannot create report directory " + outDir);
+            System.exit(1);
+        }
+        
+        int failures = 0;
+        long totalAudioMs = 0;
+        long totalNanos = 0;
+        for (File file : files) {
+            try {
+                ReplayResult result = harness.replay(file);
+                result.writeReport(new File(outDir, reportName(file)));
+                totalAudioMs += result.getDurationMs();
+                totalNanos += result.getElapsedNanos();
+                System.out.printf("%s: %d whistles, %.1f s of audio at %.0fx real time%s%n", file.getPath(),
+                        result.getWhistles().size(), result.getDurationMs() / 1000.0, result.getSpeedFactor(),
+                        result.getError() != null ? " (read error: " + result.getError() + ")" : "");
+                if (result.getMonitorRate() > 0) {
+                    System.out.printf("  %.0f%% at full rate, %d rate switches%n",
+                            100.0 * result.getFullRateMs() / Math.max(1, result.getDurationMs()), result.getRateSwitches());
+                }
+                for (SourceCount sourceCount : result.getSources()) {
+                    System.out.printf("  source %d at %.0f Hz: %d whistles%n", sourceCount.sourceId,
+                            sourceCount.frequencyHz, sourceCount.count);
+                }
+            } catch (IOException e) {
+                failures++;
+                System.err.println(file.getPath() + ": " + e.getMessage());
+            }
+        }
+        System.out.printf("%d files, %.1f min of audio in %.2f s%n", files.size() - failures,
+                totalAudioMs / 60000.0, totalNanos / 1e9);
+        System.exit(failures > 0 ? 1 : 0);
+    }
+    
+    private static int enroll(ReplayHarness harness, List<File> files, List<WhistleFingerprint> enrolled, 
+            File fingerprintFile) throws IOException {
+        WhistleFingerprint fingerprint = harness.enroll(files);
+        if (fingerprint == null) {
+            System.err.println("No whistles heard, nothing enrolled");
+            return 1;
+        }
+        enrolled.add(fingerprint);
+        FingerprintStore.save(fingerprintFile, enrolled);
+        System.out.printf("Enrolled cooker %d in %s:%n", enrolled.size(), fingerprintFile.getPath());
+        for (int p = 0; p < fingerprint.getPartialCount(); p++) {
+            System.out.printf("  %.0f Hz, weight %.2f%n", fingerprint.getFrequencyHz(p), fingerprint.getWeight(p));
+        }
+        return 0;
+    }
+    
+    static void collectRecordings(File input, List<File> out) {
+        if (input.isDirectory()) {
+            File[] children = input.listFiles();
+            if (children == null) {
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory() || isRecording(child)) {
+                    collectRecordings(child, out);
+                }
+            }
+        } else {
+            out.add(input);
+        }
+    }
+    
+    static boolean isRecording(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".wav") || name.endsWith(".pcm") || name.endsWith(".raw");
+    }
+    
+    // Same base name as the recording, so reports sort next to each other
+    static String reportName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + ".whistles.tsv";
+    }
+}
@@ -0,0 +1,177 @@
+package com.whistlecounter.tools;
+
+import com.whistlecounter.detector.sources.SourceCount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Whistles detected in one recording, with enough context to compare runs.
+ */
+public final class ReplayResult {
+    
+    public enum EndReason {
+        ENDED, TIMED_OUT, END_OF_FILE
+    }
+    
+    public static final class Whistle {
+        public final long onsetMs; // Where the whistle's sound began
+        public final long detectedMs; // When the detector confirmed it
+        public final long endMs;
+        public final EndReason endReason;
+        
+        Whistle(long onsetMs, long detectedMs, long endMs, EndReason endReason) {
+            this.onsetMs = onsetMs;
+            this.detectedMs = detectedMs;
+            this.endMs = endMs;
+            this.endReason = endReason;
+        }
+    }
+    
+    private final File file;
+    private final int sampleRate;
+    private final int frameSize;
+    private final int hopSize;
+    private final List<Whistle> whistles = new ArrayList<>();
+    private final List<SourceCount> sources = new ArrayList<>();
+    private long durationMs;
+    private long elapsedNanos;
+    private long cpuNanos;
+    private long framesProcessed;
+    private long framesClassified;
+    private String error;
+    private int monitorRate; // 0 unless replayed as multi-rate capture
+    private long fullRateMs;
+    private int rateSwitches;
+    
+    ReplayResult(File file, int sampleRate, int frameSize, int hopSize) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+    }
+    
+    void addWhistle(long onsetMs, long detectedMs, long endMs, EndReason endReason) {
+        whistles.add(new Whistle(onsetMs, detectedMs, endMs, endReason));
+    }
+    
+    void addSource(SourceCount source) {
+        sources.add(source);
+    }
+    
+    void finish(long durationMs, long elapsedNanos, long cpuNanos, long framesProcessed, long framesClassified,
+            String error) {
+        this.durationMs = durationMs;
+        this.elapsedNanos = elapsedNanos;
+        this.cpuNanos = cpuNanos;
+        this.framesProcessed = framesProcessed;
+        this.framesClassified = framesClassified;
+        this.error = error;
+    }
+    
+    void setMultiRate(int monitorRate, long fullRateMs, int rateSwitches) {
+        this.monitorRate = monitorRate;
+        this.fullRateMs = fullRateMs;
+        this.rateSwitches = rateSwitches;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    public List<Whistle> getWhistles() {
+        return whistles;
+    }
+    
+    // Per-source counts when multi-source tracking was enabled, otherwise empty
+    public List<SourceCount> getSources() {
+        return sources;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    // CPU time of the replaying thread, including file reads
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+    
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+    
+    public long getFramesClassified() {
+        return framesClassified;
+    }
+    
+    // Rate the recording was monitored at between candidates, or 0 if it was heard at its own rate throughout
+    public int getMonitorRate() {
+        return monitorRate;
+    }
+    
+    // Audio heard at the recording's own rate in multi-rate capture
+    public long getFullRateMs() {
+        return fullRateMs;
+    }
+    
+    public int getRateSwitches() {
+        return rateSwitches;
+    }
+    
+    // Read error that cut the recording short, or null
+    public String getError() {
+        return error;
+    }
+    
+    // How many times faster than real time the recording was analyzed
+    public double getSpeedFactor() {
+        return elapsedNanos > 0 ? durationMs * 1e6 / elapsedNanos : Double.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Writes the report as a commented header followed by one tab-separated line
+     * per whistle, so reports from two runs can be diffed directly.
+     */
+    public void writeReport(File out) throws IOException {
+        try (PrintWriter writer = new PrintWriter(out, "UTF-8")) {
+            writer.println("# file: " + file.getPath());
+            writer.println("# sample_rate: " + sampleRate);
+            writer.println("# frame_size: " + frameSize);
+            writer.println("# hop_size: " + hopSize);
+            writer.println("# duration_ms: " + durationMs);
+            writer.println("# frames_processed: " + framesProcessed);
+            writer.println("# frames_classified: " + framesClassified);
+            if (monitorRate > 0) {
+                writer.println("# monitor_rate: " + monitorRate);
+                writer.println("# full_rate_ms: " + fullRateMs);
+                writer.println("# rate_switches: " + rateSwitches);
+            }
+            if (error != null) {
+                writer.println("# error: " + error);
+            }
+            writer.println("# whistles: " + whistles.size());
+            for (SourceCount source : sources) {
+                writer.printf(Locale.ROOT, "# source %d: %.0f Hz, %d whistles%n", source.sourceId, source.frequencyHz,
+                        source.count);
+            }
+            writer.println("onset_ms\tdetected_ms\tend_ms\tend_reason");
+            for (Whistle whistle : whistles) {
+                writer.println(whistle.onsetMs + "\t" + whistle.detectedMs + "\t" + whistle.endMs + "\t"
+                        + whistle.endReason.name().toLowerCase());
+            }
+        }
+    }
+}